@@ -8,6 +8,8 @@ public class MultithreadedWorker
 {
 	private final BlockingQueue<Runnable> queue;
 	private final WorkerThread[] threads;
+	private int outstandingTasks;
+	private Throwable failure;
 	
 	
 	public MultithreadedWorker(int numberOfThreads)
@@ -18,6 +20,7 @@ public class MultithreadedWorker
 		for (int i = 0; i < threads.length; i++)
 		{
 			threads[i] = new WorkerThread();
+			threads[i].setDaemon(true);
 			threads[i].start();
 		}
 	}
@@ -25,6 +28,11 @@ public class MultithreadedWorker
 	
 	public void queue(Runnable task)
 	{
+		synchronized (this)
+		{
+			outstandingTasks++;
+		}
+		
 		queue.add(task);
 	}
 	
@@ -33,11 +41,55 @@ public class MultithreadedWorker
 	{
 		for (int i = 0; i < iterations; i++)
 		{
-			queue.add(task);
+			queue(task);
+		}
+	}
+	
+	
+	/**
+	 * Blocks until every task queued so far has finished running.
+	 * @throws InterruptedException
+	 * @throws IllegalStateException If a task failed since the last call, with the first failure as the cause.
+	 */
+	public synchronized void waitForCompletion() throws InterruptedException
+	{
+		while (outstandingTasks > 0)
+		{
+			wait();
+		}
+		
+		if (failure != null)
+		{
+			Throwable cause = failure;
+			failure = null;
+			throw new IllegalStateException("A task failed: " + cause, cause);
+		}
+	}
+	
+	
+	/**
+	 * Stops the worker threads once they have finished their current tasks.  Tasks which haven't
+	 * been started are discarded.
+	 */
+	public void shutdown()
+	{
+		for (WorkerThread thread: threads)
+		{
+			thread.interrupt();
 		}
 	}
 	
 	
+	private synchronized void taskCompleted(Throwable taskFailure)
+	{
+		if (taskFailure != null && failure == null)
+			failure = taskFailure;
+		
+		outstandingTasks--;
+		notifyAll();
+	}
+	
+	
 	private class WorkerThread extends Thread
 	{
 		@Override
@@ -45,14 +97,32 @@ public class MultithreadedWorker
 		{
 			while (true)
 			{
+				Runnable task;
+				
+				try
+				{
+					task = queue.take();
+				}
+				catch (InterruptedException ex)
+				{
+					return;
+				}
+				
+				//errors are caught too, since a thread which died would leave its tasks outstanding for good
+				Throwable taskFailure = null;
+				
 				try
 				{
-					Runnable task = queue.take();
 					task.run();
 				}
-				catch (Exception ex)
+				catch (Throwable ex)
 				{
 					ex.printStackTrace();
+					taskFailure = ex;
+				}
+				finally
+				{
+					taskCompleted(taskFailure);
 				}
 			}
 		}
@@ -0,0 +1,579 @@
+package pacman;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import pacman.batch.ParameterSweep;
+import pacman.controllers.Controller;
+import pacman.entries.pacman.MonteCarloPacManParameters;
+
+/**
+ * Reads a run config file into a Runner.ScriptHost, as a declarative alternative to a parameters script which
+ * doesn't need a JavaScript engine.  A config file looks like this:
+ *
+ * <pre>
+ * # settings of the host, i.e. the public fields of Runner.ScriptHost
+ * mode = batch
+ * numberOfThreads = 4
+ * benchmarkOpponents = Legacy(), StarterGhosts()
+ *
+ * # parameters every run after this starts with
+ * [defaults]
+ * simulationCount = 300
+ *
+ * # each run section adds a run, setting the public fields of MonteCarloPacManParameters
+ * [run]
+ * experimentName = ucb
+ * selectionPolicy = LevineUcbSelectionPolicy(2000)
+ * additionalEvaluators = DistanceToOpportunityEvaluator(), PowerPillActiveEvaluator(500)
+ *
+ * # the base parameters of a parameter sweep, and its dimensions as path, minimum, maximum
+ * [sweep]
+ * dimension = deathPenalty, 0, 20000
+ * </pre>
+ *
+ * Objects are given as ClassName(arguments), where the class is in one of the packages a parameters script
+ * imports or has its full name, and the arguments are numbers, true, false, quoted strings or more objects.
+ * Arrays are given as a list separated by commas.  Any mistake is reported with the line it's on.
+ */
+public class RunConfigLoader
+{
+	//the packages a parameters script imports, which classes are looked up in
+	private static final String[] PACKAGES = {
+		"pacman.entries.pacman",
+		"pacman.entries.pacman.evaluators",
+		"pacman.entries.pacman.evaluators.ensemble",
+		"pacman.entries.pacman.selectionpolicies",
+		"pacman.entries.pacman.ghostabstractions",
+		"pacman.entries.pacman.stoppingrules",
+		"pacman.controllers.examples" };
+	
+	private static final String DIMENSION = "dimension";
+	
+	private final Runner.ScriptHost host;
+	private MonteCarloPacManParameters defaults;
+	private MonteCarloPacManParameters current;
+	private String section;
+	private int sectionLine;
+	private int lineNumber;
+	
+	
+	/**
+	 * Constructor.
+	 * @param host The host to put the settings and runs in.
+	 */
+	public RunConfigLoader(Runner.ScriptHost host)
+	{
+		this.host = host;
+		this.defaults = new MonteCarloPacManParameters();
+	}
+	
+	
+	/**
+	 * Reads a config file.
+	 * @param file
+	 * @throws IOException
+	 * @throws IllegalArgumentException If the file has a mistake in it.
+	 */
+	public void load(File file) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		lineNumber = 0;
+		
+		try
+		{
+			String line;
+			
+			while ((line = in.readLine()) != null)
+			{
+				lineNumber++;
+				
+				try
+				{
+					readLine(line.trim());
+				}
+				catch (IllegalArgumentException ex)
+				{
+					throw new IllegalArgumentException(file.getName() + ":" + lineNumber + ": " + ex.getMessage(), ex);
+				}
+			}
+			
+			try
+			{
+				endSection();
+				validate(host);
+			}
+			catch (IllegalArgumentException ex)
+			{
+				throw new IllegalArgumentException(file.getName() + ": " + ex.getMessage(), ex);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	
+	private void readLine(String line)
+	{
+		if (line.length() == 0 || line.startsWith("#"))
+			return;
+		
+		if (line.startsWith("["))
+		{
+			if (!line.endsWith("]"))
+				throw new IllegalArgumentException("Expected ] at the end of " + line);
+			
+			startSection(line.substring(1, line.length() - 1).trim());
+			return;
+		}
+		
+		int equals = line.indexOf('=');
+		
+		if (equals < 0)
+			throw new IllegalArgumentException("Expected a setting in the form name = value, not " + line);
+		
+		String name = line.substring(0, equals).trim();
+		String value = line.substring(equals + 1).trim();
+		
+		if (section == null)
+		{
+			setField(host, name, value);
+		}
+		else if (section.equals("sweep") && name.equals(DIMENSION))
+		{
+			List<String> values = split(value);
+			
+			if (values.size() != 3)
+				throw new IllegalArgumentException("Expected a dimension as path, minimum, maximum, not " + value);
+			
+			host.sweep.addDimension(values.get(0), Double.parseDouble(values.get(1)), Double.parseDouble(values.get(2)));
+		}
+		else
+		{
+			setField(current, name, value);
+		}
+	}
+	
+	
+	private void startSection(String name)
+	{
+		endSection();
+		section = name;
+		sectionLine = lineNumber;
+		
+		if (name.equals("defaults"))
+		{
+			current = defaults;
+		}
+		else if (name.equals("run") || name.equals("sweep"))
+		{
+			current = copy(defaults);
+			
+			if (name.equals("sweep"))
+			{
+				if (host.sweep != null)
+					throw new IllegalArgumentException("There can only be one sweep.");
+				
+				host.sweep = new ParameterSweep(current);
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown section [" + name + "]; expected [defaults], [run] or [sweep]");
+		}
+	}
+	
+	
+	private void endSection()
+	{
+		if (section == null)
+			return;
+		
+		try
+		{
+			validate(current);
+		}
+		catch (IllegalArgumentException ex)
+		{
+			throw new IllegalArgumentException(ex.getMessage() + " in the [" + section + "] section on line " + sectionLine, ex);
+		}
+		
+		if (section.equals("run"))
+			host.runs.add(current);
+		
+		current = null;
+	}
+	
+	
+	/**
+	 * Sets a public field of an object to a value given in the config.
+	 */
+	private static void setField(Object owner, String name, String value)
+	{
+		Field field;
+		
+		try
+		{
+			field = owner.getClass().getField(name);
+		}
+		catch (NoSuchFieldException ex)
+		{
+			throw new IllegalArgumentException("Unknown setting: " + name);
+		}
+		
+		if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())
+			|| field.getName().equals("runs") || field.getName().equals("sweep"))
+			throw new IllegalArgumentException(name + " can't be set here; runs and sweeps have sections of their own");
+		
+		try
+		{
+			field.set(owner, convert(value, field.getType(), field.getGenericType()));
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalArgumentException("Cannot set " + name, ex);
+		}
+	}
+	
+	
+	/**
+	 * Converts the text of a value to the type it's for.
+	 * @param text
+	 * @param type
+	 * @param genericType The generic type, used to tell Pac-Man controllers from ghost controllers.
+	 * @return
+	 */
+	private static Object convert(String text, Class<?> type, Type genericType)
+	{
+		if (text.equals("null") && !type.isPrimitive())
+			return null;
+		
+		if (type == int.class || type == Integer.class)
+		{
+			long value = parseWholeNumber(text);
+			
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+				throw new IllegalArgumentException(text + " is too big");
+			
+			return Integer.valueOf((int)value);
+		}
+		else if (type == long.class || type == Long.class)
+		{
+			return Long.valueOf(parseWholeNumber(text));
+		}
+		else if (type == double.class || type == Double.class)
+		{
+			return Double.valueOf(text);
+		}
+		else if (type == boolean.class || type == Boolean.class)
+		{
+			return Boolean.valueOf(parseBoolean(text));
+		}
+		else if (type == String.class)
+		{
+			return unquote(text);
+		}
+		
+		if (type.isArray())
+		{
+			List<String> elements = split(text);
+			Object array = Array.newInstance(type.getComponentType(), elements.size());
+			Type componentType = genericType instanceof GenericArrayType
+				? ((GenericArrayType)genericType).getGenericComponentType() : type.getComponentType();
+			
+			for (int i = 0; i < elements.size(); i++)
+			{
+				Array.set(array, i, convert(elements.get(i), type.getComponentType(), componentType));
+			}
+			
+			return array;
+		}
+		
+		return create(text, type, genericType);
+	}
+	
+	
+	/**
+	 * Creates an object from a specification like ClassName(arguments).
+	 */
+	private static Object create(String spec, Class<?> type, Type genericType)
+	{
+		int open = spec.indexOf('(');
+		
+		if (open >= 0 && !spec.endsWith(")"))
+			throw new IllegalArgumentException("Expected ) at the end of " + spec);
+		
+		String className = open < 0 ? spec : spec.substring(0, open).trim();
+		List<String> arguments = open < 0 ? new ArrayList<String>() : split(spec.substring(open + 1, spec.length() - 1));
+		Class<?> objectClass = findClass(className);
+		
+		if (!type.isAssignableFrom(objectClass) || !isSameController(genericType, objectClass))
+			throw new IllegalArgumentException(className + " can't be used as a " + genericType);
+		
+		//use the first public constructor the arguments can be converted for
+		for (Constructor<?> constructor: objectClass.getConstructors())
+		{
+			Class<?>[] types = constructor.getParameterTypes();
+			
+			if (types.length != arguments.size())
+				continue;
+			
+			Object[] values = new Object[types.length];
+			
+			try
+			{
+				for (int i = 0; i < types.length; i++)
+				{
+					values[i] = convert(arguments.get(i), types[i], constructor.getGenericParameterTypes()[i]);
+				}
+			}
+			catch (IllegalArgumentException ex)
+			{
+				continue;
+			}
+			
+			try
+			{
+				return constructor.newInstance(values);
+			}
+			catch (InstantiationException ex)
+			{
+				throw new IllegalArgumentException("Cannot create " + spec, ex);
+			}
+			catch (IllegalAccessException ex)
+			{
+				throw new IllegalArgumentException("Cannot create " + spec, ex);
+			}
+			catch (InvocationTargetException ex)
+			{
+				throw new IllegalArgumentException("Cannot create " + spec + ": " + ex.getCause().getMessage(), ex);
+			}
+		}
+		
+		throw new IllegalArgumentException(className + " has no constructor which takes (" + join(arguments) + ")");
+	}
+	
+	
+	private static Class<?> findClass(String name)
+	{
+		List<String> candidates = new ArrayList<String>();
+		
+		if (name.indexOf('.') >= 0)
+		{
+			candidates.add(name);
+		}
+		else
+		{
+			for (String packageName: PACKAGES)
+			{
+				candidates.add(packageName + "." + name);
+			}
+		}
+		
+		for (String candidate: candidates)
+		{
+			try
+			{
+				return Class.forName(candidate);
+			}
+			catch (ClassNotFoundException ex)
+			{
+				//try the next package
+			}
+		}
+		
+		throw new IllegalArgumentException("Unknown class: " + name);
+	}
+	
+	
+	/**
+	 * Checks that a controller controls what the field it's for expects, i.e. Pac-Man or the ghosts, since
+	 * the type check doesn't see generic arguments.
+	 */
+	private static boolean isSameController(Type expected, Class<?> objectClass)
+	{
+		if (!(expected instanceof ParameterizedType) || ((ParameterizedType)expected).getRawType() != Controller.class)
+			return true;
+		
+		for (Class<?> type = objectClass; type != null; type = type.getSuperclass())
+		{
+			Type superclass = type.getGenericSuperclass();
+			
+			if (superclass instanceof ParameterizedType && ((ParameterizedType)superclass).getRawType() == Controller.class)
+			{
+				return ((ParameterizedType)superclass).getActualTypeArguments()[0].equals(
+					((ParameterizedType)expected).getActualTypeArguments()[0]);
+			}
+		}
+		
+		return false;
+	}
+	
+	
+	/**
+	 * Checks the settings of the host.
+	 */
+	private static void validate(Runner.ScriptHost host)
+	{
+		if (host.numberOfThreads < 1)
+			throw new IllegalArgumentException("numberOfThreads must be at least 1");
+		
+		if (host.gamesPerRun < 1)
+			throw new IllegalArgumentException("gamesPerRun must be at least 1");
+		
+		if (host.runs.isEmpty() && host.sweep == null)
+			throw new IllegalArgumentException("There are no [run] or [sweep] sections");
+	}
+	
+	
+	/**
+	 * Checks a set of parameters.
+	 */
+	private static void validate(MonteCarloPacManParameters parameters)
+	{
+		if (parameters.nodeExpansionThreshold < 1)
+			throw new IllegalArgumentException("nodeExpansionThreshold must be at least 1");
+		
+		if (parameters.maximumSimulationLength < 1)
+			throw new IllegalArgumentException("maximumSimulationLength must be at least 1");
+		
+		if (parameters.simulationCount != -1 && parameters.simulationCount < 1)
+			throw new IllegalArgumentException("simulationCount must be -1 or at least 1");
+		
+		if (parameters.maximumGhostChildren < 0)
+			throw new IllegalArgumentException("maximumGhostChildren can't be negative");
+		
+		if (parameters.valueSampleRate < 0 || parameters.valueSampleRate > 1)
+			throw new IllegalArgumentException("valueSampleRate must be between 0 and 1");
+		
+		if (parameters.pacManModel == null || parameters.ghostModel == null || parameters.opponent == null
+			|| parameters.selectionPolicy == null || parameters.ghostAbstraction == null)
+			throw new IllegalArgumentException("pacManModel, ghostModel, opponent, selectionPolicy and ghostAbstraction can't be null");
+	}
+	
+	
+	private static MonteCarloPacManParameters copy(MonteCarloPacManParameters parameters)
+	{
+		try
+		{
+			return parameters.copy();
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalArgumentException("Cannot copy the defaults", ex);
+		}
+		catch (InstantiationException ex)
+		{
+			throw new IllegalArgumentException("Cannot copy the defaults", ex);
+		}
+	}
+	
+	
+	/**
+	 * Parses an integer, allowing it to be written like a double as long as it's whole, e.g. 1e6.
+	 */
+	private static long parseWholeNumber(String text)
+	{
+		try
+		{
+			return Long.parseLong(text);
+		}
+		catch (NumberFormatException ex)
+		{
+			double value = Double.parseDouble(text);
+			
+			if (value != Math.rint(value) || Math.abs(value) > Long.MAX_VALUE)
+				throw new IllegalArgumentException("Expected a whole number, not " + text);
+			
+			return (long)value;
+		}
+	}
+	
+	
+	private static boolean parseBoolean(String text)
+	{
+		if (text.equals("true"))
+			return true;
+		else if (text.equals("false"))
+			return false;
+		else
+			throw new IllegalArgumentException("Expected true or false, not " + text);
+	}
+	
+	
+	private static String unquote(String text)
+	{
+		if (text.length() >= 2 && text.startsWith("\"") && text.endsWith("\""))
+			return text.substring(1, text.length() - 1);
+		
+		return text;
+	}
+	
+	
+	/**
+	 * Splits a list at the commas which aren't inside brackets or quotes.
+	 */
+	private static List<String> split(String text)
+	{
+		List<String> parts = new ArrayList<String>();
+		int depth = 0;
+		boolean quoted = false;
+		int start = 0;
+		
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			
+			if (!quoted && depth == 0 && c == ',')
+			{
+				parts.add(text.substring(start, i).trim());
+				start = i + 1;
+			}
+			else if (c == '"')
+			{
+				quoted = !quoted;
+			}
+			else if (!quoted)
+			{
+				depth += c == '(' ? 1 : c == ')' ? -1 : 0;
+			}
+		}
+		
+		if (depth != 0 || quoted)
+			throw new IllegalArgumentException("Unbalanced brackets or quotes in " + text);
+		
+		String last = text.substring(start).trim();
+		
+		if (last.length() > 0 || !parts.isEmpty())
+			parts.add(last);
+		
+		return parts;
+	}
+	
+	
+	private static String join(List<String> parts)
+	{
+		StringBuilder text = new StringBuilder();
+		
+		for (String part: parts)
+		{
+			text.append(text.length() == 0 ? "" : ", ").append(part);
+		}
+		
+		return text.toString();
+	}
+}
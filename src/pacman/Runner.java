@@ -1,22 +1,44 @@
 package pacman;
-import static pacman.game.Constants.DELAY;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
-import java.util.Random;
 import java.util.Scanner;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
+import pacman.batch.GamePlayer;
+import pacman.batch.GameResult;
+import pacman.batch.Leaderboard;
+import pacman.batch.ParameterSweep;
+import pacman.batch.Race;
+import pacman.batch.ResultsStore;
+import pacman.batch.ScalingBenchmark;
 import pacman.controllers.Controller;
+import pacman.controllers.examples.AggressiveGhosts;
+import pacman.controllers.examples.Legacy;
+import pacman.controllers.examples.Legacy2TheReckoning;
+import pacman.controllers.examples.RandomGhosts;
+import pacman.controllers.examples.StarterGhosts;
 import pacman.entries.pacman.MonteCarloPacManParameters;
 import pacman.entries.pacman.MyPacMan;
+import pacman.entries.pacman.telemetry.SearchTelemetry;
+import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
-import pacman.game.Game;
+import pacman.replay.GameRecording;
+import pacman.replay.ReplayHarness;
+import pacman.server.AgentService;
+import pacman.server.MultiGameHost;
+import pacman.server.SearchScheduler;
 
 
 public class Runner
@@ -29,7 +51,7 @@ public class Runner
 	{
 		if (args.length != 1)
 		{
-			System.out.println("Usage: java -jar PacMan.java <parameters script>");
+			System.out.println("Usage: java -jar PacMan.java <parameters script (.js) or run config>");
 			return;
 		}
 		else
@@ -48,10 +70,18 @@ public class Runner
 			{
 				System.out.println("Error: " + e.getMessage());
 			}
+			catch (IOException e)
+			{
+				System.out.println("Error: " + e.getMessage());
+			}
 			catch (IllegalStateException e)
 			{
 				System.out.println("Error: " + e.getMessage());
 			}
+			catch (IllegalArgumentException e)
+			{
+				System.out.println("Error: " + e.getMessage());
+			}
 		}
 	}
 	
@@ -61,20 +91,222 @@ public class Runner
 		public String mode;
 		public int numberOfThreads;
 		
+		/**
+		 * The file to append batch results to, or null if they are only to be printed.  Games
+		 * already recorded in the file are skipped, so an interrupted batch can be restarted.
+		 */
+		public String resultsFile;
+		
+		/**
+		 * The seed used to generate the seeds of the games in each batch.
+		 */
+		public long seed;
+		
+		/**
+		 * The number of games to play with each set of parameters in batch mode.
+		 */
+		public int gamesPerRun;
+		
+		/**
+		 * The parameter sweep which generates the runs in sweep mode.
+		 */
+		public ParameterSweep sweep;
+		
+		/**
+		 * How the sweep generates parameters: "grid", "random" or "latin".
+		 */
+		public String sweepMethod;
+		
+		/**
+		 * The number of values per dimension of a grid sweep, or the number of samples otherwise.
+		 */
+		public int sweepSize;
+		
+		/**
+		 * The confidence level at which configurations are dropped in race mode.
+		 */
+		public double raceConfidence;
+		
+		/**
+		 * The number of games each remaining configuration plays in each round of a race.
+		 */
+		public int raceRoundSize;
+		
+		/**
+		 * The number of games a configuration must play before it can be dropped from a race.
+		 */
+		public int raceMinimumGames;
+		
+		/**
+		 * The simulation counts to play with in benchmark mode.
+		 */
+		public int[] benchmarkBudgets;
+		
+		/**
+		 * The numbers of concurrent games to measure throughput with in benchmark mode, or null for
+		 * powers of two up to numberOfThreads.
+		 */
+		public int[] benchmarkThreads;
+		
+		/**
+		 * The ghost controllers to play against in benchmark mode.
+		 */
+		public Controller<EnumMap<GHOST, MOVE>>[] benchmarkOpponents;
+		
+		/**
+		 * The file to write the benchmark tables to, or null to only print them.
+		 */
+		public String benchmarkFile;
+		
+		/**
+		 * The directory to record every batch game to, or null not to record games.
+		 */
+		public String recordingDirectory;
+		
+		/**
+		 * The recording to search again in replay mode, with the first run's parameters.
+		 */
+		public String replayFile;
+		
+		/**
+		 * The index of the first recorded decision to search from in replay mode.
+		 */
+		public int replayFirstDecision;
+		
+		/**
+		 * The number of recorded decisions to search from in replay mode, or -1 for all of them.
+		 */
+		public int replayDecisions;
+		
+		/**
+		 * The number of times to search from each recorded decision in replay mode.
+		 */
+		public int replayRepetitions;
+		
+		/**
+		 * The port to serve the first run's agent on in serve mode, or 0 for any free port.
+		 */
+		public int servicePort;
+		
+		/**
+		 * The time in milliseconds a session can go without a request in serve mode before it's ended.
+		 */
+		public int serviceSessionTimeout;
+		
 		public ScriptHost()
 		{
 			runs = new LinkedList<MonteCarloPacManParameters>();
 			mode = "interactive";
 			numberOfThreads = 6;
+			gamesPerRun = 20;
+			sweepMethod = "grid";
+			sweepSize = 5;
+			raceConfidence = 0.95;
+			raceRoundSize = 4;
+			raceMinimumGames = 8;
+			replayDecisions = -1;
+			replayRepetitions = 1;
+			servicePort = AgentService.DEFAULT_PORT;
+			serviceSessionTimeout = AgentService.DEFAULT_SESSION_TIMEOUT;
+			benchmarkBudgets = new int[] { 25, 50, 100, 200, 400 };
+			benchmarkOpponents = createDefaultOpponents();
+		}
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Controller<EnumMap<GHOST, MOVE>>[] createDefaultOpponents()
+		{
+			return new Controller[] { new Legacy(), new Legacy2TheReckoning(), new StarterGhosts(),
+				new AggressiveGhosts(), new RandomGhosts() };
 		}
 	}
 	
 	
-	public void run(String path) throws FileNotFoundException, ScriptException
+	/**
+	 * Runs the runs set up by a parameters script, or by a run config file if the path doesn't end in .js.
+	 * Config files are read by RunConfigLoader and don't need a JavaScript engine, which newer Javas don't
+	 * have, or the time it takes to start one.
+	 * @param path
+	 * @throws IOException
+	 * @throws ScriptException
+	 */
+	public void run(String path) throws IOException, ScriptException
+	{
+		ScriptHost host = new ScriptHost();
+        
+        if (path.endsWith(".js"))
+        	runScript(path, host);
+        else
+        	new RunConfigLoader(host).load(new File(path));
+        
+        if (host.mode.equals("interactive"))
+        {
+        	runInteractive(host.runs.remove());
+        }
+        else if (host.mode.equals("batch"))
+        {
+        	runBatch(host, null);
+        }
+        else if (host.mode.equals("sweep"))
+        {
+        	if (host.sweep == null)
+        		throw new IllegalStateException("No sweep has been defined.");
+        	
+        	host.runs.addAll(host.sweep.generate(host.sweepMethod, host.sweepSize, host.seed));
+        	System.out.printf("Sweeping %d configurations\n", host.runs.size());
+        	
+        	Leaderboard leaderboard = new Leaderboard(System.out, 10, host.numberOfThreads);
+        	runBatch(host, leaderboard);
+        	leaderboard.print();
+        }
+        else if (host.mode.equals("race"))
+        {
+        	if (host.sweep != null)
+        		host.runs.addAll(host.sweep.generate(host.sweepMethod, host.sweepSize, host.seed));
+        	
+        	runRace(host);
+        }
+        else if (host.mode.equals("benchmark"))
+        {
+        	runBenchmark(host);
+        }
+        else if (host.mode.equals("host"))
+        {
+        	runHosted(host);
+        }
+        else if (host.mode.equals("serve"))
+        {
+        	new AgentService(host.runs.remove(), host.serviceSessionTimeout).serve(host.servicePort);
+        }
+        else if (host.mode.equals("replay"))
+        {
+        	if (host.replayFile == null)
+        		throw new IllegalStateException("No recording has been given to replay.");
+        	
+        	GameRecording recording = GameRecording.read(new File(host.replayFile));
+        	new ReplayHarness(host.runs.remove()).replay(recording, host.replayFirstDecision, host.replayDecisions,
+        		host.replayRepetitions, System.out);
+        }
+        else
+        {
+        	throw new IllegalStateException("Unknown mode: " + host.mode);
+        }
+	}
+	
+	
+	/**
+	 * Runs a parameters script with a JavaScript engine, to set up the host.
+	 * @param path
+	 * @param host
+	 * @throws IOException
+	 * @throws ScriptException
+	 */
+	private void runScript(String path, ScriptHost host) throws IOException, ScriptException
 	{
 		ScriptEngineManager factory = new ScriptEngineManager();
         ScriptEngine engine = factory.getEngineByName("JavaScript");
-        ScriptHost host = new ScriptHost();
+        
+        if (engine == null)
+        	throw new IllegalStateException("This Java has no JavaScript engine; use a run config file instead of " + path);
         
         String script = new Scanner(new File(path)).useDelimiter("\\Z").next();
         
@@ -83,6 +315,8 @@ public class Runner
         	"importPackage(Packages.pacman.entries.pacman.evaluators);" +
         	"importPackage(Packages.pacman.entries.pacman.evaluators.ensemble);" +
         	"importPackage(Packages.pacman.entries.pacman.selectionpolicies);" +
+        	"importPackage(Packages.pacman.entries.pacman.ghostabstractions);" +
+        	"importPackage(Packages.pacman.entries.pacman.stoppingrules);" +
         	"importPackage(Packages.pacman.controllers.examples);" +
         	"with (host) { " +
         	script +
@@ -90,35 +324,36 @@ public class Runner
         
         engine.put("host", host);
         engine.eval(hostScript);
-        
-        if (host.mode.equals("interactive"))
-        {
-        	runInteractive(host.runs.remove());
-        }
-        else if (host.mode.equals("batch"))
-        {
-        	runBatch(host.runs, host.numberOfThreads);
-        }
-        else
-        {
-        	throw new IllegalStateException("Unknown mode: " + host.mode);
-        }
 	}
 	
 	
-	private void runBatch(Queue<MonteCarloPacManParameters> runs, int numberOfThreads)
+	private void runBatch(ScriptHost host, final Leaderboard leaderboard) throws IOException
 	{
-		worker = new MultithreadedWorker(numberOfThreads);
-		final Random random = new Random();
+		worker = new MultithreadedWorker(host.numberOfThreads);
+		final GamePlayer player = new GamePlayer(host.recordingDirectory == null ? null : new File(host.recordingDirectory));
+		final ResultsStore store = host.resultsFile == null ? null : new ResultsStore(new File(host.resultsFile));
+		long[] seeds = GamePlayer.getSeeds(host.seed, host.gamesPerRun);
+		int skipped = 0;
 		
 		try
 		{
-			while (!runs.isEmpty())
+			while (!host.runs.isEmpty())
 			{
-				MonteCarloPacManParameters runbatch = runs.remove();
+				MonteCarloPacManParameters runbatch = host.runs.remove();
+				final String hash = runbatch.getHash();
 				
-				for (int i = 0; i < 20; i++)
+				for (final long seed: seeds)
 				{
+					//when resuming, don't replay games that are already in the results file
+					if (store != null && store.isCompleted(hash, seed))
+					{
+						if (leaderboard != null)
+							leaderboard.add(store.getResult(hash, seed));
+						
+						skipped++;
+						continue;
+					}
+					
 					final MonteCarloPacManParameters run = runbatch.copy();
 					
 					worker.queue(new Runnable()
@@ -126,24 +361,168 @@ public class Runner
 						@Override
 						public void run()
 						{
-							Controller<MOVE> pacman = new MyPacMan(run);
-					    	Game game;
-					    	
-					    	game = new Game(random.nextLong());
-					    	
-					    	while (!game.gameOver())
-					    	{
-					    		game.advanceGame(
-					    			pacman.getMove(game.copy(), System.currentTimeMillis() + DELAY),
-					    			run.opponent.getMove(game.copy(), System.currentTimeMillis() + DELAY)
-					    		);
-					    	}
-					    	
-					    	System.out.printf("%s\t%d\n", run.experimentName, game.getScore());
+							GameResult result = player.play(hash, run, seed);
+							System.out.printf("%s\t%d\tdecision p99 %dus, %d missed\n", run.experimentName, result.getScore(),
+								result.getDecisionLatency().getPercentile99(), result.getDecisionLatency().getMisses());
+							
+							if (store != null)
+								store.add(result);
+							
+							if (leaderboard != null)
+								leaderboard.add(result);
 						}
 					});
 				}
 			}
+			
+			if (skipped > 0)
+				System.out.printf("Skipped %d games already in %s\n", skipped, host.resultsFile);
+			
+			worker.waitForCompletion();
+			
+			if (SearchTelemetry.ENABLED)
+				System.out.println("Search telemetry: " + SearchTelemetry.getInstance());
+		}
+		catch (IllegalAccessException ex)
+		{
+			ex.printStackTrace();
+		}
+		catch (InstantiationException ex)
+		{
+			ex.printStackTrace();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			if (store != null)
+				store.close();
+		}
+	}
+	
+	
+	/**
+	 * Races the runs against each other, spending the games a full batch would use on the
+	 * configurations which haven't been shown to be worse than the best.
+	 * @param host
+	 * @throws IOException
+	 */
+	private void runRace(ScriptHost host) throws IOException
+	{
+		worker = new MultithreadedWorker(host.numberOfThreads);
+		ResultsStore store = host.resultsFile == null ? null : new ResultsStore(new File(host.resultsFile));
+		List<MonteCarloPacManParameters> candidates = new ArrayList<MonteCarloPacManParameters>(host.runs);
+		Race race = new Race(candidates, host.raceConfidence, host.raceRoundSize, host.raceMinimumGames, System.out);
+		
+		try
+		{
+			race.run(worker, store, host.seed, candidates.size() * host.gamesPerRun);
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			if (store != null)
+				store.close();
+		}
+	}
+	
+	
+	/**
+	 * Measures the score of the first run at a ladder of simulation budgets, and its simulation
+	 * throughput with a ladder of concurrent games.
+	 * @param host
+	 * @throws IOException
+	 */
+	private void runBenchmark(ScriptHost host) throws IOException
+	{
+		int[] threads = host.benchmarkThreads;
+		
+		if (threads == null)
+		{
+			List<Integer> counts = new ArrayList<Integer>();
+			
+			for (int i = 1; i < host.numberOfThreads; i *= 2)
+			{
+				counts.add(i);
+			}
+			
+			counts.add(host.numberOfThreads);
+			threads = new int[counts.size()];
+			
+			for (int i = 0; i < threads.length; i++)
+			{
+				threads[i] = counts.get(i);
+			}
+		}
+		
+		ScalingBenchmark benchmark = new ScalingBenchmark(host.runs.remove(), host.benchmarkBudgets, threads,
+			host.benchmarkOpponents, host.gamesPerRun, host.seed);
+		PrintStream out = host.benchmarkFile == null ? System.out : new PrintStream(new FileOutputStream(host.benchmarkFile), true);
+		
+		try
+		{
+			benchmark.run(out);
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			if (out != System.out)
+				out.close();
+		}
+	}
+	
+	
+	/**
+	 * Plays gamesPerRun real-time games of the first run at the same time, sharing numberOfThreads
+	 * worker threads between their searches.
+	 * @param host
+	 * @throws IOException
+	 */
+	private void runHosted(ScriptHost host) throws IOException
+	{
+		MonteCarloPacManParameters run = host.runs.remove();
+		String hash = run.getHash();
+		long[] seeds = GamePlayer.getSeeds(host.seed, host.gamesPerRun);
+		SearchScheduler scheduler = new SearchScheduler(host.numberOfThreads);
+		ResultsStore store = host.resultsFile == null ? null : new ResultsStore(new File(host.resultsFile));
+		
+		try
+		{
+			MonteCarloPacManParameters[] runs = new MonteCarloPacManParameters[seeds.length];
+			
+			for (int i = 0; i < runs.length; i++)
+			{
+				runs[i] = run.copy();
+			}
+			
+			System.out.printf("Hosting %d games on %d threads\n", seeds.length, host.numberOfThreads);
+			long misses = 0;
+			long savedMillis = 0;
+			
+			for (GameResult result: new MultiGameHost(scheduler).play(hash, runs, seeds))
+			{
+				System.out.printf("%s\t%d\tdecision p99 %dus, %d missed\ttick p99 %dus, %d missed\n", run.experimentName,
+					result.getScore(), result.getDecisionLatency().getPercentile99(), result.getDecisionLatency().getMisses(),
+					result.getTickLatency().getPercentile99(), result.getTickLatency().getMisses());
+				misses += result.getDecisionLatency().getMisses() + result.getTickLatency().getMisses();
+				savedMillis += result.getSavedMillis();
+				
+				if (store != null)
+					store.add(result);
+			}
+			
+			System.out.printf("%d moves missed their deadline\n", misses);
+			
+			if (run.stoppingRule != null)
+				System.out.printf("%dms of search given up to other games by stopping early\n", savedMillis);
 		}
 		catch (IllegalAccessException ex)
 		{
@@ -153,11 +532,33 @@ public class Runner
 		{
 			ex.printStackTrace();
 		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			scheduler.shutdown();
+			
+			if (store != null)
+				store.close();
+		}
 	}
 	
 	
-	private void runInteractive(MonteCarloPacManParameters p)
+	private void runInteractive(MonteCarloPacManParameters p) throws IOException
 	{
-		exec.runGame(new MyPacMan(p), p.opponent, true, 5);
+		MyPacMan pacman = new MyPacMan(p);
+		
+		if (pacman.getWarmUp() != null)
+			System.out.println("Warmed up: " + pacman.getWarmUp());
+		
+		exec.runGame(pacman, p.opponent, true, 5);
+		System.out.println("Move latency: " + pacman.getLatency());
+		
+		if (p.stoppingRule != null)
+			System.out.printf("Stopped early on %d ticks, %dms saved\n", pacman.getNumberOfEarlyStops(),
+				pacman.getSavedMillis());
+		pacman.close();
 	}
 }
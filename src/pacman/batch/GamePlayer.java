@@ -0,0 +1,157 @@
+package pacman.batch;
+
+import static pacman.game.Constants.DELAY;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import pacman.entries.pacman.MonteCarloPacManParameters;
+import pacman.entries.pacman.MyPacMan;
+import pacman.entries.pacman.treeexport.TreeExporter;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.replay.GameRecorder;
+
+/**
+ * Plays headless games of Ms Pac-Man as fast as the agent allows.
+ */
+public class GamePlayer
+{
+	private final File recordingDirectory;
+	
+	
+	public GamePlayer()
+	{
+		this(null);
+	}
+	
+	
+	/**
+	 * Constructor.
+	 * @param recordingDirectory The directory to record each game to, or null not to record games.
+	 * Recordings are named after the parameters hash and the seed.
+	 */
+	public GamePlayer(File recordingDirectory)
+	{
+		this.recordingDirectory = recordingDirectory;
+	}
+	
+	
+	/**
+	 * Plays a game to the end.
+	 * @param parametersHash The hash identifying the configuration being played.
+	 * @param run The parameters to play with; these shouldn't be shared with any other game in progress.  Their
+	 * random number generators are seeded from the game's seed, so that the game can be played again.
+	 * @param seed The seed to create the game with.
+	 * @return
+	 */
+	public GameResult play(String parametersHash, MonteCarloPacManParameters run, long seed)
+	{
+		long startTime = System.currentTimeMillis();
+		run.seedRandoms(seed);
+		
+		if (run.treeExportFile != null)
+			run.treeExportFile = TreeExporter.getGamePath(run.treeExportFile, parametersHash, seed);
+		
+		MyPacMan pacman = new MyPacMan(run);
+		Game game = new Game(seed);
+		GameRecorder recorder = createRecorder(parametersHash, run, seed);
+		
+		while (!game.gameOver())
+		{
+			int decisions = pacman.getNumberOfDecisions();
+			MOVE move = pacman.getMove(game.copy(), System.currentTimeMillis() + DELAY);
+			
+			if (recorder != null && pacman.getNumberOfDecisions() > decisions)
+				recorder = recordDecision(recorder, game, move);
+			
+			game.advanceGame(move, run.opponent.getMove(game.copy(), System.currentTimeMillis() + DELAY));
+		}
+		
+		if (recorder != null)
+		{
+			try
+			{
+				recorder.close(game);
+			}
+			catch (IOException ex)
+			{
+				System.err.println("Could not finish recording the game: " + ex.getMessage());
+			}
+		}
+		
+		try
+		{
+			pacman.close();
+		}
+		catch (IOException ex)
+		{
+			System.err.println("Could not finish exporting the search tree: " + ex.getMessage());
+		}
+		
+		return new GameResult(parametersHash, run.experimentName, seed, game.getScore(), game.getCurrentLevel(),
+			game.getPacmanNumberOfLivesRemaining(), game.getTotalTime(), pacman.getNumberOfDecisions(),
+			pacman.getNumberOfSimulations(), System.currentTimeMillis() - startTime,
+			pacman.getLatency().getDecisionSummary(), pacman.getLatency().getTickSummary(),
+			pacman.getNumberOfEarlyStops(), pacman.getSavedMillis());
+	}
+	
+	
+	private GameRecorder createRecorder(String parametersHash, MonteCarloPacManParameters run, long seed)
+	{
+		if (recordingDirectory == null)
+			return null;
+		
+		try
+		{
+			File file = new File(recordingDirectory, parametersHash + "-" + seed + ".rec");
+			return new GameRecorder(file, seed, run.toString());
+		}
+		catch (IOException ex)
+		{
+			System.err.println("Could not record the game: " + ex.getMessage());
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Records a decision, giving up on the recording if it can't be written.
+	 * @return The recorder, or null if recording has been given up.
+	 */
+	private GameRecorder recordDecision(GameRecorder recorder, Game game, MOVE move)
+	{
+		try
+		{
+			recorder.recordDecision(game, move);
+			return recorder;
+		}
+		catch (IOException ex)
+		{
+			System.err.println("Could not record the game: " + ex.getMessage());
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Generates the seeds for the games in a batch, so that every set of parameters is played
+	 * on the same games and the same games are played when a batch is restarted.
+	 * @param seed
+	 * @param count
+	 * @return
+	 */
+	public static long[] getSeeds(long seed, int count)
+	{
+		Random random = new Random(seed);
+		long[] seeds = new long[count];
+		
+		for (int i = 0; i < count; i++)
+		{
+			seeds[i] = random.nextLong();
+		}
+		
+		return seeds;
+	}
+}
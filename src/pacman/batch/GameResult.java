@@ -0,0 +1,248 @@
+package pacman.batch;
+
+import pacman.entries.pacman.telemetry.LatencySummary;
+
+/**
+ * The outcome of a single game played in batch mode.
+ */
+public class GameResult
+{
+	private String parametersHash;
+	private String experimentName;
+	private long seed;
+	private int score;
+	private int level;
+	private int livesRemaining;
+	private int ticks;
+	private int numberOfDecisions;
+	private long numberOfSimulations;
+	private long wallTime;
+	private LatencySummary decisionLatency;
+	private LatencySummary tickLatency;
+	private int numberOfEarlyStops;
+	private long savedMillis;
+	
+	
+	/**
+	 * Constructor.
+	 * @param parametersHash The hash of the parameters the game was played with.
+	 * @param experimentName The name of the experiment the game belongs to.
+	 * @param seed The seed the game was created with.
+	 * @param score The final score.
+	 * @param level The level reached.
+	 * @param livesRemaining The number of lives Ms Pac-Man had left at the end.
+	 * @param ticks The total number of game ticks played.
+	 * @param numberOfDecisions The number of decisions made by the agent.
+	 * @param numberOfSimulations The total number of simulations run by the agent.
+	 * @param wallTime The time taken to play the game, in milliseconds.
+	 * @param decisionLatency The latencies of the moves on which the agent made a decision.
+	 * @param tickLatency The latencies of the other moves.
+	 * @param numberOfEarlyStops The number of ticks on which the agent's stopping rule ended the search early.
+	 * @param savedMillis The search time given up by stopping early, in milliseconds.
+	 */
+	public GameResult(String parametersHash, String experimentName, long seed, int score, int level,
+		int livesRemaining, int ticks, int numberOfDecisions, long numberOfSimulations, long wallTime,
+		LatencySummary decisionLatency, LatencySummary tickLatency, int numberOfEarlyStops, long savedMillis)
+	{
+		this.parametersHash = parametersHash;
+		this.experimentName = experimentName;
+		this.seed = seed;
+		this.score = score;
+		this.level = level;
+		this.livesRemaining = livesRemaining;
+		this.ticks = ticks;
+		this.numberOfDecisions = numberOfDecisions;
+		this.numberOfSimulations = numberOfSimulations;
+		this.wallTime = wallTime;
+		this.decisionLatency = decisionLatency;
+		this.tickLatency = tickLatency;
+		this.numberOfEarlyStops = numberOfEarlyStops;
+		this.savedMillis = savedMillis;
+	}
+	
+	
+	/**
+	 * Gets the header line describing the columns written by toLine().
+	 * @return
+	 */
+	public static String getHeader()
+	{
+		return "#hash\texperiment\tseed\tscore\tlevel\tlives\tticks\tdecisions\tsimulations\tsimulationsPerDecision\twallTime"
+			+ "\tdecisionP50\tdecisionP99\tdecisionP999\tdecisionMax\tdecisionMisses"
+			+ "\ttickP50\ttickP99\ttickP999\ttickMax\ttickMisses\tearlyStops\tsavedMillis";
+	}
+	
+	
+	/**
+	 * Formats the result as a single tab separated line.  Latencies are in microseconds.
+	 * @return
+	 */
+	public String toLine()
+	{
+		return String.format("%s\t%s\t%d\t%d\t%d\t%d\t%d\t%d\t%d\t%.1f\t%d\t%s\t%s\t%d\t%d",
+			parametersHash, experimentName == null ? "" : experimentName.replace('\t', ' '), seed, score, level,
+			livesRemaining, ticks, numberOfDecisions, numberOfSimulations, getSimulationsPerDecision(), wallTime,
+			formatLatency(decisionLatency), formatLatency(tickLatency), numberOfEarlyStops, savedMillis);
+	}
+	
+	
+	private static String formatLatency(LatencySummary latency)
+	{
+		return String.format("%d\t%d\t%d\t%d\t%d", latency.getMedian(), latency.getPercentile99(),
+			latency.getPercentile999(), latency.getMax(), latency.getMisses());
+	}
+	
+	
+	private static LatencySummary parseLatency(String[] fields, int start, long count)
+	{
+		return new LatencySummary(count, Long.parseLong(fields[start]), Long.parseLong(fields[start + 1]),
+			Long.parseLong(fields[start + 2]), Long.parseLong(fields[start + 3]), Long.parseLong(fields[start + 4]));
+	}
+	
+	
+	/**
+	 * Parses a line written by toLine().  Lines written before latencies were recorded are read with
+	 * empty latencies; the latency counts aren't saved, so they are taken from the numbers of decisions
+	 * and ticks.  Lines written before early stopping are read as having stopped none.
+	 * @param line
+	 * @return The result, or null if the line is a comment or hasn't got one of the numbers of fields written.
+	 */
+	public static GameResult parse(String line)
+	{
+		if (line.startsWith("#"))
+			return null;
+		
+		String[] fields = line.split("\t", -1);
+		
+		if (fields.length != 11 && fields.length != 21 && fields.length != 23)
+			return null;
+		
+		try
+		{
+			int ticks = Integer.parseInt(fields[6]);
+			int decisions = Integer.parseInt(fields[7]);
+			LatencySummary decisionLatency = LatencySummary.EMPTY;
+			LatencySummary tickLatency = LatencySummary.EMPTY;
+			int earlyStops = 0;
+			long savedMillis = 0;
+			
+			if (fields.length >= 21)
+			{
+				decisionLatency = parseLatency(fields, 11, decisions);
+				tickLatency = parseLatency(fields, 16, ticks - decisions);
+			}
+			
+			if (fields.length >= 23)
+			{
+				earlyStops = Integer.parseInt(fields[21]);
+				savedMillis = Long.parseLong(fields[22]);
+			}
+			
+			return new GameResult(fields[0], fields[1], Long.parseLong(fields[2]), Integer.parseInt(fields[3]),
+				Integer.parseInt(fields[4]), Integer.parseInt(fields[5]), ticks, decisions, Long.parseLong(fields[8]),
+				Long.parseLong(fields[10]), decisionLatency, tickLatency, earlyStops, savedMillis);
+		}
+		catch (NumberFormatException ex)
+		{
+			return null;
+		}
+	}
+	
+	
+	public String getParametersHash()
+	{
+		return parametersHash;
+	}
+	
+	
+	public String getExperimentName()
+	{
+		return experimentName;
+	}
+	
+	
+	public long getSeed()
+	{
+		return seed;
+	}
+	
+	
+	public int getScore()
+	{
+		return score;
+	}
+	
+	
+	public int getLevel()
+	{
+		return level;
+	}
+	
+	
+	public int getLivesRemaining()
+	{
+		return livesRemaining;
+	}
+	
+	
+	public int getTicks()
+	{
+		return ticks;
+	}
+	
+	
+	public int getNumberOfDecisions()
+	{
+		return numberOfDecisions;
+	}
+	
+	
+	public long getNumberOfSimulations()
+	{
+		return numberOfSimulations;
+	}
+	
+	
+	/**
+	 * Gets the average number of simulations run for each decision.
+	 * @return
+	 */
+	public double getSimulationsPerDecision()
+	{
+		return numberOfDecisions == 0 ? 0 : (double)numberOfSimulations / numberOfDecisions;
+	}
+	
+	
+	public long getWallTime()
+	{
+		return wallTime;
+	}
+	
+	
+	public LatencySummary getDecisionLatency()
+	{
+		return decisionLatency;
+	}
+	
+	
+	public LatencySummary getTickLatency()
+	{
+		return tickLatency;
+	}
+	
+	
+	public int getNumberOfEarlyStops()
+	{
+		return numberOfEarlyStops;
+	}
+	
+	
+	/**
+	 * Gets the search time given up by stopping early, in milliseconds.
+	 * @return
+	 */
+	public long getSavedMillis()
+	{
+		return savedMillis;
+	}
+}
@@ -0,0 +1,101 @@
+package pacman.batch;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranks configurations by their mean score as results come in.
+ */
+public class Leaderboard
+{
+	private final Map<String, Entry> entries;
+	private final PrintStream out;
+	private final int size;
+	private final int printInterval;
+	private int resultsSincePrint;
+	
+	
+	/**
+	 * Constructor.
+	 * @param out Where to print the rankings.
+	 * @param size The number of configurations to show.
+	 * @param printInterval The number of results to add between printing the rankings.
+	 */
+	public Leaderboard(PrintStream out, int size, int printInterval)
+	{
+		this.entries = new LinkedHashMap<String, Entry>();
+		this.out = out;
+		this.size = size;
+		this.printInterval = printInterval;
+	}
+	
+	
+	/**
+	 * Adds the result of a game, printing the rankings if enough results have been added since they
+	 * were last printed.
+	 * @param result
+	 */
+	public synchronized void add(GameResult result)
+	{
+		Entry entry = entries.get(result.getParametersHash());
+		
+		if (entry == null)
+		{
+			entry = new Entry(result.getExperimentName());
+			entries.put(result.getParametersHash(), entry);
+		}
+		
+		entry.statistics.add(result.getScore());
+		
+		if (++resultsSincePrint >= printInterval)
+			print();
+	}
+	
+	
+	/**
+	 * Prints the current rankings.
+	 */
+	public synchronized void print()
+	{
+		List<Entry> ranking = new ArrayList<Entry>(entries.values());
+		
+		Collections.sort(ranking, new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry a, Entry b)
+			{
+				return Double.compare(b.statistics.getMean(), a.statistics.getMean());
+			}
+		});
+		
+		out.printf("--- %d configurations ---\n", ranking.size());
+		
+		for (int i = 0; i < ranking.size() && i < size; i++)
+		{
+			ScoreStatistics statistics = ranking.get(i).statistics;
+			
+			out.printf("%3d  %8.1f +/- %6.1f  (%d games)  %s\n", i + 1, statistics.getMean(),
+				statistics.getStandardError(), statistics.getCount(), ranking.get(i).name);
+		}
+		
+		resultsSincePrint = 0;
+	}
+	
+	
+	private static class Entry
+	{
+		public final String name;
+		public final ScoreStatistics statistics;
+		
+		public Entry(String name)
+		{
+			this.name = name;
+			this.statistics = new ScoreStatistics();
+		}
+	}
+}
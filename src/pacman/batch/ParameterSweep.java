@@ -0,0 +1,223 @@
+package pacman.batch;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import pacman.entries.pacman.MonteCarloPacManParameters;
+
+/**
+ * Generates sets of parameters by varying a base set of parameters along one or more dimensions.
+ */
+public class ParameterSweep
+{
+	private final MonteCarloPacManParameters baseParameters;
+	private final List<SweepDimension> dimensions;
+	
+	
+	/**
+	 * Constructor.
+	 * @param baseParameters The parameters to use for anything not being swept.
+	 */
+	public ParameterSweep(MonteCarloPacManParameters baseParameters)
+	{
+		this.baseParameters = baseParameters;
+		this.dimensions = new ArrayList<SweepDimension>();
+	}
+	
+	
+	/**
+	 * Adds a parameter to vary.
+	 * @param path The path to the parameter; see SweepDimension.
+	 * @param minimum The lowest value to try.
+	 * @param maximum The highest value to try.
+	 * @return This object, so that calls can be chained.
+	 */
+	public ParameterSweep addDimension(String path, double minimum, double maximum)
+	{
+		SweepDimension dimension = new SweepDimension(path, minimum, maximum);
+		dimension.validate(baseParameters);
+		dimensions.add(dimension);
+		return this;
+	}
+	
+	
+	/**
+	 * Generates sets of parameters using the specified method.
+	 * @param method One of "grid", "random" or "latin".
+	 * @param size The number of values per dimension for a grid, or the number of samples otherwise.
+	 * @param seed The seed for random methods.
+	 * @return
+	 */
+	public List<MonteCarloPacManParameters> generate(String method, int size, long seed)
+	{
+		if (method.equals("grid"))
+			return grid(size);
+		else if (method.equals("random"))
+			return random(size, seed);
+		else if (method.equals("latin"))
+			return latinHypercube(size, seed);
+		else
+			throw new IllegalArgumentException("Unknown sweep method: " + method);
+	}
+	
+	
+	/**
+	 * Generates every combination of evenly spaced values of each dimension.
+	 * @param steps The number of values to try for each dimension, including the minimum and maximum.
+	 * @return
+	 */
+	public List<MonteCarloPacManParameters> grid(int steps)
+	{
+		List<double[]> points = new ArrayList<double[]>();
+		int[] indices = new int[dimensions.size()];
+		
+		while (true)
+		{
+			double[] point = new double[dimensions.size()];
+			
+			for (int i = 0; i < point.length; i++)
+			{
+				point[i] = steps > 1 ? (double)indices[i] / (steps - 1) : 0.5;
+			}
+			
+			points.add(point);
+			
+			//count through the indices like an odometer
+			int d = 0;
+			
+			while (d < indices.length && ++indices[d] == steps)
+			{
+				indices[d++] = 0;
+			}
+			
+			if (d == indices.length)
+				break;
+		}
+		
+		return createParameters(points);
+	}
+	
+	
+	/**
+	 * Generates uniformly distributed random points.
+	 * @param samples The number of sets of parameters to generate.
+	 * @param seed
+	 * @return
+	 */
+	public List<MonteCarloPacManParameters> random(int samples, long seed)
+	{
+		Random random = new Random(seed);
+		List<double[]> points = new ArrayList<double[]>();
+		
+		for (int s = 0; s < samples; s++)
+		{
+			double[] point = new double[dimensions.size()];
+			
+			for (int i = 0; i < point.length; i++)
+			{
+				point[i] = random.nextDouble();
+			}
+			
+			points.add(point);
+		}
+		
+		return createParameters(points);
+	}
+	
+	
+	/**
+	 * Generates a Latin hypercube sample, i.e. one where each dimension is divided into as many
+	 * intervals as there are samples, and each interval is sampled exactly once.
+	 * @param samples The number of sets of parameters to generate.
+	 * @param seed
+	 * @return
+	 */
+	public List<MonteCarloPacManParameters> latinHypercube(int samples, long seed)
+	{
+		Random random = new Random(seed);
+		double[][] points = new double[samples][dimensions.size()];
+		int[] strata = new int[samples];
+		
+		for (int i = 0; i < dimensions.size(); i++)
+		{
+			for (int s = 0; s < samples; s++)
+			{
+				strata[s] = s;
+			}
+			
+			//Fisher-Yates shuffle of the intervals for this dimension
+			for (int s = samples - 1; s > 0; s--)
+			{
+				int j = random.nextInt(s + 1);
+				int t = strata[s];
+				strata[s] = strata[j];
+				strata[j] = t;
+			}
+			
+			for (int s = 0; s < samples; s++)
+			{
+				points[s][i] = (strata[s] + random.nextDouble()) / samples;
+			}
+		}
+		
+		List<double[]> list = new ArrayList<double[]>();
+		
+		for (double[] point: points)
+		{
+			list.add(point);
+		}
+		
+		return createParameters(list);
+	}
+	
+	
+	/**
+	 * Creates a set of parameters for each point, where each coordinate of a point is the fraction of
+	 * the way through the range of the corresponding dimension.  Points which round to the same parameters
+	 * are only included once.
+	 * @param points
+	 * @return
+	 */
+	private List<MonteCarloPacManParameters> createParameters(List<double[]> points)
+	{
+		List<MonteCarloPacManParameters> result = new ArrayList<MonteCarloPacManParameters>();
+		Set<String> hashes = new HashSet<String>();
+		
+		try
+		{
+			for (double[] point: points)
+			{
+				MonteCarloPacManParameters parameters = baseParameters.copy();
+				StringBuilder name = new StringBuilder();
+				
+				for (int i = 0; i < point.length; i++)
+				{
+					SweepDimension dimension = dimensions.get(i);
+					double value = dimension.getValue(point[i]);
+					dimension.apply(parameters, value);
+					
+					name.append(i == 0 ? "" : ",").append(dimension.getPath()).append('=').append(dimension.format(value));
+				}
+				
+				String baseName = baseParameters.experimentName == null ? "" : baseParameters.experimentName + " ";
+				parameters.experimentName = baseName + "[" + name + "]";
+				
+				if (hashes.add(parameters.getHash()))
+					result.add(parameters);
+			}
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException("Cannot copy the base parameters.", ex);
+		}
+		catch (InstantiationException ex)
+		{
+			throw new IllegalStateException("Cannot copy the base parameters.", ex);
+		}
+		
+		return result;
+	}
+}
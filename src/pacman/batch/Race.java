@@ -0,0 +1,279 @@
+package pacman.batch;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import pacman.MultithreadedWorker;
+import pacman.entries.pacman.MonteCarloPacManParameters;
+
+/**
+ * Races a set of configurations against each other: games are played in rounds, and after each round
+ * any configuration whose mean score is significantly below that of the leader is dropped, so that the
+ * remaining games are spent on the configurations which are still in contention.
+ *
+ * Every configuration plays the same seeds, so each is compared with the leader by a paired t-test on
+ * the differences between their scores seed by seed.  The chance of wrongly dropping anything is kept
+ * within 1 - confidence over the whole race: it is split between the rounds at which configurations can
+ * be dropped if none are, which are the only rounds tested, and within a round between every ordered
+ * pair of configurations, since the leader is only known once the scores are in.
+ */
+public class Race
+{
+	private final List<Contestant> contestants;
+	private final double confidence;
+	private int looks;
+	private int looksTaken;
+	private final int roundSize;
+	private final int minimumGames;
+	private final PrintStream out;
+	private final GamePlayer player;
+	
+	
+	/**
+	 * Constructor.
+	 * @param candidates The configurations to race.
+	 * @param confidence The confidence level required to drop a configuration, e.g. 0.95.
+	 * @param roundSize The number of games each remaining configuration plays per round.
+	 * @param minimumGames The number of games a configuration must have played before it can be dropped.
+	 * @param out Where to report progress.
+	 */
+	public Race(List<MonteCarloPacManParameters> candidates, double confidence, int roundSize, int minimumGames, PrintStream out)
+	{
+		if (confidence <= 0 || confidence >= 1)
+			throw new IllegalArgumentException("The confidence level must be between 0 and 1.");
+		
+		this.contestants = new ArrayList<Contestant>();
+		this.confidence = confidence;
+		this.roundSize = roundSize;
+		this.minimumGames = Math.max(2, minimumGames);
+		this.out = out;
+		this.player = new GamePlayer();
+		
+		for (MonteCarloPacManParameters candidate: candidates)
+		{
+			contestants.add(new Contestant(candidate));
+		}
+	}
+	
+	
+	/**
+	 * Runs the race until one configuration remains or the budget of games is spent.
+	 * @param worker The worker to play the games on.
+	 * @param store The store to save results to and to resume from, or null.
+	 * @param seed The seed used to generate the seeds of the games.  Every configuration plays the same games.
+	 * @param budget The total number of games which may be played.
+	 * @return The configurations which weren't dropped, best first.
+	 * @throws InterruptedException
+	 */
+	public List<MonteCarloPacManParameters> run(MultithreadedWorker worker, final ResultsStore store, long seed, int budget)
+		throws InterruptedException
+	{
+		List<Contestant> remaining = new ArrayList<Contestant>(contestants);
+		long[] seeds = GamePlayer.getSeeds(seed, budget);
+		int gamesUsed = 0;
+		int round = 0;
+		
+		looks = getNumberOfLooks(budget);
+		looksTaken = 0;
+		
+		out.printf("Racing %d configurations with a budget of %d games at %.1f%% confidence over %d looks\n",
+			contestants.size(), budget, confidence * 100, looks);
+		
+		while (remaining.size() > 1)
+		{
+			//share what is left of the budget between the remaining configurations
+			int games = Math.min(roundSize, (budget - gamesUsed) / remaining.size());
+			
+			if (games == 0)
+				break;
+			
+			round++;
+			
+			for (final Contestant contestant: remaining)
+			{
+				for (int i = 0; i < games; i++)
+				{
+					final int game = contestant.gamesPlayed++;
+					final long gameSeed = seeds[game];
+					GameResult previous = store == null ? null : store.getResult(contestant.hash, gameSeed);
+					
+					if (previous != null)
+					{
+						contestant.add(game, previous);
+						continue;
+					}
+					
+					worker.queue(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							GameResult result = player.play(contestant.hash, contestant.copyParameters(), gameSeed);
+							contestant.add(game, result);
+							
+							if (store != null)
+								store.add(result);
+						}
+					});
+				}
+				
+				gamesUsed += games;
+			}
+			
+			worker.waitForCompletion();
+			
+			if (looksTaken < looks)
+				eliminate(remaining, round);
+		}
+		
+		sort(remaining);
+		sort(contestants);
+		
+		out.printf("Race finished after %d rounds and %d of %d games (%.0f%% of a full batch)\n",
+			round, gamesUsed, budget, 100.0 * gamesUsed / budget);
+		
+		for (Contestant contestant: contestants)
+		{
+			out.printf("%s %8.1f +/- %6.1f  (%d games)  %s\n", remaining.contains(contestant) ? "*" : " ",
+				contestant.statistics.getMean(), contestant.statistics.getStandardError(),
+				contestant.statistics.getCount(), contestant.parameters.experimentName);
+		}
+		
+		List<MonteCarloPacManParameters> result = new ArrayList<MonteCarloPacManParameters>();
+		
+		for (Contestant contestant: remaining)
+		{
+			result.add(contestant.parameters);
+		}
+		
+		return result;
+	}
+	
+	
+	/**
+	 * Gets the number of rounds at which configurations could be dropped if none were, which the chance of
+	 * wrongly dropping one is split between.  Rounds after these, which there are if some are dropped, aren't
+	 * tested.
+	 */
+	private int getNumberOfLooks(int budget)
+	{
+		int gamesEach = budget / contestants.size();
+		int rounds = (gamesEach + roundSize - 1) / roundSize;
+		int firstLook = (minimumGames + roundSize - 1) / roundSize;
+		
+		return Math.max(0, rounds - firstLook + 1);
+	}
+	
+	
+	/**
+	 * Drops the configurations which are worse than the leader at the required confidence level.
+	 * @param remaining
+	 * @param round
+	 */
+	private void eliminate(List<Contestant> remaining, int round)
+	{
+		sort(remaining);
+		Contestant leader = remaining.get(0);
+		
+		if (leader.statistics.getCount() < minimumGames)
+			return;
+		
+		//the remaining configurations have all played the same games
+		int games = leader.gamesPlayed;
+		
+		for (Contestant contestant: remaining)
+		{
+			games = Math.min(games, contestant.gamesPlayed);
+		}
+		
+		double significance = (1 - confidence) / looks / (remaining.size() * (remaining.size() - 1));
+		looksTaken++;
+		List<Contestant> dropped = new ArrayList<Contestant>();
+		
+		for (Contestant contestant: remaining)
+		{
+			if (contestant == leader || contestant.statistics.getCount() < minimumGames)
+				continue;
+			
+			ScoreStatistics differences = new ScoreStatistics();
+			
+			for (int i = 0; i < games; i++)
+			{
+				differences.add(contestant.scores[i] - leader.scores[i]);
+			}
+			
+			double p = ScoreStatistics.getProbabilityNotWorse(differences);
+			
+			if (p < significance)
+			{
+				dropped.add(contestant);
+				out.printf("Round %d: dropped %s (%.1f vs %.1f, p = %.2g)\n", round, contestant.parameters.experimentName,
+					contestant.statistics.getMean(), leader.statistics.getMean(), p);
+			}
+		}
+		
+		remaining.removeAll(dropped);
+		out.printf("Round %d: %d configurations remaining, leader %s (%.1f)\n", round, remaining.size(),
+			leader.parameters.experimentName, leader.statistics.getMean());
+	}
+	
+	
+	private static void sort(List<Contestant> list)
+	{
+		Collections.sort(list, new Comparator<Contestant>()
+		{
+			@Override
+			public int compare(Contestant a, Contestant b)
+			{
+				return Double.compare(b.statistics.getMean(), a.statistics.getMean());
+			}
+		});
+	}
+	
+	
+	private static class Contestant
+	{
+		public final MonteCarloPacManParameters parameters;
+		public final String hash;
+		public final ScoreStatistics statistics;
+		public int gamesPlayed;
+		//the scores by game, so that configurations can be compared seed by seed
+		public double[] scores = new double[16];
+		
+		public Contestant(MonteCarloPacManParameters parameters)
+		{
+			this.parameters = parameters;
+			this.hash = parameters.getHash();
+			this.statistics = new ScoreStatistics();
+		}
+		
+		public synchronized void add(int game, GameResult result)
+		{
+			if (game >= scores.length)
+				scores = Arrays.copyOf(scores, Math.max(game + 1, scores.length * 2));
+			
+			scores[game] = result.getScore();
+			statistics.add(result.getScore());
+		}
+		
+		public MonteCarloPacManParameters copyParameters()
+		{
+			try
+			{
+				return parameters.copy();
+			}
+			catch (IllegalAccessException ex)
+			{
+				throw new IllegalStateException("Cannot copy the parameters.", ex);
+			}
+			catch (InstantiationException ex)
+			{
+				throw new IllegalStateException("Cannot copy the parameters.", ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package pacman.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import pacman.entries.pacman.telemetry.LatencySummary;
+
+/**
+ * An append-only file of game results.  Results are handed to a single writer thread so that
+ * game threads never block on I/O, and results already in the file are loaded when the store
+ * is opened so that an interrupted batch can be resumed.
+ */
+public class ResultsStore
+{
+	//queued to tell the writer thread to finish
+	private static final GameResult END_OF_RESULTS = new GameResult(null, null, 0, 0, 0, 0, 0, 0, 0, 0,
+		LatencySummary.EMPTY, LatencySummary.EMPTY, 0, 0);
+	
+	private final Map<String, GameResult> results;
+	private final BlockingQueue<GameResult> queue;
+	private final Writer writer;
+	private final Thread writerThread;
+	private volatile IOException writeError;
+	
+	
+	/**
+	 * Constructor.  Opens the file, creating it if it doesn't exist.
+	 * @param file The file to append results to.
+	 * @throws IOException
+	 */
+	public ResultsStore(File file) throws IOException
+	{
+		results = new ConcurrentHashMap<String, GameResult>();
+		queue = new LinkedBlockingQueue<GameResult>();
+		
+		boolean exists = file.exists() && file.length() > 0;
+		
+		if (exists)
+			load(file);
+		
+		writer = new BufferedWriter(new FileWriter(file, true));
+		
+		if (!exists)
+		{
+			writer.write(GameResult.getHeader());
+			writer.write('\n');
+		}
+		else if (!endsWithNewLine(file))
+		{
+			//the last record was cut short by a crash and wasn't loaded, so make sure the next one starts on a
+			//fresh line
+			writer.write('\n');
+		}
+		
+		writerThread = new Thread("results-writer")
+		{
+			@Override
+			public void run()
+			{
+				writeResults();
+			}
+		};
+		
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+	
+	
+	/**
+	 * Determines if a game has already been played with the specified parameters and seed.
+	 * @param parametersHash
+	 * @param seed
+	 * @return
+	 */
+	public boolean isCompleted(String parametersHash, long seed)
+	{
+		return results.containsKey(getKey(parametersHash, seed));
+	}
+	
+	
+	/**
+	 * Gets the result of the game played with the specified parameters and seed.
+	 * @param parametersHash
+	 * @param seed
+	 * @return The result, or null if no such game has been played.
+	 */
+	public GameResult getResult(String parametersHash, long seed)
+	{
+		return results.get(getKey(parametersHash, seed));
+	}
+	
+	
+	/**
+	 * Gets all results in the store, including those loaded from the file.
+	 * @return
+	 */
+	public Collection<GameResult> getResults()
+	{
+		return new ArrayList<GameResult>(results.values());
+	}
+	
+	
+	/**
+	 * Adds a result to the store.  The result is written to the file in the background.
+	 * @param result
+	 */
+	public void add(GameResult result)
+	{
+		results.put(getKey(result.getParametersHash(), result.getSeed()), result);
+		queue.add(result);
+	}
+	
+	
+	/**
+	 * Writes any outstanding results and closes the file.
+	 * @throws IOException If any result could not be written.
+	 */
+	public void close() throws IOException
+	{
+		queue.add(END_OF_RESULTS);
+		
+		try
+		{
+			writerThread.join();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		if (writeError != null)
+			throw writeError;
+	}
+	
+	
+	/**
+	 * Writes results as they are queued, flushing whenever the queue is empty so that as little
+	 * as possible is lost if the process dies.
+	 */
+	private void writeResults()
+	{
+		try
+		{
+			try
+			{
+				while (true)
+				{
+					GameResult result = queue.take();
+					
+					//write everything that is waiting before flushing
+					while (result != null)
+					{
+						if (result == END_OF_RESULTS)
+							return;
+						
+						writer.write(result.toLine());
+						writer.write('\n');
+						result = queue.poll();
+					}
+					
+					writer.flush();
+				}
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			writeError = ex;
+		}
+		catch (InterruptedException ex)
+		{
+			//nothing more will be written
+		}
+	}
+	
+	
+	/**
+	 * Loads the results already in the file, ignoring any incomplete records.
+	 * @param file
+	 * @throws IOException
+	 */
+	private void load(File file) throws IOException
+	{
+		boolean complete = endsWithNewLine(file);
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		
+		try
+		{
+			String line = reader.readLine();
+			
+			while (line != null)
+			{
+				String next = reader.readLine();
+				
+				//a last line with no new line after it was cut short by a crash, so the game is played again
+				if (next != null || complete)
+				{
+					GameResult result = GameResult.parse(line);
+					
+					if (result != null)
+						results.put(getKey(result.getParametersHash(), result.getSeed()), result);
+				}
+				
+				line = next;
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	
+	private static boolean endsWithNewLine(File file) throws IOException
+	{
+		RandomAccessFile f = new RandomAccessFile(file, "r");
+		
+		try
+		{
+			f.seek(f.length() - 1);
+			return f.read() == '\n';
+		}
+		finally
+		{
+			f.close();
+		}
+	}
+	
+	
+	private static String getKey(String parametersHash, long seed)
+	{
+		return parametersHash + "/" + seed;
+	}
+}
@@ -0,0 +1,215 @@
+package pacman.batch;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+
+import pacman.MultithreadedWorker;
+import pacman.controllers.Controller;
+import pacman.entries.pacman.MonteCarloPacManParameters;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+
+/**
+ * Measures how playing strength scales with compute.  The agent is played with a ladder of fixed
+ * simulation budgets against each opponent on the same seeds, giving a score curve which doesn't
+ * depend on the speed of the machine, and the simulation throughput is measured with a ladder of
+ * concurrently running games, giving the rate at which each core can supply those simulations.
+ *
+ * The agent searches on a single thread, so a thread count here is the number of games being
+ * played at once; the per-thread rate at a given thread count, multiplied by the time available
+ * for a move, gives the budget the agent can actually afford on that many busy cores.
+ */
+public class ScalingBenchmark
+{
+	private final MonteCarloPacManParameters baseParameters;
+	private final int[] budgets;
+	private final int[] threadCounts;
+	private final Controller<EnumMap<GHOST, MOVE>>[] opponents;
+	private final int games;
+	private final long seed;
+	private final GamePlayer player;
+	
+	
+	/**
+	 * Constructor.
+	 * @param baseParameters The parameters to benchmark; simulationCount and opponent are overridden.
+	 * @param budgets The simulation counts to play with.
+	 * @param threadCounts The numbers of concurrent games to measure throughput with.
+	 * @param opponents The ghost controllers to play against.
+	 * @param games The number of games to play for each opponent and budget, at each thread count.
+	 * @param seed The seed used to generate the seeds of the games.
+	 */
+	public ScalingBenchmark(MonteCarloPacManParameters baseParameters, int[] budgets, int[] threadCounts,
+		Controller<EnumMap<GHOST, MOVE>>[] opponents, int games, long seed)
+	{
+		this.baseParameters = baseParameters;
+		this.budgets = budgets;
+		this.threadCounts = threadCounts;
+		this.opponents = opponents;
+		this.games = games;
+		this.seed = seed;
+		this.player = new GamePlayer();
+	}
+	
+	
+	/**
+	 * Runs the benchmark, writing tab separated tables of the results.
+	 * @param out
+	 * @throws InterruptedException
+	 */
+	public void run(PrintStream out) throws InterruptedException
+	{
+		long[] seeds = GamePlayer.getSeeds(seed, games);
+		int maximumThreads = 1;
+		
+		for (int threads: threadCounts)
+		{
+			maximumThreads = Math.max(maximumThreads, threads);
+		}
+		
+		//score curves, played as fast as possible since the budgets are fixed; the scores don't depend on the
+		//number of threads, so these games are also the top rung of the throughput ladder
+		out.println("#opponent\tsimulations\tgames\tmeanScore\tstandardError\tmeanLevel\tsimulationsPerSecond");
+		Summary[][] fastest = play(maximumThreads, seeds);
+		
+		for (int i = 0; i < opponents.length; i++)
+		{
+			for (int j = 0; j < budgets.length; j++)
+			{
+				Summary summary = fastest[i][j];
+				
+				out.printf("%s\t%d\t%d\t%.1f\t%.1f\t%.2f\t%.0f\n", opponents[i].getClass().getSimpleName(),
+					budgets[j], summary.scores.getCount(), summary.scores.getMean(), summary.scores.getStandardError(),
+					summary.levels.getMean(), summary.simulationRate.getMean());
+			}
+		}
+		
+		out.flush();
+		
+		//throughput with increasing numbers of busy cores, with the same games at each number
+		out.println("#threads\topponent\tsimulations\tgames\tsimulationsPerSecondPerThread\tstandardError\ttotalSimulationsPerSecond");
+		
+		for (int threads: threadCounts)
+		{
+			Summary[][] summaries = threads == maximumThreads ? fastest : play(threads, seeds);
+			
+			for (int i = 0; i < opponents.length; i++)
+			{
+				for (int j = 0; j < budgets.length; j++)
+				{
+					double rate = summaries[i][j].simulationRate.getMean();
+					
+					out.printf("%d\t%s\t%d\t%d\t%.0f\t%.0f\t%.0f\n", threads, opponents[i].getClass().getSimpleName(),
+						budgets[j], summaries[i][j].scores.getCount(), rate,
+						summaries[i][j].simulationRate.getStandardError(), rate * threads);
+				}
+			}
+			
+			out.flush();
+		}
+	}
+	
+	
+	/**
+	 * Plays the games for every opponent and budget with a number of games running at once.
+	 * @param threads
+	 * @param seeds
+	 * @return The summaries by opponent and then budget.
+	 * @throws InterruptedException
+	 */
+	private Summary[][] play(int threads, long[] seeds) throws InterruptedException
+	{
+		Summary[][] summaries = new Summary[opponents.length][budgets.length];
+		MultithreadedWorker worker = new MultithreadedWorker(threads);
+		
+		try
+		{
+			for (int i = 0; i < opponents.length; i++)
+			{
+				for (int j = 0; j < budgets.length; j++)
+				{
+					summaries[i][j] = play(worker, opponents[i], budgets[j], seeds);
+				}
+			}
+		}
+		finally
+		{
+			worker.shutdown();
+		}
+		
+		return summaries;
+	}
+	
+	
+	/**
+	 * Plays a game on each seed with the specified budget and opponent and summarises the results.
+	 * @param worker
+	 * @param opponent
+	 * @param budget
+	 * @param seeds
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private Summary play(MultithreadedWorker worker, Controller<EnumMap<GHOST, MOVE>> opponent, int budget, long[] seeds)
+		throws InterruptedException
+	{
+		final Summary summary = new Summary();
+		
+		for (final long gameSeed: seeds)
+		{
+			final MonteCarloPacManParameters run = createParameters(opponent, budget);
+			
+			worker.queue(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					GameResult result = player.play(run.getHash(), run, gameSeed);
+					summary.add(result);
+				}
+			});
+		}
+		
+		worker.waitForCompletion();
+		return summary;
+	}
+	
+	
+	private MonteCarloPacManParameters createParameters(Controller<EnumMap<GHOST, MOVE>> opponent, int budget)
+	{
+		try
+		{
+			MonteCarloPacManParameters run = baseParameters.copy();
+			run.simulationCount = budget;
+			run.opponent = opponent;
+			
+			//copied again so that each game has its own instance of the opponent
+			return run.copy();
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+		catch (InstantiationException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+	}
+	
+	
+	private static class Summary
+	{
+		public final ScoreStatistics scores = new ScoreStatistics();
+		public final ScoreStatistics levels = new ScoreStatistics();
+		public final ScoreStatistics simulationRate = new ScoreStatistics();
+		
+		public synchronized void add(GameResult result)
+		{
+			scores.add(result.getScore());
+			levels.add(result.getLevel());
+			
+			if (result.getWallTime() > 0)
+				simulationRate.add(1000.0 * result.getNumberOfSimulations() / result.getWallTime());
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package pacman.batch;
+
+/**
+ * Accumulates the mean and variance of a series of scores.
+ */
+public class ScoreStatistics
+{
+	private int count;
+	private double mean;
+	private double sumOfSquares;
+	
+	
+	/**
+	 * Adds a score to the series.
+	 * @param score
+	 */
+	public void add(double score)
+	{
+		//Welford's method, as used for the node variances in GameNode
+		count++;
+		double lastMean = mean;
+		mean += (score - lastMean) / count;
+		sumOfSquares += (score - lastMean) * (score - mean);
+	}
+	
+	
+	public int getCount()
+	{
+		return count;
+	}
+	
+	
+	public double getMean()
+	{
+		return mean;
+	}
+	
+	
+	/**
+	 * Gets the sample variance of the scores.
+	 * @return
+	 */
+	public double getVariance()
+	{
+		return count > 1 ? sumOfSquares / (count - 1) : 0;
+	}
+	
+	
+	/**
+	 * Gets the standard error of the mean.
+	 * @return
+	 */
+	public double getStandardError()
+	{
+		return count > 0 ? Math.sqrt(getVariance() / count) : 0;
+	}
+	
+	
+	/**
+	 * Performs a one-sided paired t-test of the hypothesis that a is worse than b, given the differences
+	 * between their scores on the same games.
+	 * @param differences The score of a minus the score of b, for each game both played.
+	 * @return The p-value, i.e. the probability of the observed differences if the mean of a is
+	 * in fact at least the mean of b.  Small values mean that a is very likely worse than b.
+	 */
+	public static double getProbabilityNotWorse(ScoreStatistics differences)
+	{
+		if (differences.count < 2)
+			return 1;
+		
+		double standardError = differences.getStandardError();
+		
+		//identical differences can't be told apart any other way
+		if (standardError == 0)
+			return differences.mean < 0 ? 0 : 1;
+		
+		return studentCdf(differences.mean / standardError, differences.count - 1);
+	}
+	
+	
+	/**
+	 * The cumulative distribution function of Student's t distribution.
+	 * @param t
+	 * @param degreesOfFreedom
+	 * @return
+	 */
+	private static double studentCdf(double t, double degreesOfFreedom)
+	{
+		double tail = 0.5 * incompleteBeta(degreesOfFreedom / (degreesOfFreedom + t * t), degreesOfFreedom / 2, 0.5);
+		return t > 0 ? 1 - tail : tail;
+	}
+	
+	
+	/**
+	 * The regularised incomplete beta function, evaluated by continued fraction (Numerical Recipes, 6.4).
+	 */
+	private static double incompleteBeta(double x, double a, double b)
+	{
+		if (x <= 0)
+			return 0;
+		else if (x >= 1)
+			return 1;
+		
+		double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+		
+		//the continued fraction converges quickly on one side of the mean only
+		if (x < (a + 1) / (a + b + 2))
+			return front * betaContinuedFraction(x, a, b) / a;
+		else
+			return 1 - front * betaContinuedFraction(1 - x, b, a) / b;
+	}
+	
+	
+	private static double betaContinuedFraction(double x, double a, double b)
+	{
+		final double tiny = 1e-300;
+		double c = 1;
+		double d = 1 - (a + b) * x / (a + 1);
+		d = 1 / (Math.abs(d) < tiny ? tiny : d);
+		double h = d;
+		
+		for (int m = 1; m <= 200; m++)
+		{
+			int m2 = 2 * m;
+			
+			//even step
+			double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+			d = 1 / nonZero(1 + aa * d, tiny);
+			c = nonZero(1 + aa / c, tiny);
+			h *= d * c;
+			
+			//odd step
+			aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+			d = 1 / nonZero(1 + aa * d, tiny);
+			c = nonZero(1 + aa / c, tiny);
+			double delta = d * c;
+			h *= delta;
+			
+			if (Math.abs(delta - 1) < 1e-12)
+				break;
+		}
+		
+		return h;
+	}
+	
+	
+	private static double nonZero(double value, double tiny)
+	{
+		return Math.abs(value) < tiny ? tiny : value;
+	}
+	
+	
+	/**
+	 * The natural logarithm of the gamma function (Lanczos approximation).
+	 */
+	private static double logGamma(double x)
+	{
+		final double[] coefficients = { 76.18009172947146, -86.50532032941677, 24.01409824083091,
+			-1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5 };
+		
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= (x + 0.5) * Math.log(tmp);
+		double series = 1.000000000190015;
+		
+		for (double coefficient: coefficients)
+		{
+			series += coefficient / ++y;
+		}
+		
+		return -tmp + Math.log(2.5066282746310005 * series / x);
+	}
+}
@@ -0,0 +1,240 @@
+package pacman.batch;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import pacman.entries.pacman.MonteCarloPacManParameters;
+import pacman.entries.pacman.evaluators.ITreeEvaluator;
+import pacman.entries.pacman.selectionpolicies.ISelectionPolicy;
+
+/**
+ * A numeric parameter which is varied over a range by a parameter sweep.  The parameter is identified
+ * by a path, which is one of:
+ *
+ * "field" - a public field of MonteCarloPacManParameters, e.g. "deathPenalty";
+ * "selectionPolicy.field" - a field of the selection policy, e.g. "selectionPolicy.balanceParameter";
+ * "EvaluatorClass.field" - a field of the evaluator of that type, e.g. "DistanceToOpportunityEvaluator.pillScore".
+ *
+ * Policies and evaluators are copied before being modified, so the objects in the original parameters
+ * are never changed.
+ */
+public class SweepDimension
+{
+	private static final String SELECTION_POLICY = "selectionPolicy";
+	
+	private final String path;
+	private final String ownerName;
+	private final String fieldName;
+	private final double minimum;
+	private final double maximum;
+	private boolean integer;
+	
+	
+	/**
+	 * Constructor.
+	 * @param path The path to the parameter, as described above.
+	 * @param minimum The lowest value to try.
+	 * @param maximum The highest value to try.
+	 */
+	public SweepDimension(String path, double minimum, double maximum)
+	{
+		if (minimum > maximum)
+			throw new IllegalArgumentException("The minimum of " + path + " is greater than its maximum.");
+		
+		int dot = path.indexOf('.');
+		
+		this.path = path;
+		this.ownerName = dot < 0 ? null : path.substring(0, dot);
+		this.fieldName = path.substring(dot + 1);
+		this.minimum = minimum;
+		this.maximum = maximum;
+	}
+	
+	
+	/**
+	 * Checks that the parameter exists in the specified parameters and is numeric.
+	 * @param parameters
+	 * @throws IllegalArgumentException If the parameter can't be swept.
+	 */
+	public void validate(MonteCarloPacManParameters parameters)
+	{
+		Field field = getField(getOwner(parameters));
+		integer = field.getType() == int.class || field.getType() == long.class;
+		
+		if (!integer && field.getType() != double.class)
+			throw new IllegalArgumentException(path + " is not a numeric parameter.");
+	}
+	
+	
+	/**
+	 * Gets the value a given fraction of the way through the range, rounded if the parameter is an integer.
+	 * @param fraction A number between 0 and 1.
+	 * @return
+	 */
+	public double getValue(double fraction)
+	{
+		double value = minimum + fraction * (maximum - minimum);
+		return integer ? Math.round(value) : value;
+	}
+	
+	
+	/**
+	 * Sets the parameter to the specified value.
+	 * @param parameters The parameters to modify.
+	 * @param value
+	 */
+	public void apply(MonteCarloPacManParameters parameters, double value)
+	{
+		Object owner = getOwner(parameters);
+		
+		//don't modify policies and evaluators in place, since they're shared between copies of parameters
+		if (owner != parameters)
+			owner = copy(owner);
+		
+		Field field = getField(owner);
+		
+		try
+		{
+			if (field.getType() == int.class)
+				field.setInt(owner, (int)Math.round(value));
+			else if (field.getType() == long.class)
+				field.setLong(owner, Math.round(value));
+			else
+				field.setDouble(owner, value);
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalArgumentException("Cannot set " + path, ex);
+		}
+		
+		if (owner != parameters)
+			replaceOwner(parameters, owner);
+	}
+	
+	
+	public String getPath()
+	{
+		return path;
+	}
+	
+	
+	public double getMinimum()
+	{
+		return minimum;
+	}
+	
+	
+	public double getMaximum()
+	{
+		return maximum;
+	}
+	
+	
+	/**
+	 * Formats a value of this parameter for use in an experiment name.
+	 * @param value
+	 * @return
+	 */
+	public String format(double value)
+	{
+		return integer ? Long.toString(Math.round(value)) : String.format("%.4g", value);
+	}
+	
+	
+	/**
+	 * Gets the object which holds the parameter.
+	 * @param parameters
+	 * @return
+	 */
+	private Object getOwner(MonteCarloPacManParameters parameters)
+	{
+		if (ownerName == null)
+			return parameters;
+		
+		if (ownerName.equals(SELECTION_POLICY))
+			return parameters.selectionPolicy;
+		
+		return parameters.additionalEvaluators[getEvaluatorIndex(parameters)];
+	}
+	
+	
+	/**
+	 * Puts a modified copy of the object which holds the parameter in place of the original.
+	 * @param parameters
+	 * @param owner
+	 */
+	private void replaceOwner(MonteCarloPacManParameters parameters, Object owner)
+	{
+		if (ownerName.equals(SELECTION_POLICY))
+		{
+			parameters.selectionPolicy = (ISelectionPolicy)owner;
+		}
+		else
+		{
+			ITreeEvaluator[] evaluators = parameters.additionalEvaluators.clone();
+			evaluators[getEvaluatorIndex(parameters)] = (ITreeEvaluator)owner;
+			parameters.additionalEvaluators = evaluators;
+		}
+	}
+	
+	
+	private int getEvaluatorIndex(MonteCarloPacManParameters parameters)
+	{
+		if (parameters.additionalEvaluators != null)
+		{
+			for (int i = 0; i < parameters.additionalEvaluators.length; i++)
+			{
+				if (parameters.additionalEvaluators[i].getClass().getSimpleName().equals(ownerName))
+					return i;
+			}
+		}
+		
+		throw new IllegalArgumentException("There is no " + ownerName + " in the parameters for " + path);
+	}
+	
+	
+	private Field getField(Object owner)
+	{
+		for (Class<?> type = owner.getClass(); type != null; type = type.getSuperclass())
+		{
+			try
+			{
+				Field field = type.getDeclaredField(fieldName);
+				
+				if (!Modifier.isStatic(field.getModifiers()))
+				{
+					field.setAccessible(true);
+					return field;
+				}
+			}
+			catch (NoSuchFieldException ex)
+			{
+				//try the superclass
+			}
+		}
+		
+		throw new IllegalArgumentException("Unknown parameter: " + path);
+	}
+	
+	
+	/**
+	 * Makes a copy of an object with a default constructor by copying all of its fields.
+	 * @param original
+	 * @return
+	 */
+	private static Object copy(Object original)
+	{
+		try
+		{
+			return MonteCarloPacManParameters.copyComponent(original);
+		}
+		catch (InstantiationException ex)
+		{
+			throw new IllegalArgumentException("Cannot copy " + original.getClass().getSimpleName(), ex);
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalArgumentException("Cannot copy " + original.getClass().getSimpleName(), ex);
+		}
+	}
+}
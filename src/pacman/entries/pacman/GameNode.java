@@ -1,10 +1,10 @@
 package pacman.entries.pacman;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
-import pacman.game.Constants.GHOST;
+import pacman.entries.pacman.ghostabstractions.ExactGhostAbstraction;
+import pacman.entries.pacman.ghostabstractions.IGhostAbstraction;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
 
@@ -13,8 +13,15 @@ public class GameNode
 {
 	private MOVE move;
 	private int totalScore, numberOfVisits, scoreBonus;
+	private double heuristicBias;
+	private int amafVisits;
+	private long amafTotalScore;
 	private GameNode parent;
-	private Map<Object, GameNode> children;
+	private GameNode[] childArray;
+	//the ghost children by their ghost positions, as an open addressing table of size a power of two, so
+	//that looking them up doesn't box the positions; only created once a node has more than a few of them
+	private GameNode[] ghostChildTable;
+	private int numberOfChildren;
 	private int nodeIndex;
 	private long sumOfSquares;
 	private double mean;
@@ -22,6 +29,16 @@ public class GameNode
 	private boolean moveEatsPills;
 	private long ghostPositions;
 	
+	/**
+	 * The ghost positions of the child which is shared once a node has as many children as it's allowed.
+	 */
+	public static final long OVERFLOW_GHOST_POSITIONS = -1;
+	
+	private static final IGhostAbstraction EXACT_GHOST_POSITIONS = new ExactGhostAbstraction();
+	
+	//the number of ghost children which are looked up by scanning, before the table is made
+	private static final int GHOST_CHILD_SCAN_LIMIT = 8;
+	
 	/**
 	 * Constructor for root nodes. 
 	 */
@@ -81,21 +98,85 @@ public class GameNode
 	}
 	
 	
+	/**
+	 * Gets the bonus added to the average score.
+	 * @return
+	 */
+	public int getScoreBonus()
+	{
+		return scoreBonus;
+	}
+	
+	
+	/**
+	 * Adds to the heuristic bias, which selection policies add to the UCB value with a weight that
+	 * decays as the node is visited, rather than to the average score.
+	 * @param bias
+	 */
+	public void addHeuristicBias(double bias)
+	{
+		this.heuristicBias += bias;
+	}
+	
+	
+	/**
+	 * Adds the score of a simulation in which this node's move was played from its parent's maze position,
+	 * at any point after the parent was reached (All-Moves-As-First).
+	 * @param score
+	 */
+	public void updateAmafScore(int score)
+	{
+		amafTotalScore += score;
+		amafVisits++;
+	}
+	
+	
+	/**
+	 * Gets the number of simulations counted in the All-Moves-As-First statistics.
+	 * @return
+	 */
+	public int getAmafVisits()
+	{
+		return amafVisits;
+	}
+	
+	
+	/**
+	 * Gets the average All-Moves-As-First score, or zero if there haven't been any.
+	 * @return
+	 */
+	public double getAmafAverageScore()
+	{
+		return amafVisits == 0 ? 0 : (double)amafTotalScore / amafVisits;
+	}
+	
+	
+	/**
+	 * Gets the heuristic bias of this node.
+	 * @return
+	 */
+	public double getHeuristicBias()
+	{
+		return heuristicBias;
+	}
+	
+	
 	/**
 	 * Expands this node by adding children based on the possible moves from the current position in game. 
 	 * @param game
 	 */
 	public void expand(Game game)
 	{
-		MOVE[] possibleMoves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex());
-		children = new HashMap<Object, GameNode>(possibleMoves.length);
+		MOVE[] possibleMoves = MazeTopology.get(game).getPossibleMoves(game.getPacmanCurrentNodeIndex());
+		childArray = new GameNode[possibleMoves.length];
+		numberOfChildren = possibleMoves.length;
 		
 		//node index is stored so that hints can be drawn on the Pac-Man view
 		nodeIndex = game.getPacmanCurrentNodeIndex();
 		
 		for (int i = 0; i < possibleMoves.length; i++)
 		{
-			children.put(possibleMoves[i], new GameNode(this, possibleMoves[i]));
+			childArray[i] = new GameNode(this, possibleMoves[i]);
 		}
 	}
 	
@@ -106,7 +187,7 @@ public class GameNode
 	 */
 	public boolean isLeafNode()
 	{
-		return children == null;
+		return childArray == null;
 	}
 	
 	
@@ -127,6 +208,16 @@ public class GameNode
 	{
 		numberOfVisits++;
 	}
+	
+	
+	/**
+	 * Takes back a visit added by incrementNumberOfVisits(), before the score of the simulation it was added for
+	 * is given to updateScore(), which counts the visit itself.
+	 */
+	public void decrementNumberOfVisits()
+	{
+		numberOfVisits--;
+	}
 
 	
 	/**
@@ -140,15 +231,37 @@ public class GameNode
 	
 	
 	/**
-	 * Gets the children of this node.
+	 * Gets the children of this node, in the order they were added, which is the same every time a game is
+	 * played.
 	 * @return
 	 */
 	public Collection<GameNode> getChildren()
 	{
-		if (children == null)
+		if (childArray == null)
 			return null;
 		
-		return children.values();
+		return Arrays.asList(childArray).subList(0, numberOfChildren);
+	}
+	
+	
+	/**
+	 * Gets the children of this node as an array, so that they can be scanned without allocating an
+	 * iterator.  Only the first getNumberOfChildren() elements are used, and the array must not be changed.
+	 * @return The array of children, or null if this is a leaf node.
+	 */
+	public GameNode[] getChildArray()
+	{
+		return childArray;
+	}
+	
+	
+	/**
+	 * Gets the number of children this node has.
+	 * @return
+	 */
+	public int getNumberOfChildren()
+	{
+		return numberOfChildren;
 	}
 	
 	
@@ -254,14 +367,10 @@ public class GameNode
 	 */
 	public boolean getCanEatPillsOnSubsequentMove()
 	{
-		//if there's no children, return false
-		if (children == null)
-			return false;
-		
 		//basically, this condition is true if any of the child moves eat pills
-		for (GameNode child: children.values())
+		for (int i = 0; i < numberOfChildren; i++)
 		{
-			if (child.getMoveEatsPills())
+			if (childArray[i].getMoveEatsPills())
 				return true;
 		}
 		
@@ -276,10 +385,13 @@ public class GameNode
 	 */
 	public GameNode getChild(MOVE move)
 	{
-		if (children == null)
-			return null;
+		for (int i = 0; i < numberOfChildren; i++)
+		{
+			if (childArray[i].move == move)
+				return childArray[i];
+		}
 		
-		return children.get(move);
+		return null;
 	}
 	
 	
@@ -290,19 +402,41 @@ public class GameNode
 	 * added to the children collection, and returned.
 	 */
 	public GameNode getChild(Game game)
+	{
+		return getChild(game, EXACT_GHOST_POSITIONS, 0);
+	}
+	
+	
+	/**
+	 * Gets the child node which corresponds to the state of the ghosts in the specified game instance.
+	 * @param game
+	 * @param abstraction The abstraction which decides which ghost states share a child.
+	 * @param maximumChildren The number of children which can be created, or 0 for no limit.  Once there
+	 * are this many, games whose ghost state doesn't have a child yet all share one extra child.
+	 * @return The node representing the ghost state if there is one; otherwise, a new one is created,
+	 * added to the children collection, and returned.
+	 */
+	public GameNode getChild(Game game, IGhostAbstraction abstraction, int maximumChildren)
 	{
 		//translate the ghost positions in the game into a long integer
-		long position = getGhostPositions(game);
+		long position = abstraction.getKey(game);
 		GameNode node;
 		
 		//check if there's any children yet
-		if (children == null)
+		if (childArray == null)
 		{
-			children = new HashMap<Object, GameNode>();
+			childArray = new GameNode[4];
 		}
 		else
 		{
-			node = children.get(position);
+			node = findGhostChild(position);
+			
+			if (node == null && maximumChildren > 0 && numberOfChildren >= maximumChildren)
+			{
+				//there's no more room, so use the overflow child
+				position = OVERFLOW_GHOST_POSITIONS;
+				node = findGhostChild(position);
+			}
 			
 			if (node != null)
 			{
@@ -316,33 +450,109 @@ public class GameNode
 		node = new GameNode(this, MOVE.NEUTRAL);
 		node.incrementNumberOfVisits();
 		node.setGhostPositions(position);
-		children.put(position, node);
+		
+		if (numberOfChildren == childArray.length)
+			childArray = Arrays.copyOf(childArray, numberOfChildren * 2);
+		
+		childArray[numberOfChildren++] = node;
+		
+		if (ghostChildTable != null)
+			addToGhostChildTable(node);
+		else if (numberOfChildren > GHOST_CHILD_SCAN_LIMIT)
+			rebuildGhostChildTable();
 
 		return node;
 	}
 	
 	
 	/**
-	 * Gets the long integer containing all the ghost positions for the specified game instance.
-	 * @param game
-	 * @return
+	 * Finds the ghost child with the given ghost positions.
+	 * @return The child, or null if there isn't one.
+	 */
+	private GameNode findGhostChild(long position)
+	{
+		if (ghostChildTable == null)
+		{
+			for (int i = 0; i < numberOfChildren; i++)
+			{
+				if (childArray[i].ghostPositions == position)
+					return childArray[i];
+			}
+			
+			return null;
+		}
+		
+		int mask = ghostChildTable.length - 1;
+		
+		for (int slot = hash(position) & mask; ghostChildTable[slot] != null; slot = (slot + 1) & mask)
+		{
+			if (ghostChildTable[slot].ghostPositions == position)
+				return ghostChildTable[slot];
+		}
+		
+		return null;
+	}
+	
+	
+	/**
+	 * Adds a ghost child to the table, growing it if it would be more than half full.
+	 */
+	private void addToGhostChildTable(GameNode node)
+	{
+		if (numberOfChildren * 2 > ghostChildTable.length)
+		{
+			rebuildGhostChildTable();
+			return;
+		}
+		
+		int mask = ghostChildTable.length - 1;
+		int slot = hash(node.ghostPositions) & mask;
+		
+		while (ghostChildTable[slot] != null)
+		{
+			slot = (slot + 1) & mask;
+		}
+		
+		ghostChildTable[slot] = node;
+	}
+	
+	
+	/**
+	 * Makes a table with room for twice as many ghost children as there are, and adds them all to it.
+	 */
+	private void rebuildGhostChildTable()
+	{
+		ghostChildTable = new GameNode[Integer.highestOneBit(numberOfChildren) * 4];
+		int mask = ghostChildTable.length - 1;
+		
+		for (int i = 0; i < numberOfChildren; i++)
+		{
+			int slot = hash(childArray[i].ghostPositions) & mask;
+			
+			while (ghostChildTable[slot] != null)
+			{
+				slot = (slot + 1) & mask;
+			}
+			
+			ghostChildTable[slot] = childArray[i];
+		}
+	}
+	
+	
+	/**
+	 * Spreads the bits of the ghost positions over the low bits of the hash, which pick the slot.
 	 */
-	private long getGhostPositions(Game game)
+	private static int hash(long position)
 	{
-		long positions;
-		positions = game.getGhostCurrentNodeIndex(GHOST.BLINKY);
-		positions <<= 16;
-		positions |= game.getGhostCurrentNodeIndex(GHOST.INKY);
-		positions <<= 16;
-		positions |= game.getGhostCurrentNodeIndex(GHOST.PINKY);
-		positions <<= 16;
-		positions |= game.getGhostCurrentNodeIndex(GHOST.SUE);
-		return positions;
+		long h = position * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
 	}
 	
 	
 	/**
-	 * Gets the ghost positions stored for this node.
+	 * Gets the ghost positions stored for this node, which is the key given by the ghost abstraction
+	 * (the exact positions by default), or OVERFLOW_GHOST_POSITIONS for the child shared by the ghost
+	 * states which didn't fit.
 	 * @return
 	 */
 	public long getGhostPositions()
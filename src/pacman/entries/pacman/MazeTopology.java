@@ -0,0 +1,218 @@
+package pacman.entries.pacman;
+
+import java.util.Arrays;
+
+import pacman.game.Constants;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * An index of the parts of a maze which the search looks at every tick: which nodes are junctions or
+ * power pills, which directions Ms Pac-Man can keep going in from each node, and which corridor each node
+ * belongs to.  There is one for each maze, built the first time it's needed and never changed, so it is
+ * shared by all the simulators on all threads.
+ */
+public final class MazeTopology
+{
+	private static final MazeTopology[] topologies = new MazeTopology[Constants.NUM_MAZES];
+	
+	private final int mazeIndex;
+	private final long[] junctions;
+	private final long[] powerPills;
+	private final int[] powerPillIndices;
+	private final byte[] moveMasks;
+	private final MOVE[][] possibleMoves;
+	private final int[] corridors;
+	private final int numberOfCorridors;
+	
+	
+	/**
+	 * Gets the topology of the maze the specified game is being played in.
+	 * @param game
+	 * @return
+	 */
+	public static MazeTopology get(Game game)
+	{
+		//the fields are final, so a topology built by another thread is always seen complete
+		MazeTopology topology = topologies[game.getMazeIndex()];
+		
+		if (topology == null)
+			topology = build(game);
+		
+		return topology;
+	}
+	
+	
+	private static synchronized MazeTopology build(Game game)
+	{
+		MazeTopology topology = topologies[game.getMazeIndex()];
+		
+		if (topology == null)
+		{
+			topology = new MazeTopology(game);
+			topologies[game.getMazeIndex()] = topology;
+		}
+		
+		return topology;
+	}
+	
+	
+	private MazeTopology(Game game)
+	{
+		int numberOfNodes = game.getNumberOfNodes();
+		mazeIndex = game.getMazeIndex();
+		junctions = new long[(numberOfNodes + 63) >> 6];
+		powerPills = new long[junctions.length];
+		moveMasks = new byte[numberOfNodes];
+		possibleMoves = new MOVE[numberOfNodes][];
+		corridors = new int[numberOfNodes];
+		
+		for (int i = 0; i < numberOfNodes; i++)
+		{
+			if (game.isJunction(i))
+				junctions[i >> 6] |= 1L << i;
+			
+			possibleMoves[i] = game.getPossibleMoves(i);
+			
+			for (MOVE move: possibleMoves[i])
+			{
+				moveMasks[i] |= 1 << move.ordinal();
+			}
+		}
+		
+		powerPillIndices = game.getPowerPillIndices().clone();
+		
+		for (int index: powerPillIndices)
+		{
+			powerPills[index >> 6] |= 1L << index;
+		}
+		
+		//number the corridors between the junctions by flooding along them; junctions aren't in a corridor
+		Arrays.fill(corridors, -1);
+		int corridor = 0;
+		
+		for (int i = 0; i < numberOfNodes; i++)
+		{
+			if (corridors[i] == -1 && !isJunction(i))
+				markCorridor(game, i, corridor++);
+		}
+		
+		numberOfCorridors = corridor;
+	}
+	
+	
+	private void markCorridor(Game game, int start, int corridor)
+	{
+		int[] stack = new int[corridors.length];
+		int top = 0;
+		stack[top++] = start;
+		corridors[start] = corridor;
+		
+		while (top > 0)
+		{
+			int node = stack[--top];
+			
+			for (int neighbour: game.getNeighbouringNodes(node))
+			{
+				if (corridors[neighbour] == -1 && !isJunction(neighbour))
+				{
+					corridors[neighbour] = corridor;
+					stack[top++] = neighbour;
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Gets the index of the maze this is the topology of.
+	 * @return
+	 */
+	public int getMazeIndex()
+	{
+		return mazeIndex;
+	}
+	
+	
+	/**
+	 * Determines if a node is a junction, where Ms Pac-Man has a choice of more than two directions.
+	 * @param nodeIndex
+	 * @return
+	 */
+	public boolean isJunction(int nodeIndex)
+	{
+		return (junctions[nodeIndex >> 6] & (1L << nodeIndex)) != 0;
+	}
+	
+	
+	/**
+	 * Determines if a node has a power pill at the start of a level.
+	 * @param nodeIndex
+	 * @return
+	 */
+	public boolean isPowerPill(int nodeIndex)
+	{
+		return (powerPills[nodeIndex >> 6] & (1L << nodeIndex)) != 0;
+	}
+	
+	
+	/**
+	 * Gets the position of a node in the maze's list of power pills, or -1 if it isn't a power pill.
+	 * @param nodeIndex
+	 * @return
+	 */
+	public int getPowerPillNumber(int nodeIndex)
+	{
+		if (!isPowerPill(nodeIndex))
+			return -1;
+		
+		for (int i = 0; i < powerPillIndices.length; i++)
+		{
+			if (powerPillIndices[i] == nodeIndex)
+				return i;
+		}
+		
+		return -1;
+	}
+	
+	
+	/**
+	 * Determines if the specified move can be made from a node.
+	 * @param nodeIndex
+	 * @param move
+	 * @return
+	 */
+	public boolean canMove(int nodeIndex, MOVE move)
+	{
+		return (moveMasks[nodeIndex] & (1 << move.ordinal())) != 0;
+	}
+	
+	
+	/**
+	 * Gets the moves which can be made from a node.  The array is shared and must not be changed.
+	 * @param nodeIndex
+	 * @return
+	 */
+	public MOVE[] getPossibleMoves(int nodeIndex)
+	{
+		return possibleMoves[nodeIndex];
+	}
+	
+	
+	/**
+	 * Gets the number of the corridor a node is part of, or -1 if it is a junction.  Corridors are numbered
+	 * from 0, and run from one junction to another.
+	 * @param nodeIndex
+	 * @return
+	 */
+	public int getCorridor(int nodeIndex)
+	{
+		return corridors[nodeIndex];
+	}
+	
+	
+	public int getNumberOfCorridors()
+	{
+		return numberOfCorridors;
+	}
+}
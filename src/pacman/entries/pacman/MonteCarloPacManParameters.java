@@ -1,6 +1,12 @@
 package pacman.entries.pacman;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.EnumMap;
+import java.util.Random;
 
 import pacman.controllers.Controller;
 import pacman.controllers.examples.Legacy;
@@ -9,8 +15,11 @@ import pacman.entries.pacman.evaluators.DistanceToOpportunityEvaluator;
 import pacman.entries.pacman.evaluators.ITreeEvaluator;
 import pacman.entries.pacman.evaluators.PowerPillActiveEvaluator;
 import pacman.entries.pacman.evaluators.PowerPillDistanceEvaluator;
+import pacman.entries.pacman.ghostabstractions.ExactGhostAbstraction;
+import pacman.entries.pacman.ghostabstractions.IGhostAbstraction;
 import pacman.entries.pacman.selectionpolicies.ISelectionPolicy;
 import pacman.entries.pacman.selectionpolicies.LevineUcbSelectionPolicy;
+import pacman.entries.pacman.stoppingrules.IStoppingRule;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 
@@ -102,6 +111,76 @@ public class MonteCarloPacManParameters
 	 */
 	public boolean eatGhostNode;
 	
+	/**
+	 * Decides which states of the ghosts share a node in the tree when useGhostPositions is turned on.
+	 */
+	public IGhostAbstraction ghostAbstraction;
+	
+	/**
+	 * The most children a node can have for different ghost states, or 0 for no limit.  Once a node has
+	 * this many, any other ghost states share one extra child.
+	 */
+	public int maximumGhostChildren;
+	
+	/**
+	 * The file to write a snapshot of the search tree to at each decision, or null not to export the tree.
+	 * Read the file with TreeExportReader.  Games played in a batch each export to a file of their own, named
+	 * by adding the parameters hash and the seed before the extension.
+	 */
+	public String treeExportFile;
+	
+	/**
+	 * True if the additional evaluators which can (the INodeEvaluators) are to bias the selection of each
+	 * node's children as it is expanded, with a weight which decays as the children are visited, instead of
+	 * adding bonuses to the root's children after the search.  Only the UCB selection policies use the bias.
+	 */
+	public boolean useProgressiveBias;
+	
+	/**
+	 * The opening book to take the moves from for the first decisions of each maze, or null not to use one.
+	 * The book should have been built by OpeningBookBuilder with the same parameters.  No search is run for
+	 * a decision the book has a move for.
+	 */
+	public String openingBookFile;
+	
+	/**
+	 * The value model to score rollouts with when they're cut short by maximumSimulationLength, or null to
+	 * score them as they stand.  Fit one with ValueModelTrainer to samples recorded with valueSampleFile.
+	 */
+	public String valueModelFile;
+	
+	/**
+	 * The file to record samples of rollout states and the scores they led to in, for fitting a value model,
+	 * or null not to record any.  Every game recording to the same file adds to it.
+	 */
+	public String valueSampleFile;
+	
+	/**
+	 * The fraction of rollouts a sample is recorded from when valueSampleFile is set.
+	 */
+	public double valueSampleRate;
+	
+	/**
+	 * The most milliseconds to spend warming up the search before the first game, or 0 not to.  The warm-up is
+	 * run once per JVM, when the first agent is created; see WarmUp.
+	 */
+	public int warmUpMillis;
+	
+	/**
+	 * Decides when the search for a decision has settled so that it can stop before the move is due, or null
+	 * to search until the deadline.  Only used in real-time mode; the time given up is reported by the agent.
+	 */
+	public IStoppingRule stoppingRule;
+	
+	/**
+	 * The number of simulations to select leaves for before playing their rollouts together in lockstep, or 1
+	 * to run each simulation on its own; see MonteCarloPacManSimulator.runBatch().
+	 */
+	public int rolloutBatchSize;
+	
+	//where the seeds for the agent's random number generators come from, if seedRandoms() has been called
+	private Random seeds;
+	
 	
 	/**
 	 * Constructor.  Sets default values for the parameters.
@@ -123,6 +202,10 @@ public class MonteCarloPacManParameters
 		showGraph = false;
 		useGhostPositions = true;
 		eatGhostNode = true;
+		ghostAbstraction = new ExactGhostAbstraction();
+		maximumGhostChildren = 0;
+		valueSampleRate = 0.01;
+		rolloutBatchSize = 1;
 		
 		/*nodeExpansionThreshold = 50;
 		maximumSimulationLength = 10000000;
@@ -143,7 +226,9 @@ public class MonteCarloPacManParameters
 	
 	
 	/**
-	 * Returns an exact copy of the parameters object, with the pacManModel and ghostModel being new instances of the original types.
+	 * Returns an exact copy of the parameters object for one game, which shares nothing that keeps state with the
+	 * original.  The models and opponent are new instances of the original types, and the selection policy,
+	 * evaluators, ghost abstraction and stopping rule are copied with copyComponent().  The copy isn't seeded.
 	 * @return
 	 * @throws IllegalAccessException
 	 * @throws InstantiationException
@@ -156,13 +241,269 @@ public class MonteCarloPacManParameters
 		p.deathPenalty = deathPenalty;
 		p.scaleDeathPenalty = scaleDeathPenalty;
 		p.completionReward = completionReward;
-		p.pacManModel = pacManModel.getClass().newInstance();
-		p.ghostModel = ghostModel.getClass().newInstance();
-		p.selectionPolicy = selectionPolicy;
-		p.additionalEvaluators = additionalEvaluators;
+		p.pacManModel = newInstanceOf(pacManModel);
+		p.ghostModel = newInstanceOf(ghostModel);
+		p.selectionPolicy = copyComponent(selectionPolicy);
+		p.additionalEvaluators = copyComponent(additionalEvaluators);
 		p.discardTreeOnDecision = discardTreeOnDecision;
 		p.experimentName = experimentName;
-		p.opponent = opponent.getClass().newInstance();
+		p.opponent = newInstanceOf(opponent);
+		p.simulationCount = simulationCount;
+		p.showGraph = showGraph;
+		p.useGhostPositions = useGhostPositions;
+		p.eatGhostNode = eatGhostNode;
+		p.treeExportFile = treeExportFile;
+		p.useProgressiveBias = useProgressiveBias;
+		p.ghostAbstraction = copyComponent(ghostAbstraction);
+		p.maximumGhostChildren = maximumGhostChildren;
+		p.openingBookFile = openingBookFile;
+		p.valueModelFile = valueModelFile;
+		p.valueSampleFile = valueSampleFile;
+		p.valueSampleRate = valueSampleRate;
+		p.warmUpMillis = warmUpMillis;
+		p.stoppingRule = copyComponent(stoppingRule);
+		p.rolloutBatchSize = rolloutBatchSize;
 		return p;
 	}
+	
+	
+	/**
+	 * Copies a component of the parameters, such as a selection policy or an evaluator, by creating a new
+	 * instance with its default constructor and copying its fields across.  Arrays are copied rather than
+	 * shared, and any random number generator is replaced with a new one, so that the copy can be used on
+	 * another thread without affecting the original.
+	 * @param component The component, or an array of components, or null.
+	 * @return
+	 * @throws IllegalAccessException
+	 * @throws InstantiationException If the component doesn't have a default constructor.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T copyComponent(T component) throws IllegalAccessException, InstantiationException
+	{
+		return (T)copyValue(component);
+	}
+	
+	
+	/**
+	 * Seeds every random number generator the agent uses from one seed, so that a game played with a fixed
+	 * simulationCount can be played again exactly, whichever thread it's played on.  That includes the ones
+	 * in the models, the opponent, the selection policy, the evaluators and the ghost abstraction, and the
+	 * ones the agent creates with createRandom().  Call it on parameters which aren't shared with another game.
+	 * The one thing it can't seed is the game's own global reversal of the ghosts, which uses Math.random().
+	 * @param seed
+	 */
+	public void seedRandoms(long seed)
+	{
+		seeds = new Random(seed);
+		seedRandoms(pacManModel);
+		seedRandoms(ghostModel);
+		seedRandoms(opponent);
+		seedRandoms(selectionPolicy);
+		seedRandoms(ghostAbstraction);
+		
+		if (additionalEvaluators != null)
+		{
+			for (ITreeEvaluator evaluator: additionalEvaluators)
+			{
+				seedRandoms(evaluator);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Creates a random number generator for the agent to use, which is seeded from the seed given to seedRandoms(),
+	 * or from the clock if the parameters haven't been seeded.
+	 * @return
+	 */
+	public Random createRandom()
+	{
+		return seeds == null ? new Random() : new Random(seeds.nextLong());
+	}
+	
+	
+	/**
+	 * Gets a stable hash of the parameters, suitable for identifying a configuration across runs.
+	 * The experiment name is not included, since it is only a label.
+	 * @return A 16 digit hexadecimal string.
+	 */
+	public String getHash()
+	{
+		//64-bit FNV-1a over the description of the parameters
+		String description = toString();
+		long hash = 0xcbf29ce484222325L;
+		
+		for (int i = 0; i < description.length(); i++)
+		{
+			hash ^= description.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		
+		return String.format("%016x", hash);
+	}
+	
+	
+	/**
+	 * Describes every parameter which affects how the agent plays.  Settings which only affect
+	 * what is displayed or recorded are left out.
+	 */
+	@Override
+	public String toString()
+	{
+		return "nodeExpansionThreshold=" + nodeExpansionThreshold
+			+ ", maximumSimulationLength=" + maximumSimulationLength
+			+ ", deathPenalty=" + deathPenalty
+			+ ", scaleDeathPenalty=" + scaleDeathPenalty
+			+ ", completionReward=" + completionReward
+			+ ", pacManModel=" + getName(pacManModel)
+			+ ", ghostModel=" + getName(ghostModel)
+			+ ", selectionPolicy=" + selectionPolicy
+			+ ", additionalEvaluators=" + Arrays.toString(additionalEvaluators)
+			+ ", discardTreeOnDecision=" + discardTreeOnDecision
+			+ ", opponent=" + getName(opponent)
+			+ ", simulationCount=" + simulationCount
+			+ ", useGhostPositions=" + useGhostPositions
+			+ ", eatGhostNode=" + eatGhostNode
+			//the newer settings are only described when they're not the default, so that the hashes of
+			//existing configurations don't change
+			+ (useProgressiveBias ? ", useProgressiveBias=true" : "")
+			+ (ghostAbstraction instanceof ExactGhostAbstraction ? "" : ", ghostAbstraction=" + ghostAbstraction)
+			+ (maximumGhostChildren == 0 ? "" : ", maximumGhostChildren=" + maximumGhostChildren)
+			+ (openingBookFile == null ? "" : ", openingBookFile=" + openingBookFile)
+			+ (valueModelFile == null ? "" : ", valueModelFile=" + valueModelFile)
+			+ (stoppingRule == null ? "" : ", stoppingRule=" + stoppingRule)
+			+ (rolloutBatchSize == 1 ? "" : ", rolloutBatchSize=" + rolloutBatchSize);
+	}
+	
+	
+	/**
+	 * Replaces the random number generators in the fields of an object with ones seeded from the seeds.
+	 * @param component
+	 */
+	private void seedRandoms(Object component)
+	{
+		if (component == null)
+			return;
+		
+		for (Class<?> type = component.getClass(); type != null; type = type.getSuperclass())
+		{
+			for (Field field: type.getDeclaredFields())
+			{
+				if (!Modifier.isStatic(field.getModifiers()) && field.getType() == Random.class)
+				{
+					try
+					{
+						field.setAccessible(true);
+						field.set(component, new Random(seeds.nextLong()));
+					}
+					catch (IllegalAccessException ex)
+					{
+						throw new IllegalStateException("Cannot seed " + component.getClass().getSimpleName(), ex);
+					}
+				}
+			}
+		}
+	}
+	
+	
+	private static Object copyValue(Object value) throws IllegalAccessException, InstantiationException
+	{
+		if (value == null)
+			return null;
+		
+		if (value.getClass().isArray())
+		{
+			Object[] copy = ((Object[])value).clone();
+			
+			for (int i = 0; i < copy.length; i++)
+			{
+				copy[i] = copyValue(copy[i]);
+			}
+			
+			return copy;
+		}
+		
+		Object copy = newInstance(value.getClass());
+		
+		for (Class<?> type = value.getClass(); type != null; type = type.getSuperclass())
+		{
+			for (Field field: type.getDeclaredFields())
+			{
+				if (Modifier.isStatic(field.getModifiers()))
+					continue;
+				
+				field.setAccessible(true);
+				field.set(copy, copyField(field.get(value)));
+			}
+		}
+		
+		return copy;
+	}
+	
+	
+	/**
+	 * Creates a new instance of an object's class with its default constructor, without copying any fields.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T newInstanceOf(T original) throws IllegalAccessException, InstantiationException
+	{
+		return (T)newInstance(original.getClass());
+	}
+	
+	
+	/**
+	 * Creates an instance of a class with its default constructor, reporting the reflective failures as
+	 * copy() does.
+	 */
+	private static Object newInstance(Class<?> type) throws IllegalAccessException, InstantiationException
+	{
+		try
+		{
+			return type.getDeclaredConstructor().newInstance();
+		}
+		catch (NoSuchMethodException ex)
+		{
+			throw (InstantiationException)new InstantiationException(type.getName() + " has no default constructor.").initCause(ex);
+		}
+		catch (InvocationTargetException ex)
+		{
+			throw (InstantiationException)new InstantiationException("Could not create " + type.getName() + ": "
+				+ ex.getCause()).initCause(ex.getCause());
+		}
+	}
+	
+	
+	/**
+	 * Copies the value of a field of a component; only arrays, which are often caches, and random number
+	 * generators are copied, and anything else is shared.
+	 */
+	private static Object copyField(Object value)
+	{
+		if (value instanceof Random)
+			return new Random();
+		
+		if (value == null || !value.getClass().isArray())
+			return value;
+		
+		int length = Array.getLength(value);
+		Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+		
+		for (int i = 0; i < length; i++)
+		{
+			Array.set(copy, i, copyField(Array.get(value, i)));
+		}
+		
+		return copy;
+	}
+	
+	
+	/**
+	 * Gets the name of the type of a controller, or null if there isn't one.
+	 * @param controller
+	 * @return
+	 */
+	private static String getName(Controller<?> controller)
+	{
+		return controller == null ? null : controller.getClass().getSimpleName();
+	}
 }
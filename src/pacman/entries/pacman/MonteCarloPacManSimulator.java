@@ -1,14 +1,26 @@
 package pacman.entries.pacman;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.Stack;
+import java.util.Random;
 
+import pacman.entries.pacman.evaluators.INodeEvaluator;
+import pacman.entries.pacman.evaluators.ITreeEvaluator;
+import pacman.entries.pacman.stoppingrules.IStoppingRule;
+import pacman.entries.pacman.telemetry.ChildEvaluationEvent;
+import pacman.entries.pacman.telemetry.DecisionTelemetry;
+import pacman.entries.pacman.telemetry.ExpansionEvent;
+import pacman.entries.pacman.telemetry.RolloutEvent;
+import pacman.entries.pacman.telemetry.SearchTelemetry;
+import pacman.entries.pacman.telemetry.SelectionEvent;
+import pacman.entries.pacman.telemetry.SimulationEvent;
+import pacman.entries.pacman.valuemodel.ValueFeatures;
+import pacman.entries.pacman.valuemodel.ValueModel;
+import pacman.entries.pacman.valuemodel.ValueSampleRecorder;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
 
@@ -20,9 +32,49 @@ public class MonteCarloPacManSimulator
 {
 	private Game game;
 	private MonteCarloPacManParameters parameters;
-	private Set<Integer> activePowerPills;
 	private GameNode rootNode;
-	private Stack<Game> gameStates;
+	//the saved game states, as an array rather than a Stack, which is synchronized
+	private Game[] gameStates = new Game[8];
+	private int numberOfGameStates;
+	private long numberOfCopies;
+	private DecisionTelemetry telemetry;
+	
+	//the power pills which were active when the simulator was created, as bits numbered by
+	//MazeTopology.getPowerPillNumber(); they stay decision points even once eaten in a simulation
+	private int activePowerPills;
+	
+	//All-Moves-As-First bookkeeping for the current simulation, only kept if the selection policy uses it:
+	//the tree nodes a move was chosen at, with the number of moves already played when each was reached,
+	//and every move Ms Pac-Man played from a decision point, packed as (maze index << 3) | move
+	private boolean gatherAmaf;
+	private GameNode[] amafNodes = new GameNode[16];
+	private int[] amafStarts = new int[16];
+	private int amafNodeCount;
+	private int[] amafMoves = new int[256];
+	private int amafMoveCount;
+	
+	//the value model which scores rollouts cut short by maximumSimulationLength, and where to record samples
+	//for fitting one, if the parameters ask for them
+	private ValueModel valueModel;
+	private ValueSampleRecorder sampleRecorder;
+	private double[] features;
+	private double[] sampleFeatures;
+	private Random random;
+	
+	//the rollouts of a batch of simulations, and the nodes each one's score goes back up to, if rolloutBatchSize
+	//is more than one
+	private RolloutBatch batch;
+	private NodePath[] batchPaths;
+	private boolean[] batchLostLife;
+	
+	//the nodes visited by the current simulation, kept so that each simulation doesn't create a list
+	private NodePath path = new NodePath();
+	
+	//samples are taken from this many ticks into a rollout at most, which covers the lengths short
+	//rollouts are usually cut to
+	private static final int SAMPLE_WINDOW = 200;
+	
+	private static final MOVE[] MOVES = MOVE.values();
 	
 	/**
 	 * Constructor.
@@ -36,10 +88,11 @@ public class MonteCarloPacManSimulator
 		this.game = game;
 		this.parameters = parameters;
 		this.rootNode = new GameNode();
-		this.gameStates = new Stack<Game>();
 		
-		this.activePowerPills = new HashSet<Integer>();
 		updateActivePowerPills(game.getActivePowerPillsIndices());
+		
+		if (parameters.valueModelFile != null || parameters.valueSampleFile != null)
+			openValueModel();
 	}
 	
 	
@@ -57,7 +110,7 @@ public class MonteCarloPacManSimulator
 		if (parameters.useGhostPositions)
 		{
 			//get the node that corresponds to the current ghost position
-			searchNode = rootNode.getChild(game);
+			searchNode = getGhostChild(rootNode);
 			//System.out.println("Picked: " + searchNode.getNumberOfVisits());
 		}
 		else
@@ -97,7 +150,7 @@ public class MonteCarloPacManSimulator
 		
 		//figure out which collection of children to return
 		if (parameters.useGhostPositions)
-			children = rootNode.getChild(game).getChildren();
+			children = getGhostChild(rootNode).getChildren();
 		else
 			children = rootNode.getChildren();
 		
@@ -105,18 +158,79 @@ public class MonteCarloPacManSimulator
 		if (children != null)
 			return children;
 		else
-			return new ArrayList<GameNode>();
+			return Collections.<GameNode>emptyList();
 	}
 	
 	
 	
+	/**
+	 * Determines if a stopping rule holds for every decision the next move could be made at, without changing the
+	 * tree or allocating.  Without ghost positions that's just the root.  With them, at a decision point it's the
+	 * node for the ghosts' current state; between decision points the ghosts could be in any state the tree has
+	 * seen by the time Ms Pac-Man gets there, so it's each of the root's children which have been expanded.
+	 * @param rule The stopping rule.
+	 * @param atDecisionPoint True if the game is at the decision point the root node represents.
+	 * @param remainingSimulations The number of simulations there's expected to be time for.
+	 * @return False if no decision has been expanded yet.
+	 */
+	public boolean canStop(IStoppingRule rule, boolean atDecisionPoint, long remainingSimulations)
+	{
+		if (!parameters.useGhostPositions)
+			return !rootNode.isLeafNode() && rule.canStop(rootNode, remainingSimulations);
+		
+		if (atDecisionPoint)
+		{
+			GameNode ghostNode = findGhostChild(rootNode);
+			return ghostNode != null && !ghostNode.isLeafNode() && rule.canStop(ghostNode, remainingSimulations);
+		}
+		
+		GameNode[] ghostNodes = rootNode.getChildArray();
+		boolean expanded = false;
+		
+		for (int i = 0; i < rootNode.getNumberOfChildren(); i++)
+		{
+			if (!ghostNodes[i].isLeafNode())
+			{
+				if (!rule.canStop(ghostNodes[i], remainingSimulations))
+					return false;
+				
+				expanded = true;
+			}
+		}
+		
+		return expanded;
+	}
+	
+	
+	/**
+	 * Gets the number of ticks until Ms Pac-Man reaches the next decision point if she carries on the way she's
+	 * going, with the ghosts played by the ghost model.  The game state is left as it was.
+	 * @return
+	 */
+	public int getTicksToNextNode()
+	{
+		int startTime = game.getTotalTime();
+		pushGameState();
+		
+		try
+		{
+			advanceGameToNextNode();
+			return game.getTotalTime() - startTime;
+		}
+		finally
+		{
+			popGameState();
+		}
+	}
+	
+	
 	/**
 	 * Gets the move which is on average best regardless of the ghost positions.
 	 * @return
 	 */
 	public MOVE bestOverallMove()
 	{
-		Map<MOVE, Double> totals = new HashMap<MOVE, Double>();
+		Map<MOVE, Double> totals = new EnumMap<MOVE, Double>(MOVE.class);
 		MOVE bestMove = MOVE.NEUTRAL;
 		double bestScore = Double.NEGATIVE_INFINITY;
 		
@@ -148,159 +262,487 @@ public class MonteCarloPacManSimulator
 	
 	
 	/**
-	 * Runs a Monte Carlo simulation from the current point in the game.
+	 * Runs a Monte Carlo simulation from the current point in the game.  Each phase of the simulation is
+	 * reported as a Flight Recorder event, which costs next to nothing when no recording is running.
 	 */
 	public void runSimulation()
 	{
-		List<GameNode> visitedNodes = new ArrayList<GameNode>();
+		NodePath visitedNodes = path;
+		visitedNodes.clear();
+		SimulationEvent simulationEvent = new SimulationEvent();
+		simulationEvent.begin();
 		
 		//save the number of lives so we can tell if we've lost a life during the simulation
 		int lives = game.getPacmanNumberOfLivesRemaining();
+		int startTime = game.getTotalTime();
 				
 		//save the game at its current point so we can put it back after the simulation
 		pushGameState();
 		
+		gatherAmaf = parameters.selectionPolicy.getRequiresAmafStatistics();
+		amafNodeCount = 0;
+		amafMoveCount = 0;
+		
 		try
 		{
-			//the first node is the root node
-			GameNode node = rootNode;
-			visitedNodes.add(node);
-			advanceGameToNextNode();
+			if (!selectLeaf(visitedNodes, lives, startTime))
+				return;
 			
-			//select the child representing the move played by the ghost team model
-			if (parameters.useGhostPositions)
-				node = node.getChild(game);
+			simulationEvent.score = runSimulation(visitedNodes, lives);
+		}
+		finally
+		{
+			simulationEvent.depth = visitedNodes.size() - 1;
+			simulationEvent.ticks = game.getTotalTime() - startTime;
+			
+			//restore the game state
+			popGameState();
+			simulationEvent.commit();
+			
+			if (SearchTelemetry.ENABLED && telemetry != null)
+				telemetry.addSimulation(visitedNodes.size() - 1);
+		}
+	}
+	
+	
+	/**
+	 * Runs rolloutBatchSize simulations, selecting a leaf for each of them before their rollouts are played
+	 * together in a RolloutBatch, and then backing all of the scores up.  Each node on the way to a leaf is given a
+	 * visit as soon as it's selected, so that the selection policy spreads the batch over the tree instead of
+	 * picking the same leaf every time, and the visits are all taken back before any score is added.  Each simulation
+	 * still gets its Flight Recorder events, but since the rollouts are played together they have no duration of
+	 * their own.  Selection policies which need AMAF statistics or every child evaluated on expansion run one
+	 * simulation at a time.
+	 * @return The number of simulations whose scores were backed up, leaving out any which the selection policy
+	 * couldn't find a leaf for.
+	 */
+	public int runBatch()
+	{
+		int batchSize = parameters.rolloutBatchSize;
+		
+		if (batchSize <= 1 || parameters.selectionPolicy.getRequiresAmafStatistics()
+			|| parameters.selectionPolicy.getEvaluateAllChildrenOnExpansion())
+		{
+			runSimulation();
+			return 1;
+		}
+		
+		if (batch == null || batch.getCapacity() != batchSize)
+		{
+			batch = new RolloutBatch(batchSize);
+			batchPaths = new NodePath[batchSize];
+			batchLostLife = new boolean[batchSize];
 			
-			//walk through the tree according to nodes with the highest UCB value,
-			//until a leaf node is reached
-			while (!node.isLeafNode())
+			for (int i = 0; i < batchSize; i++)
 			{
-				node = parameters.selectionPolicy.selectChild(node);
-				
-				if (node == null)
-					return;
-					
-				//save the nodes we visit so we can update their scores later
-				visitedNodes.add(node);
-				
-				//move the game state to this node
-				playMove(node.getMove());
-				advanceGameToNextNode();
-				
-				if (parameters.useGhostPositions)
-					node = node.getChild(game);
+				batchPaths[i] = new NodePath();
 			}
+		}
+		
+		int lives = game.getPacmanNumberOfLivesRemaining();
+		int startTime = game.getTotalTime();
+		gatherAmaf = false;
+		batch.clear();
+		
+		//select a leaf for each simulation, keeping the game each one ends up in for its rollout
+		for (int i = 0; i < batchSize; i++)
+		{
+			NodePath path = batchPaths[batch.size()];
+			path.clear();
+			pushGameState();
 			
-			//expand the node and pick one of its children if it's been sampled enough,
-			//otherwise just use the node we've arrived at (always expand the root node)
-			if (node.getNumberOfVisits() >= parameters.nodeExpansionThreshold || node == rootNode)
+			try
 			{
-				node.expand(game);
-
-				//some selection policies need all children to be evaluated first
-				if (parameters.selectionPolicy.getEvaluateAllChildrenOnExpansion())
-				{
-					//run a simulation from each child
-					for (GameNode child: node.getChildren())
-					{
-						int powerPillCount = game.getNumberOfActivePowerPills();
-						int pillCount = game.getNumberOfActivePills();
-						int level = game.getCurrentLevel();
-						
-						//copy the game and play the move that this child represents
-						pushGameState();
-						playMove(child.getMove());
-						advanceGameToNextNode();
-						
-						//if the move ate a power pill, mark it as such
-						if (game.getNumberOfActivePowerPills() < powerPillCount)
-						{
-							child.setMoveEatsPowerPill(true);
-						}
-						
-						//if the move ate any pills, mark it as such
-						if (game.getNumberOfActivePills() < pillCount)
-						{
-							child.setMoveEatsPills(true);
-						}
-						
-						int score = 0;
-						
-						//if the move completes the level, give it a bonus
-						if (game.getCurrentLevel() > level)
-							score += parameters.completionReward;
-						
-						//if we're using ghost positions, make sure the current ghost position is
-						//in the tree
-						if (parameters.useGhostPositions)
-							child.getChild(game);
-						
-						//run the roll out
-						score += runSimulation(visitedNodes, lives);
-						child.updateScore(score);
-						
-						//restore the game state
-						popGameState();
-					}
-				}
-				
-				node = parameters.selectionPolicy.selectChild(node);
-				
-				if (node == null)
-					return;
+				if (!selectLeaf(path, lives, startTime))
+					continue;
 				
-				visitedNodes.add(node);
+				batchLostLife[batch.add(game, pickSampleTick())] = game.getPacmanNumberOfLivesRemaining() < lives;
 				
-				//move the game state to this node
-				playMove(node.getMove());
-				
-				//make sure the ghost move is in the tree (if we care about such things)
-				//and run the rollout
-				if (parameters.useGhostPositions)			
-					node.getChild(game);
+				for (int j = 0; j < path.size(); j++)
+				{
+					path.get(j).incrementNumberOfVisits();
+				}
+			}
+			finally
+			{
+				popGameState();
 			}
+		}
+		
+		batch.run(parameters.pacManModel, parameters.ghostModel, parameters.maximumSimulationLength);
+		
+		//take back the visits added while selecting before backing any score up, so that the averages, variances and
+		//scaled death penalties are worked out from the visits the nodes really have
+		for (int slot = 0; slot < batch.size(); slot++)
+		{
+			NodePath path = batchPaths[slot];
 			
-			runSimulation(visitedNodes, lives);
+			for (int j = 0; j < path.size(); j++)
+			{
+				path.get(j).decrementNumberOfVisits();
+			}
 		}
-		finally
+		
+		for (int slot = 0; slot < batch.size(); slot++)
 		{
-			//restore the game state
-			popGameState();
+			NodePath path = batchPaths[slot];
+			RolloutEvent rolloutEvent = new RolloutEvent();
+			SimulationEvent simulationEvent = new SimulationEvent();
+			int rolloutScore = scoreRollout(batch.getGame(slot), batch.getLevel(slot), batch.getTicks(slot),
+				batch.getSampleTick(slot), batch.getSampleScore(slot), batch.getSampleFeatures(slot));
+			int score = rolloutScore - (batchLostLife[slot] ? getDeathPenalty(path.getLast()) : 0);
+			
+			for (int j = 0; j < path.size(); j++)
+			{
+				path.get(j).updateScore(score);
+			}
+			
+			rolloutEvent.ticks = batch.getTicks(slot);
+			rolloutEvent.score = rolloutScore;
+			rolloutEvent.commit();
+			simulationEvent.depth = path.size() - 1;
+			simulationEvent.ticks = batch.getGame(slot).getTotalTime() - startTime;
+			simulationEvent.score = score;
+			simulationEvent.commit();
+			
+			if (SearchTelemetry.ENABLED && telemetry != null)
+			{
+				telemetry.addSimulation(path.size() - 1);
+				telemetry.addRolloutTicks(batch.getTicks(slot));
+			}
 		}
+		
+		int run = batch.size();
+		batch.clear();
+		return run;
 	}
 	
 	
-	private int runSimulation(List<GameNode> visitedNodes, int lives)
+	/**
+	 * Walks down the tree from the root to a leaf, expanding it if it has been visited enough, and leaves the game
+	 * in the state the rollout starts from.
+	 * @param visitedNodes Added to: the nodes on the way, whose scores are to be updated.
+	 * @param lives The number of lives Ms Pac-Man had at the start of the simulation.
+	 * @param startTime The game time at the start of the simulation.
+	 * @return False if the selection policy couldn't pick a child, so there's nothing to roll out.
+	 */
+	private boolean selectLeaf(NodePath visitedNodes, int lives, int startTime)
 	{
-		int score = 0;
-
-		//apply a penalty if we've lost a life
-		if (game.getPacmanNumberOfLivesRemaining() < lives)
+		//the first node is the root node
+		GameNode node = rootNode;
+		visitedNodes.add(node);
+		
+		SelectionEvent selectionEvent = new SelectionEvent();
+		selectionEvent.begin();
+		advanceGameToNextNode();
+		
+		//select the child representing the move played by the ghost team model
+		if (parameters.useGhostPositions)
+			node = getGhostChild(node);
+		
+		//walk through the tree according to nodes with the highest UCB value,
+		//until a leaf node is reached
+		while (!node.isLeafNode())
 		{
-			if (parameters.scaleDeathPenalty)
+			GameNode parent = node;
+			node = parameters.selectionPolicy.selectChild(node);
+			
+			if (node == null)
+				return false;
+			
+			if (gatherAmaf)
 			{
-				//scale the death penalty by the number of visits at the node being evaluated
-				score -= visitedNodes.get(visitedNodes.size() - 1).getNumberOfVisits();
+				addAmafNode(parent);
+				addAmafMove(parent.getNodeIndex(), node.getMove());
 			}
-			else
+				
+			//save the nodes we visit so we can update their scores later
+			visitedNodes.add(node);
+			
+			//move the game state to this node
+			playMove(node.getMove());
+			advanceGameToNextNode();
+			
+			if (parameters.useGhostPositions)
+				node = getGhostChild(node);
+		}
+		
+		selectionEvent.depth = visitedNodes.size() - 1;
+		selectionEvent.ticks = game.getTotalTime() - startTime;
+		selectionEvent.commit();
+		
+		//expand the node and pick one of its children if it's been sampled enough,
+		//otherwise just use the node we've arrived at (always expand the root node)
+		if (node.getNumberOfVisits() >= parameters.nodeExpansionThreshold || node == rootNode)
+		{
+			ExpansionEvent expansionEvent = new ExpansionEvent();
+			expansionEvent.begin();
+			node.expand(game);
+			
+			if (gatherAmaf)
+				addAmafNode(node);
+			
+			//some selection policies need all children to be evaluated first
+			if (parameters.selectionPolicy.getEvaluateAllChildrenOnExpansion())
 			{
-				score -= parameters.deathPenalty;
+				//run a simulation from each child
+				for (int i = 0; i < node.getNumberOfChildren(); i++)
+				{
+					GameNode child = node.getChildArray()[i];
+					ChildEvaluationEvent childEvent = new ChildEvaluationEvent();
+					childEvent.begin();
+					int childStartTime = game.getTotalTime();
+					int powerPillCount = game.getNumberOfActivePowerPills();
+					int pillCount = game.getNumberOfActivePills();
+					int level = game.getCurrentLevel();
+					int amafMoveStart = amafMoveCount;
+					
+					if (gatherAmaf)
+						addAmafMove(node.getNodeIndex(), child.getMove());
+					
+					//copy the game and play the move that this child represents
+					pushGameState();
+					playMove(child.getMove());
+					advanceGameToNextNode();
+					
+					//if the move ate a power pill, mark it as such
+					if (game.getNumberOfActivePowerPills() < powerPillCount)
+					{
+						child.setMoveEatsPowerPill(true);
+					}
+					
+					//if the move ate any pills, mark it as such
+					if (game.getNumberOfActivePills() < pillCount)
+					{
+						child.setMoveEatsPills(true);
+					}
+					
+					int score = 0;
+					
+					//if the move completes the level, give it a bonus
+					if (game.getCurrentLevel() > level)
+						score += parameters.completionReward;
+					
+					//if we're using ghost positions, make sure the current ghost position is
+					//in the tree
+					if (parameters.useGhostPositions)
+						getGhostChild(child);
+					
+					//run the roll out
+					score += runSimulation(visitedNodes, lives);
+					child.updateScore(score);
+					
+					childEvent.ticks = game.getTotalTime() - childStartTime;
+					childEvent.score = score;
+					
+					//restore the game state
+					popGameState();
+					amafMoveCount = amafMoveStart;
+					childEvent.commit();
+				}
+				
+				expansionEvent.childrenEvaluated = true;
 			}
+			
+			if (parameters.useProgressiveBias)
+				applyNodeEvaluators(node);
+			
+			expansionEvent.children = node.getNumberOfChildren();
+			expansionEvent.commit();
+			
+			GameNode expandedNode = node;
+			node = parameters.selectionPolicy.selectChild(node);
+			
+			if (node == null)
+				return false;
+			
+			if (gatherAmaf)
+				addAmafMove(expandedNode.getNodeIndex(), node.getMove());
+			
+			visitedNodes.add(node);
+			
+			//move the game state to this node
+			playMove(node.getMove());
+			
+			//make sure the ghost move is in the tree (if we care about such things)
+			//and run the rollout
+			if (parameters.useGhostPositions)			
+				getGhostChild(node);
 		}
 		
+		return true;
+	}
+	
+	
+	private int runSimulation(NodePath visitedNodes, int lives)
+	{
+		//apply a penalty if we've lost a life
+		int score = -getDeathPenalty(visitedNodes, lives);
+		
 		//simulate the game to the end and get the score
 		score += rollout();
 		
 		//update the node scores
-		for (GameNode n: visitedNodes)
+		for (int i = 0; i < visitedNodes.size(); i++)
 		{
-			n.updateScore(score);
+			visitedNodes.get(i).updateScore(score);
 		}
 		
+		if (gatherAmaf)
+			updateAmafScores(score);
+		
 		return score;
 	}
 	
 	
+	/**
+	 * Gets the penalty for Ms Pac-Man having lost a life on the way to the current game state.
+	 * @param visitedNodes The nodes visited on the way.
+	 * @param lives The number of lives she had at the start of the simulation.
+	 * @return The penalty, or 0 if she hasn't lost a life.
+	 */
+	private int getDeathPenalty(NodePath visitedNodes, int lives)
+	{
+		if (game.getPacmanNumberOfLivesRemaining() >= lives)
+			return 0;
+		
+		return getDeathPenalty(visitedNodes.getLast());
+	}
+	
+	
+	/**
+	 * Gets the penalty for a simulation in which Ms Pac-Man lost a life.
+	 * @param leaf The node being evaluated.
+	 * @return
+	 */
+	private int getDeathPenalty(GameNode leaf)
+	{
+		//scale the death penalty by the number of visits at the node being evaluated
+		if (parameters.scaleDeathPenalty)
+			return leaf.getNumberOfVisits();
+		
+		return parameters.deathPenalty;
+	}
+	
+	
+	/**
+	 * Records that a move is being chosen at a tree node, so that it gets the All-Moves-As-First statistics
+	 * of the moves played from then on.
+	 * @param node
+	 */
+	private void addAmafNode(GameNode node)
+	{
+		if (amafNodeCount == amafNodes.length)
+		{
+			amafNodes = Arrays.copyOf(amafNodes, amafNodeCount * 2);
+			amafStarts = Arrays.copyOf(amafStarts, amafNodeCount * 2);
+		}
+		
+		amafNodes[amafNodeCount] = node;
+		amafStarts[amafNodeCount++] = amafMoveCount;
+	}
+	
+	
+	/**
+	 * Records a move Ms Pac-Man played from a decision point during the current simulation.
+	 * @param nodeIndex The maze index the move was played from.
+	 * @param move
+	 */
+	private void addAmafMove(int nodeIndex, MOVE move)
+	{
+		if (amafMoveCount == amafMoves.length)
+			amafMoves = Arrays.copyOf(amafMoves, amafMoveCount * 2);
+		
+		amafMoves[amafMoveCount++] = (nodeIndex << 3) | move.ordinal();
+	}
+	
+	
+	/**
+	 * Adds the score of the simulation to the All-Moves-As-First statistics of the children of each tree
+	 * node a move was chosen at, for each move played from the same maze position at or after that point.
+	 * Each child is only counted once per simulation.
+	 * @param score
+	 */
+	private void updateAmafScores(int score)
+	{
+		for (int i = 0; i < amafNodeCount; i++)
+		{
+			GameNode node = amafNodes[i];
+			int position = node.getNodeIndex();
+			int updatedMoves = 0;
+			
+			for (int j = amafStarts[i]; j < amafMoveCount; j++)
+			{
+				int move = amafMoves[j] & 7;
+				
+				if ((amafMoves[j] >> 3) == position && (updatedMoves & (1 << move)) == 0)
+				{
+					updatedMoves |= 1 << move;
+					GameNode child = node.getChild(MOVES[move]);
+					
+					if (child != null)
+						child.updateAmafScore(score);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Gets the child of a node which represents the state of the ghosts in the current game, according to
+	 * the ghost abstraction.
+	 * @param node
+	 * @return
+	 */
+	private GameNode getGhostChild(GameNode node)
+	{
+		return node.getChild(game, parameters.ghostAbstraction, parameters.maximumGhostChildren);
+	}
+	
+	
+	/**
+	 * Finds the child for the current ghost state like getGhostChild(), but without adding it or counting a visit.
+	 * @param node
+	 * @return The child, or null if the state hasn't been seen yet.
+	 */
+	private GameNode findGhostChild(GameNode node)
+	{
+		long key = parameters.ghostAbstraction.getKey(game);
+		GameNode[] children = node.getChildArray();
+		GameNode overflow = null;
+		
+		for (int i = 0; i < node.getNumberOfChildren(); i++)
+		{
+			if (children[i].getGhostPositions() == key)
+				return children[i];
+			
+			if (children[i].getGhostPositions() == GameNode.OVERFLOW_GHOST_POSITIONS)
+				overflow = children[i];
+		}
+		
+		//the overflow child is only there once there's no room left for new states, which then share it
+		return overflow;
+	}
+	
+	
+	/**
+	 * Lets the evaluators which support progressive bias give the children of a newly expanded node their
+	 * bias, while the game is in the position the node represents.
+	 * @param node
+	 */
+	private void applyNodeEvaluators(GameNode node)
+	{
+		if (parameters.additionalEvaluators == null)
+			return;
+		
+		for (ITreeEvaluator evaluator: parameters.additionalEvaluators)
+		{
+			if (evaluator instanceof INodeEvaluator)
+				((INodeEvaluator)evaluator).evaluateNode(node, game);
+		}
+	}
+	
+	
 	/**
 	 * Plays a game using the specified ghost and pacman models until the end of level, game over or
 	 * simulation limit.
@@ -308,20 +750,84 @@ public class MonteCarloPacManSimulator
 	 */
 	private int rollout()
 	{
+		RolloutEvent event = new RolloutEvent();
+		event.begin();
+		
 		//save the level so we can end the simulation if Pac-Man progresses onto the next level
 		int level = game.getCurrentLevel();
 		int i = 0;
 		
+		int sampleTick = pickSampleTick();
+		int sampleScore = 0;
+		
 		//run up to the end of the level, until game over or until we've reached the simulation limit
 		while (i++ < parameters.maximumSimulationLength
 			&& !game.gameOver()
 			&& game.getCurrentLevel() == level)
 		{
-			game.advanceGame(parameters.pacManModel.getMove(game, 0), parameters.ghostModel.getMove(game, 0));
+			if (i - 1 == sampleTick)
+			{
+				ValueFeatures.extract(game, sampleFeatures);
+				sampleScore = game.getScore();
+			}
+			
+			MOVE move = parameters.pacManModel.getMove(game, 0);
+			
+			if (gatherAmaf && MazeTopology.get(game).isJunction(game.getPacmanCurrentNodeIndex()))
+				addAmafMove(game.getPacmanCurrentNodeIndex(), move);
+			
+			game.advanceGame(move, parameters.ghostModel.getMove(game, 0));
 		}
 		
-		//update the score
-		int score = game.getScore();
+		if (SearchTelemetry.ENABLED && telemetry != null)
+			telemetry.addRolloutTicks(i - 1);
+		
+		int score = scoreRollout(game, level, i - 1, sampleTick, sampleScore, sampleFeatures);
+		event.ticks = i - 1;
+		event.score = score;
+		event.commit();
+		
+		return score;
+	}
+	
+	
+	/**
+	 * Picks a tick of a rollout to record a value sample at, if samples are being recorded.
+	 * @return The tick, or -1 not to record a sample.
+	 */
+	private int pickSampleTick()
+	{
+		return sampleRecorder != null && random.nextDouble() < parameters.valueSampleRate
+			? random.nextInt(SAMPLE_WINDOW) : -1;
+	}
+	
+	
+	/**
+	 * Gets the score of a finished rollout, letting the value model guess the rest if the rollout was cut short,
+	 * and recording the sample if one was taken from a rollout which wasn't.
+	 * @param rolloutGame The game the rollout was played in.
+	 * @param level The level the rollout started on.
+	 * @param ticks The number of ticks the rollout played.
+	 * @param sampleTick The tick the sample was taken at, or -1 if none was.
+	 * @param sampleScore The score at the sample tick.
+	 * @param sample The features of the sample.
+	 * @return
+	 */
+	private int scoreRollout(Game rolloutGame, int level, int ticks, int sampleTick, int sampleScore, double[] sample)
+	{
+		int score = rolloutGame.getScore();
+		boolean cutShort = !rolloutGame.gameOver() && rolloutGame.getCurrentLevel() == level;
+		
+		if (cutShort && valueModel != null)
+		{
+			//let the model guess the rest
+			ValueFeatures.extract(rolloutGame, features);
+			score += (int)valueModel.predict(features);
+		}
+		else if (!cutShort && sampleTick >= 0 && ticks > sampleTick)
+		{
+			recordSample(sample, score - sampleScore);
+		}
 		
 		return score;
 	}
@@ -357,14 +863,6 @@ public class MonteCarloPacManSimulator
 	{
 		//play the move that the node represents
 		game.advanceGame(move, parameters.ghostModel.getMove(game, 0));
-		
-		//update active power pill indices if necessary
-		int[] indices = game.getActivePowerPillsIndices();
-		
-		if (indices.length < activePowerPills.size())
-		{
-			updateActivePowerPills(indices);
-		}
 	}
 	
 	
@@ -375,11 +873,12 @@ public class MonteCarloPacManSimulator
 	public boolean isAtNode(int edibleScore)
 	{
 		int nodeIndex = game.getPacmanCurrentNodeIndex();
+		MazeTopology topology = MazeTopology.get(game);
 		
 		return game.gameOver() 
-			|| game.isJunction(nodeIndex)
-			|| activePowerPills.contains(nodeIndex)
-			|| againstWall()
+			|| topology.isJunction(nodeIndex)
+			|| (topology.isPowerPill(nodeIndex) && (activePowerPills & (1 << topology.getPowerPillNumber(nodeIndex))) != 0)
+			|| !topology.canMove(nodeIndex, game.getPacmanLastMoveMade())
 			|| (parameters.eatGhostNode && parameters.useGhostPositions && game.getGhostCurrentEdibleScore() != edibleScore);
 	}
 	
@@ -390,16 +889,7 @@ public class MonteCarloPacManSimulator
 	 */
 	public boolean againstWall()
 	{
-		MOVE move = game.getPacmanLastMoveMade();
-		MOVE[] possibleMoves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex());
-		
-		for (int i = 0; i < possibleMoves.length; i++)
-		{
-			if (possibleMoves[i] == move)
-				return false;
-		}
-		
-		return true;
+		return !MazeTopology.get(game).canMove(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
 	}
 	
 	
@@ -408,8 +898,12 @@ public class MonteCarloPacManSimulator
 	 */
 	public Game pushGameState()
 	{
-		gameStates.push(game);
+		if (numberOfGameStates == gameStates.length)
+			gameStates = Arrays.copyOf(gameStates, numberOfGameStates * 2);
+		
+		gameStates[numberOfGameStates++] = game;
 		game = game.copy();
+		numberOfCopies++;
 		return game;
 	}
 	
@@ -419,7 +913,18 @@ public class MonteCarloPacManSimulator
 	 */
 	public void popGameState()
 	{
-		game = gameStates.pop();
+		game = gameStates[--numberOfGameStates];
+		gameStates[numberOfGameStates] = null;
+	}
+	
+	
+	/**
+	 * Gets the number of copies of the game made by pushGameState() so far.
+	 * @return
+	 */
+	public long getNumberOfCopies()
+	{
+		return numberOfCopies;
 	}
 	
 	
@@ -462,15 +967,76 @@ public class MonteCarloPacManSimulator
 	}
 	
 	
+	/**
+	 * Sets the object to record search metrics to, or null not to record any.  Metrics are only
+	 * recorded if SearchTelemetry is enabled.
+	 * @param value
+	 */
+	public void setTelemetry(DecisionTelemetry value)
+	{
+		telemetry = value;
+	}
+	
+	
+	/**
+	 * Gets the value model and sample recorder the parameters ask for.
+	 */
+	private void openValueModel()
+	{
+		try
+		{
+			if (parameters.valueModelFile != null)
+			{
+				valueModel = ValueModel.get(parameters.valueModelFile);
+				features = new double[ValueFeatures.COUNT];
+			}
+			
+			if (parameters.valueSampleFile != null)
+			{
+				sampleRecorder = ValueSampleRecorder.get(parameters.valueSampleFile);
+				sampleFeatures = new double[ValueFeatures.COUNT];
+				random = parameters.createRandom();
+			}
+		}
+		catch (IOException ex)
+		{
+			//playing on without them would silently play a different configuration
+			throw new IllegalStateException("Could not open the value model files: " + ex.getMessage(), ex);
+		}
+	}
+	
+	
+	/**
+	 * Records a sample taken during a rollout.
+	 * @param features The features of the state the sample was taken at.
+	 * @param score The score made after the sample was taken.
+	 */
+	private void recordSample(double[] features, int score)
+	{
+		try
+		{
+			sampleRecorder.record(features, score);
+		}
+		catch (IOException ex)
+		{
+			//don't let a full disk spoil the game, just stop recording
+			System.err.println("Could not record a value sample: " + ex.getMessage());
+			sampleRecorder = null;
+		}
+	}
+	
+	
 	/**
 	 * Updates the locations of the active power pills.
 	 * @param indices
 	 */
 	private void updateActivePowerPills(int[] indices)
 	{
+		MazeTopology topology = MazeTopology.get(game);
+		
 		for (int index: indices)
 		{
-			activePowerPills.add(index);
+			activePowerPills |= 1 << topology.getPowerPillNumber(index);
 		}
 	}
 }
@@ -1,9 +1,20 @@
 package pacman.entries.pacman;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Random;
 
 import pacman.controllers.Controller;
+import pacman.entries.pacman.evaluators.INodeEvaluator;
 import pacman.entries.pacman.evaluators.ITreeEvaluator;
+import pacman.entries.pacman.openingbook.OpeningBook;
+import pacman.entries.pacman.telemetry.DecisionTelemetry;
+import pacman.entries.pacman.telemetry.LatencyRecorder;
+import pacman.entries.pacman.telemetry.SearchTelemetry;
+import pacman.entries.pacman.telemetry.TreeEvaluatorEvent;
+import pacman.entries.pacman.treeexport.TreeExporter;
+import pacman.entries.pacman.treeexport.TreeSnapshot;
+import pacman.entries.pacman.valuemodel.ValueSampleRecorder;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
 
@@ -14,10 +25,36 @@ public class MyPacMan extends Controller<MOVE>
 {
 	//we don't want to run simulations right up until the move is due, or we'll miss making a move
 	private int timeBuffer = 2;
+	
+	//the time set aside for the evaluators when a decision is to be made
+	private static final int EVALUATOR_TIME = 20;
+	
+	//returned by startTick() when the opening book has the move, so that no time is spent searching
+	private static final int NO_SEARCH = Integer.MAX_VALUE;
+	
 	private int lastEdibleScore;
+	private int numberOfDecisions;
+	private long numberOfSimulations;
 	
 	private MonteCarloPacManSimulator simulator;
 	private MonteCarloPacManParameters parameters;
+	private DecisionTelemetry telemetry;
+	private final LatencyRecorder latency = new LatencyRecorder();
+	private boolean decisionMade;
+	private TreeExporter treeExporter;
+	private boolean treeExportFailed;
+	private MOVE firstMove;
+	private boolean atDecisionPoint;
+	private OpeningBook openingBook;
+	private boolean openingBookFailed;
+	private MOVE bookMove;
+	private int numberOfBookMoves;
+	private WarmUp warmUp;
+	private long tickStartTime;
+	private int ticksToDecision;
+	private long simulationNanos;
+	private int numberOfEarlyStops;
+	private long savedMillis;
 	
 	/**
 	 * Constructor.
@@ -26,6 +63,9 @@ public class MyPacMan extends Controller<MOVE>
 	public MyPacMan(MonteCarloPacManParameters parameters)
 	{
 		this.parameters = parameters;
+		
+		if (parameters.warmUpMillis > 0)
+			warmUp = WarmUp.run(parameters, parameters.warmUpMillis);
 	}
 	
 	
@@ -37,14 +77,68 @@ public class MyPacMan extends Controller<MOVE>
 
 	public MOVE getMove(Game game, long timeDue) 
 	{
-		MOVE move = MOVE.NEUTRAL;
+		long startTime = System.nanoTime();
+		decisionMade = false;
+		
+		MOVE move = search(game, timeDue);
+		
+		//the framework uses the previous move if this one is late
+		latency.record(decisionMade, System.nanoTime() - startTime, System.currentTimeMillis() > timeDue);
+		
+		return move;
+	}
+	
+	
+	/**
+	 * Runs the search for this tick, and picks a move if Ms Pac-Man is at a decision point.
+	 * @param game
+	 * @param timeDue
+	 * @return
+	 */
+	private MOVE search(Game game, long timeDue)
+	{
+		long stopTime = timeDue - startTick(game);
+		
+		//run simulations until it's time to return (if in real-time mode)
+		if (parameters.simulationCount == -1)
+		{
+			long simulationStart = System.nanoTime();
+			
+			while (System.currentTimeMillis() < stopTime && !canStopEarly(stopTime))
+			//for (int i = 0; i < 20; i++)
+			{
+				numberOfSimulations += simulator.runBatch();
+			}
+			
+			simulationNanos += System.nanoTime() - simulationStart;
+		}
+		
+		return finishTick(game, timeDue);
+	}
+	
+	
+	/**
+	 * Gets ready to search during a tick of the game.  Call runSimulations() for as long as there's time,
+	 * then finishTick(), which lets the search be spread over a thread pool shared with other games;
+	 * getMove() does all three on the calling thread.
+	 * @param game
+	 * @return The number of milliseconds before the move is due that the simulations should stop, which is
+	 * Integer.MAX_VALUE if the move has been taken from the opening book and there's nothing to search for.
+	 */
+	public int startTick(Game game)
+	{
+		firstMove = MOVE.NEUTRAL;
+		bookMove = null;
+		tickStartTime = System.currentTimeMillis();
 		
 		if (simulator == null)
 		{
-			//first move, just pick a random one because it shouldn't really matter too much
-			Random random = new Random();
+			//first move, just pick a random one because it shouldn't really matter too much,
+			//unless the opening book knows better
+			Random random = parameters.createRandom();
 			MOVE[] possibleMoves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex());
-			move = possibleMoves[random.nextInt(possibleMoves.length)];
+			MOVE openingMove = getBookMove(game);
+			firstMove = openingMove != null ? openingMove : possibleMoves[random.nextInt(possibleMoves.length)];
 			
 			//lastEdibleScore won't be set yet since this is the first move
 			lastEdibleScore = game.getGhostCurrentEdibleScore();
@@ -52,7 +146,13 @@ public class MyPacMan extends Controller<MOVE>
 			//make a new simulator with a copy of the game state so that we can play the move
 			//we picked, in order for the simulator to know what direction Ms Pac-Man is going
 			simulator = new MonteCarloPacManSimulator(game, parameters);
-			simulator.playMove(move);
+			simulator.playMove(firstMove);
+			
+			if (SearchTelemetry.ENABLED)
+			{
+				telemetry = new DecisionTelemetry();
+				simulator.setTelemetry(telemetry);
+			}
 		}
 		else
 		{
@@ -60,81 +160,383 @@ public class MyPacMan extends Controller<MOVE>
 			simulator.setGameState(game);
 		}
 		
+		atDecisionPoint = simulator.isAtNode(lastEdibleScore);
+		
+		//the search for the next decision carries on over the ticks until Ms Pac-Man gets there
+		if (parameters.stoppingRule != null && parameters.simulationCount == -1)
+			ticksToDecision = atDecisionPoint ? 0 : simulator.getTicksToNextNode();
+		
+		if (atDecisionPoint && firstMove == MOVE.NEUTRAL)
+		{
+			bookMove = getBookMove(game);
+			
+			if (bookMove != null)
+				return NO_SEARCH;
+		}
 		
 		//if we need to make a decision this step, and there's evaluators to be run,
 		//give them some time to run
-		if (simulator.isAtNode(lastEdibleScore) && parameters.additionalEvaluators != null)
+		if (atDecisionPoint && parameters.additionalEvaluators != null)
+			return EVALUATOR_TIME + timeBuffer;
+		
+		return timeBuffer;
+	}
+	
+	
+	/**
+	 * Runs simulations for the current tick in real-time mode.  With a fixed simulation count, the
+	 * simulations are run when the decision is made instead.
+	 * @param count
+	 */
+	public void runSimulations(int count)
+	{
+		long simulationStart = System.nanoTime();
+		
+		int run = 0;
+		
+		//with rollouts batched, the last batch can take the count over
+		while (run < count)
 		{
-			timeDue -= 20;
+			run += simulator.runBatch();
 		}
 		
+		numberOfSimulations += run;
+		simulationNanos += System.nanoTime() - simulationStart;
+	}
+	
+	
+	/**
+	 * Determines if the stopping rule says the search for the next decision has settled, so that the simulations
+	 * for this tick can stop before stopTime.  Between decision points the rule has to hold for every state of
+	 * the ghosts the tree has seen at the decision point.  Only real-time searches stop early, and the time given
+	 * up is added to getSavedMillis().
+	 * @param stopTime The time the simulations would otherwise stop.
+	 * @return
+	 */
+	public boolean canStopEarly(long stopTime)
+	{
+		if (parameters.stoppingRule == null || parameters.simulationCount != -1 || firstMove != MOVE.NEUTRAL
+			|| simulationNanos == 0)
+			return false;
+		
+		//project the simulations there's time for before the decision from the rate so far, taking each tick
+		//still to come before Ms Pac-Man gets to the decision point to be as long as this one
+		long now = System.currentTimeMillis();
+		long millisLeft = Math.max(0, stopTime - now) + ticksToDecision * Math.max(0, stopTime - tickStartTime);
+		long remaining = (long)(numberOfSimulations * 1e6 * millisLeft / simulationNanos);
 		
-		//run simulations until it's time to return (if in real-time mode)
-		if (parameters.simulationCount == -1)
+		if (!simulator.canStop(parameters.stoppingRule, atDecisionPoint, remaining))
+			return false;
+		
+		numberOfEarlyStops++;
+		savedMillis += Math.max(0, stopTime - now);
+		return true;
+	}
+	
+	
+	/**
+	 * Finishes the search for the current tick, picking a move if Ms Pac-Man is at a decision point.
+	 * @param game The game passed to startTick().
+	 * @param timeDue The time the move is due, before any time is set aside for the evaluators.
+	 * @return The move, or MOVE.NEUTRAL to carry on in the same direction.
+	 */
+	public MOVE finishTick(Game game, long timeDue)
+	{
+		//if it's the first move, it will already have been assigned a random value
+		MOVE move = firstMove;
+		
+		//check if we need to make a decision
+		if (atDecisionPoint && move == MOVE.NEUTRAL)
 		{
-			while (System.currentTimeMillis() < timeDue - timeBuffer)
-			//for (int i = 0; i < 20; i++)
+			move = makeDecision(game);
+			
+			if (SearchTelemetry.ENABLED)
 			{
-				simulator.runSimulation();
+				SearchTelemetry.getInstance().record(telemetry, timeDue - System.currentTimeMillis());
+				telemetry.reset();
 			}
 		}
 		
-		//check if we need to make a decision
-		//if it's the first move, move will already have been assigned a random value
-		if (simulator.isAtNode(lastEdibleScore) && move == MOVE.NEUTRAL)
+		//save the edible score so that we can detect if it changes
+		lastEdibleScore = game.getGhostCurrentEdibleScore();
+		
+        return move;
+	}
+	
+	
+	/**
+	 * Determines if Ms Pac-Man was at a decision point in the game passed to the last call to startTick().
+	 * @return
+	 */
+	public boolean isAtDecisionPoint()
+	{
+		return atDecisionPoint;
+	}
+	
+	
+	/**
+	 * Searches for a move from a decision point with a new tree, running simulationCount simulations.
+	 * This is how a recorded decision is replayed, so simulationCount can't be -1.
+	 * @param game The game state, which must be at a decision point.
+	 * @return
+	 */
+	public MOVE decide(Game game)
+	{
+		if (parameters.simulationCount < 0)
+			throw new IllegalStateException("A fixed simulation count is needed to search from a single position.");
+		
+		simulator = new MonteCarloPacManSimulator(game, parameters);
+		simulator.setTelemetry(telemetry);
+		bookMove = null;
+		MOVE move = makeDecision(game);
+		
+		lastEdibleScore = game.getGhostCurrentEdibleScore();
+		return move;
+	}
+	
+	
+	/**
+	 * Picks a move at a decision point, running the required number of simulations first if not in
+	 * real-time mode, and prepares the tree for the next decision.
+	 * @param game
+	 * @return
+	 */
+	private MOVE makeDecision(Game game)
+	{
+		MOVE move = MOVE.NEUTRAL;
+		
+		//if we're not in real-time mode, run the number of simulations required, unless the book has the move
+		if (parameters.simulationCount > -1 && bookMove == null)
 		{
-			//if we're not in real-time mode, run the number of simulations required
-			if (parameters.simulationCount > -1)
+			int run = 0;
+			
+			while (run < parameters.simulationCount)
 			{
-				for (int i = 0; i < parameters.simulationCount; i++)
-				{
-					simulator.runSimulation();
-				}
+				run += simulator.runBatch();
 			}
 			
-			//let other evaluators add their 'opinion'
+			numberOfSimulations += run;
+		}
+		
+		numberOfDecisions++;
+		decisionMade = true;
+		
+		//let other evaluators add their 'opinion'
+		if (SearchTelemetry.ENABLED && telemetry != null)
+		{
+			long evaluatorStart = System.nanoTime();
 			runAdditionalEvaluators();
-			
-			//pick the move with the best score
-			GameNode node = simulator.bestNode();
-			
-			if (node == null)
-			{
-				//haven't reached the expansion threshold yet
-				//if we're using ghost positions, hopefully we can use the best overall
-				//it might still return MOVE.NEUTRAL though
-				if (parameters.useGhostPositions)
-					move = simulator.bestOverallMove();
-			}
-			else
+			telemetry.addEvaluatorTime(System.nanoTime() - evaluatorStart);
+			telemetry.measureTree(simulator.getRootNode(), parameters.useGhostPositions);
+		}
+		else
+		{
+			runAdditionalEvaluators();
+		}
+		
+		//pick the move with the best score, or the one the opening book gives
+		GameNode node = bookMove == null ? simulator.bestNode() : getPacManChild(bookMove);
+		
+		if (bookMove != null)
+		{
+			move = bookMove;
+		}
+		else if (node == null)
+		{
+			//haven't reached the expansion threshold yet
+			//if we're using ghost positions, hopefully we can use the best overall
+			//it might still return MOVE.NEUTRAL though
+			if (parameters.useGhostPositions)
+				move = simulator.bestOverallMove();
+		}
+		else
+		{
+			move = node.getMove();
+		}
+		
+		if (parameters.treeExportFile != null && !treeExportFailed)
+			exportTree(game, move);
+		
+		if (parameters.discardTreeOnDecision || node == null)
+		{
+			//make a fresh tree etc for the next decision
+			//System.out.println("Set new root");
+			simulator = new MonteCarloPacManSimulator(game, parameters);
+			simulator.setTelemetry(telemetry);
+		}
+		else
+		{
+			//use chosen node as new root
+			simulator.setRootNode(node);
+		}
+		
+		return move;
+	}
+	
+	
+	/**
+	 * Gets the number of decisions made so far in the game.
+	 * @return
+	 */
+	public int getNumberOfDecisions()
+	{
+		return numberOfDecisions;
+	}
+	
+	
+	/**
+	 * Gets the number of moves taken from the opening book so far in the game.
+	 * @return
+	 */
+	public int getNumberOfBookMoves()
+	{
+		return numberOfBookMoves;
+	}
+	
+	
+	/**
+	 * Gets the result of the warm-up run when the agent was created.
+	 * @return The result, or null if warmUpMillis is 0.
+	 */
+	public WarmUp getWarmUp()
+	{
+		return warmUp;
+	}
+	
+	
+	/**
+	 * Gets the total number of simulations run so far in the game.
+	 * @return
+	 */
+	public long getNumberOfSimulations()
+	{
+		return numberOfSimulations;
+	}
+	
+	
+	/**
+	 * Gets the number of ticks on which the stopping rule ended the search before the deadline.
+	 * @return
+	 */
+	public int getNumberOfEarlyStops()
+	{
+		return numberOfEarlyStops;
+	}
+	
+	
+	/**
+	 * Gets the total time given up by stopping searches early, in milliseconds.
+	 * @return
+	 */
+	public long getSavedMillis()
+	{
+		return savedMillis;
+	}
+	
+	
+	/**
+	 * Gets the latencies of the calls to getMove so far in the game.
+	 * @return
+	 */
+	public LatencyRecorder getLatency()
+	{
+		return latency;
+	}
+	
+	
+	/**
+	 * Finishes writing the search tree export, if there is one.  Call this when the game is over.
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		if (treeExporter != null)
+		{
+			treeExporter.close();
+			treeExporter = null;
+		}
+		
+		if (parameters.valueSampleFile != null)
+			ValueSampleRecorder.get(parameters.valueSampleFile).flush();
+	}
+	
+	
+	/**
+	 * Queues a copy of the search tree to be written to the tree export file.
+	 * @param game
+	 * @param move The move chosen.
+	 */
+	private void exportTree(Game game, MOVE move)
+	{
+		if (treeExporter == null)
+		{
+			try
 			{
-				move = node.getMove();
+				treeExporter = new TreeExporter(new File(parameters.treeExportFile));
 			}
-			
-			if (parameters.discardTreeOnDecision || node == null)
+			catch (IOException ex)
 			{
-				//make a fresh tree etc for the next decision
-				//System.out.println("Set new root");
-				simulator = new MonteCarloPacManSimulator(game, parameters);
+				//don't let a bad path spoil the game, just stop exporting
+				System.err.println("Could not export the search tree: " + ex.getMessage());
+				treeExportFailed = true;
+				return;
 			}
-			else
+		}
+		
+		treeExporter.export(TreeSnapshot.capture(simulator.getRootNode(), parameters.useGhostPositions,
+			numberOfDecisions, game, move));
+	}
+	
+	
+	/**
+	 * Looks the position up in the opening book, if there is one.
+	 * @param game
+	 * @return The book's move, or null if there's no book or the position isn't in it.
+	 */
+	private MOVE getBookMove(Game game)
+	{
+		if (parameters.openingBookFile == null || openingBookFailed)
+			return null;
+		
+		if (openingBook == null)
+		{
+			try
 			{
-				//use chosen node as new root
-				simulator.setRootNode(node);
+				openingBook = OpeningBook.get(parameters.openingBookFile);
 			}
-			
-			if (System.currentTimeMillis() > timeDue)
+			catch (IOException ex)
 			{
-				//oops, too late: increase the time buffer so we're not late next time
-				//timeBuffer++;
-				//System.out.println("Too late!");
+				//don't let a bad path spoil the game, just play without the book
+				System.err.println("Could not open the opening book: " + ex.getMessage());
+				openingBookFailed = true;
+				return null;
 			}
 		}
 		
-		//save the edible score so that we can detect if it changes
-		lastEdibleScore = game.getGhostCurrentEdibleScore();
+		MOVE move = openingBook.getMove(game);
 		
-        return move;
+		if (move != null)
+			numberOfBookMoves++;
+		
+		return move;
+	}
+	
+	
+	/**
+	 * Gets the child of the root for a move of Ms Pac-Man's, taking the ghost positions into account if
+	 * they're being used.
+	 * @param move
+	 * @return The node, or null if the tree hasn't got that far yet.
+	 */
+	private GameNode getPacManChild(MOVE move)
+	{
+		for (GameNode node: simulator.getPacManChildren())
+		{
+			if (node.getMove() == move)
+				return node;
+		}
+		
+		return null;
 	}
 	
 	
@@ -147,7 +549,20 @@ public class MyPacMan extends Controller<MOVE>
 		{
 			for (ITreeEvaluator evaluator: parameters.additionalEvaluators)
 			{
+				//with progressive bias, these have already had their say during the search
+				if (parameters.useProgressiveBias && evaluator instanceof INodeEvaluator)
+					continue;
+				
+				TreeEvaluatorEvent event = new TreeEvaluatorEvent();
+				event.begin();
 				evaluator.evaluateTree(simulator);
+				
+				if (event.shouldCommit())
+				{
+					event.evaluator = evaluator.toString();
+					event.nodes = simulator.getPacManChildren().size();
+					event.commit();
+				}
 			}
 		}
 	}
@@ -0,0 +1,55 @@
+package pacman.entries.pacman;
+
+import java.util.Arrays;
+
+/**
+ * The tree nodes visited by a simulation, whose scores are updated at the end of it.  It's kept by the
+ * simulator and cleared for each simulation rather than created, so that walking the tree allocates nothing
+ * once the array has grown to the depth of the tree.
+ */
+public class NodePath
+{
+	private GameNode[] nodes = new GameNode[32];
+	private int size;
+	
+	
+	public void add(GameNode node)
+	{
+		if (size == nodes.length)
+			nodes = Arrays.copyOf(nodes, size * 2);
+		
+		nodes[size++] = node;
+	}
+	
+	
+	public GameNode get(int index)
+	{
+		return nodes[index];
+	}
+	
+	
+	/**
+	 * Gets the last node added.
+	 * @return
+	 */
+	public GameNode getLast()
+	{
+		return nodes[size - 1];
+	}
+	
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	
+	/**
+	 * Empties the path, letting go of the nodes so that pruned parts of the tree can be collected.
+	 */
+	public void clear()
+	{
+		Arrays.fill(nodes, 0, size, null);
+		size = 0;
+	}
+}
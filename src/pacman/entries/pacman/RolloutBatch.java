@@ -0,0 +1,191 @@
+package pacman.entries.pacman;
+
+import java.util.EnumMap;
+
+import pacman.controllers.Controller;
+import pacman.entries.pacman.valuemodel.ValueFeatures;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * A batch of rollouts played in lockstep: every rollout still running is advanced by a tick before any of them
+ * is advanced by another, so that the models and the maze they walk over stay in the cache for the whole batch.
+ * What each rollout has got to is kept in arrays indexed by its slot in the batch, and the slots still running
+ * are kept packed at the front of another array, so that a tick only visits those.
+ *
+ * The game itself is the framework's Game, which can't be split up into arrays of positions and timers, so it is
+ * the rollouts rather than the parts of each game which are kept side by side.
+ */
+public class RolloutBatch
+{
+	private final Game[] games;
+	private final int[] levels;
+	private final int[] ticks;
+	private final int[] sampleTicks;
+	private final int[] sampleScores;
+	private final double[][] sampleFeatures;
+	private final int[] running;
+	private int size;
+	
+	
+	/**
+	 * Constructor.
+	 * @param capacity The most rollouts in a batch.
+	 */
+	public RolloutBatch(int capacity)
+	{
+		games = new Game[capacity];
+		levels = new int[capacity];
+		ticks = new int[capacity];
+		sampleTicks = new int[capacity];
+		sampleScores = new int[capacity];
+		sampleFeatures = new double[capacity][ValueFeatures.COUNT];
+		running = new int[capacity];
+	}
+	
+	
+	/**
+	 * Empties the batch, ready for the next one.
+	 */
+	public void clear()
+	{
+		for (int slot = 0; slot < size; slot++)
+		{
+			games[slot] = null;
+		}
+		
+		size = 0;
+	}
+	
+	
+	/**
+	 * Adds a rollout to the batch.
+	 * @param game The game to play the rollout in, which the batch plays on rather than copying.
+	 * @param sampleTick The tick to extract the ValueFeatures at, or -1 not to.
+	 * @return The slot of the rollout.
+	 */
+	public int add(Game game, int sampleTick)
+	{
+		int slot = size++;
+		games[slot] = game;
+		levels[slot] = game.getCurrentLevel();
+		ticks[slot] = 0;
+		sampleTicks[slot] = sampleTick;
+		sampleScores[slot] = 0;
+		return slot;
+	}
+	
+	
+	/**
+	 * Plays every rollout in the batch to the end of its level, game over or the simulation limit.
+	 * @param pacManModel
+	 * @param ghostModel
+	 * @param maximumLength The most ticks to play in each rollout.
+	 */
+	public void run(Controller<MOVE> pacManModel, Controller<EnumMap<GHOST, MOVE>> ghostModel, int maximumLength)
+	{
+		int active = 0;
+		
+		for (int slot = 0; slot < size; slot++)
+		{
+			if (isRunning(slot, maximumLength))
+				running[active++] = slot;
+		}
+		
+		while (active > 0)
+		{
+			int stillRunning = 0;
+			
+			for (int i = 0; i < active; i++)
+			{
+				int slot = running[i];
+				Game game = games[slot];
+				
+				if (ticks[slot] == sampleTicks[slot])
+				{
+					ValueFeatures.extract(game, sampleFeatures[slot]);
+					sampleScores[slot] = game.getScore();
+				}
+				
+				game.advanceGame(pacManModel.getMove(game, 0), ghostModel.getMove(game, 0));
+				ticks[slot]++;
+				
+				if (isRunning(slot, maximumLength))
+					running[stillRunning++] = slot;
+			}
+			
+			active = stillRunning;
+		}
+	}
+	
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	
+	public int getCapacity()
+	{
+		return games.length;
+	}
+	
+	
+	public Game getGame(int slot)
+	{
+		return games[slot];
+	}
+	
+	
+	/**
+	 * Gets the level the rollout started on.
+	 * @param slot
+	 * @return
+	 */
+	public int getLevel(int slot)
+	{
+		return levels[slot];
+	}
+	
+	
+	/**
+	 * Gets the number of ticks the rollout played.
+	 * @param slot
+	 * @return
+	 */
+	public int getTicks(int slot)
+	{
+		return ticks[slot];
+	}
+	
+	
+	public int getSampleTick(int slot)
+	{
+		return sampleTicks[slot];
+	}
+	
+	
+	/**
+	 * Gets the score at the tick the sample was taken at.
+	 * @param slot
+	 * @return
+	 */
+	public int getSampleScore(int slot)
+	{
+		return sampleScores[slot];
+	}
+	
+	
+	public double[] getSampleFeatures(int slot)
+	{
+		return sampleFeatures[slot];
+	}
+	
+	
+	private boolean isRunning(int slot, int maximumLength)
+	{
+		Game game = games[slot];
+		return ticks[slot] < maximumLength && !game.gameOver() && game.getCurrentLevel() == levels[slot];
+	}
+}
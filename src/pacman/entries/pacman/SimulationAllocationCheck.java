@@ -0,0 +1,213 @@
+package pacman.entries.pacman;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+
+import pacman.controllers.Controller;
+import pacman.entries.pacman.openingbook.OpeningBookBuilder;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Measures the memory the search allocates for each simulation, and fails if it's over BUDGET, so that garbage
+ * creeping back into the simulation loop is caught.  The simulations are played with models which allocate
+ * nothing, and the memory the framework allocates for the game copies and ticks is measured alongside and
+ * taken off, which leaves the search's own allocations: the nodes the tree grows by, and anything else is a
+ * regression.  Allocations are measured with the JVM's per-thread counters, so the check needs a HotSpot JVM.
+ *
+ * Usage: java pacman.entries.pacman.SimulationAllocationCheck [simulations]
+ * The exit status is 0 within the budget, 1 over it, and 2 if the JVM can't measure allocations.
+ */
+public class SimulationAllocationCheck
+{
+	//bytes per simulation the search may allocate, which is mostly the growth of the tree
+	public static final int BUDGET = 128;
+	
+	//simulations run on each maze before measuring, so that the code is compiled and the tree established
+	private static final int WARM_UP = 5000;
+	
+	private static final GHOST[] GHOSTS = GHOST.values();
+	
+	//short rollouts, so that the search's allocations aren't lost among the framework's
+	private static final int ROLLOUT_LENGTH = 20;
+	
+	//the number of ticks the models are played for on each maze to reach the state the simulations start from
+	private static final int LEAD_IN = 100;
+	
+	
+	public static void main(String[] args)
+	{
+		int simulations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		
+		if (!(threads instanceof com.sun.management.ThreadMXBean)
+			|| !((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported())
+		{
+			System.out.println("This JVM can't measure the memory allocated by a thread.");
+			System.exit(2);
+		}
+		
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threads;
+		allocations.setThreadAllocatedMemoryEnabled(true);
+		double worst = 0;
+		
+		for (int maze = 0; maze < 4; maze++)
+		{
+			double bytes = measure(allocations, maze, simulations);
+			System.out.printf("Maze %d: %.0f bytes per simulation\n", maze, bytes);
+			worst = Math.max(worst, bytes);
+		}
+		
+		if (worst > BUDGET)
+		{
+			System.out.printf("Over the budget of %d bytes per simulation.\n", BUDGET);
+			System.exit(1);
+		}
+		
+		System.out.printf("Within the budget of %d bytes per simulation.\n", BUDGET);
+	}
+	
+	
+	/**
+	 * Measures the bytes the search allocates per simulation on a maze, apart from the framework's.
+	 */
+	private static double measure(com.sun.management.ThreadMXBean allocations, int maze, int simulations)
+	{
+		MonteCarloPacManParameters parameters = new MonteCarloPacManParameters();
+		CheckGhosts ghosts = new CheckGhosts(allocations);
+		parameters.pacManModel = new CheckPacMan();
+		parameters.ghostModel = ghosts;
+		parameters.maximumSimulationLength = ROLLOUT_LENGTH;
+		parameters.seedRandoms(maze);
+		
+		Game game = OpeningBookBuilder.createLevel(maze);
+		
+		for (int i = 0; i < LEAD_IN && !game.gameOver(); i++)
+		{
+			game.advanceGame(parameters.pacManModel.getMove(game, 0), parameters.ghostModel.getMove(game, 0));
+		}
+		
+		MonteCarloPacManSimulator simulator = new MonteCarloPacManSimulator(game.copy(), parameters);
+		long threadId = Thread.currentThread().getId();
+		
+		//probe during the warm-up as well, so that the probes are compiled before measuring
+		ghosts.probing = true;
+		
+		for (int i = 0; i < WARM_UP; i++)
+		{
+			simulator.runSimulation();
+		}
+		
+		double copyBytes = measureCopy(allocations, game);
+		long copies = simulator.getNumberOfCopies();
+		ghosts.reset();
+		long startBytes = allocations.getThreadAllocatedBytes(threadId);
+		
+		for (int i = 0; i < simulations; i++)
+		{
+			simulator.runSimulation();
+		}
+		
+		long bytes = allocations.getThreadAllocatedBytes(threadId) - startBytes;
+		ghosts.probing = false;
+		copies = simulator.getNumberOfCopies() - copies;
+		
+		//take off the search's copies and the probes' copies and ticks, and the ticks the probes stand in for
+		double search = bytes - (copies + ghosts.ticks) * copyBytes - ghosts.firstTickBytes - 2 * ghosts.tickBytes;
+		return search / simulations;
+	}
+	
+	
+	private static double measureCopy(com.sun.management.ThreadMXBean allocations, Game game)
+	{
+		long threadId = Thread.currentThread().getId();
+		long startBytes = allocations.getThreadAllocatedBytes(threadId);
+		
+		for (int i = 0; i < 1000; i++)
+		{
+			game.copy();
+		}
+		
+		return (allocations.getThreadAllocatedBytes(threadId) - startBytes) / 1000.0;
+	}
+	
+	
+	/**
+	 * Picks Ms Pac-Man's moves at random without allocating.
+	 */
+	public static class CheckPacMan extends Controller<MOVE>
+	{
+		private int seed = 1;
+		
+		
+		@Override
+		public MOVE getMove(Game game, long timeDue)
+		{
+			MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
+			seed = seed * 1103515245 + 12345;
+			return moves[((seed >>> 16) & 0x7fff) % moves.length];
+		}
+	}
+	
+	
+	/**
+	 * Picks the ghosts' moves at random without allocating.  While probing, each tick is first played on a copy
+	 * of the game to measure what the framework allocates for it, since that depends on the state of the game.
+	 */
+	public static class CheckGhosts extends Controller<EnumMap<GHOST, MOVE>>
+	{
+		private final EnumMap<GHOST, MOVE> moves = new EnumMap<GHOST, MOVE>(GHOST.class);
+		private final com.sun.management.ThreadMXBean allocations;
+		private final long threadId = Thread.currentThread().getId();
+		private int seed = 1;
+		private boolean probing;
+		private long ticks;
+		private long firstTickBytes;
+		private long tickBytes;
+		
+		
+		public CheckGhosts(com.sun.management.ThreadMXBean allocations)
+		{
+			this.allocations = allocations;
+		}
+		
+		
+		@Override
+		public EnumMap<GHOST, MOVE> getMove(Game game, long timeDue)
+		{
+			for (GHOST ghost: GHOSTS)
+			{
+				MOVE[] possible = game.getPossibleMoves(game.getGhostCurrentNodeIndex(ghost), game.getGhostLastMoveMade(ghost));
+				seed = seed * 1103515245 + 12345;
+				moves.put(ghost, possible.length == 0 ? MOVE.NEUTRAL : possible[((seed >>> 16) & 0x7fff) % possible.length]);
+			}
+			
+			if (probing)
+			{
+				//the first tick of a copy also allocates what the game's collections create on first use, so
+				//it's measured apart from the second, which stands in for the tick about to be played
+				Game probe = game.copy();
+				long startBytes = allocations.getThreadAllocatedBytes(threadId);
+				probe.advanceGame(game.getPacmanLastMoveMade(), moves);
+				long middleBytes = allocations.getThreadAllocatedBytes(threadId);
+				probe.advanceGame(probe.getPacmanLastMoveMade(), moves);
+				long endBytes = allocations.getThreadAllocatedBytes(threadId);
+				firstTickBytes += middleBytes - startBytes;
+				tickBytes += endBytes - middleBytes;
+				ticks++;
+			}
+			
+			return moves;
+		}
+		
+		
+		private void reset()
+		{
+			ticks = 0;
+			firstTickBytes = 0;
+			tickBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package pacman.entries.pacman;
+
+import pacman.entries.pacman.openingbook.OpeningBookBuilder;
+import pacman.game.Constants;
+import pacman.game.Game;
+
+/**
+ * Runs simulations on each maze before the first game, so that the JIT compiler has compiled the search by the
+ * time the first timed decision comes round, rather than the opening being played with interpreted code.  The
+ * simulations are run in short rounds from a state a little way into each maze, going round the mazes in turn,
+ * until the rate for a whole cycle of the mazes is within a tenth of the rate for the cycles before, or the
+ * time is up.
+ *
+ * The compiled code is shared by everything in the JVM, so the warm-up is only run once; later calls get the
+ * result of the first.
+ */
+public class WarmUp
+{
+	//the length of each round of simulations on one maze
+	private static final int ROUND_MILLIS = 200;
+	
+	//how close the rate for a cycle of the mazes has to be to the rate for the cycle before, for how many cycles
+	//in a row, to count as steady; compilation comes in bursts, so one cycle can match the next on the way up
+	private static final double STEADY_TOLERANCE = 0.1;
+	private static final int STEADY_CYCLES = 2;
+	
+	//the number of ticks the models are played for on each maze to reach the state the simulations start from
+	private static final int LEAD_IN = 100;
+	
+	private static WarmUp result;
+	
+	private final double rate;
+	private final boolean steady;
+	private final int rounds;
+	private final long simulations;
+	private final long elapsedMillis;
+	
+	
+	private WarmUp(double rate, boolean steady, int rounds, long simulations, long elapsedMillis)
+	{
+		this.rate = rate;
+		this.steady = steady;
+		this.rounds = rounds;
+		this.simulations = simulations;
+		this.elapsedMillis = elapsedMillis;
+	}
+	
+	
+	public static void main(String[] args)
+	{
+		int millis = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		System.out.println("Warmed up: " + run(new MonteCarloPacManParameters(), millis));
+	}
+	
+	
+	/**
+	 * Warms up the search, unless it's already been warmed up in this JVM.
+	 * @param parameters The parameters the search will be run with.  They aren't changed.
+	 * @param maximumMillis The most time to spend.
+	 * @return The result of the first warm-up.
+	 */
+	public static synchronized WarmUp run(MonteCarloPacManParameters parameters, int maximumMillis)
+	{
+		if (result == null)
+			result = warmUp(copyParameters(parameters), maximumMillis);
+		
+		return result;
+	}
+	
+	
+	/**
+	 * Gets the simulation rate for the last cycle of the mazes.
+	 * @return Simulations per second.
+	 */
+	public double getRate()
+	{
+		return rate;
+	}
+	
+	
+	/**
+	 * Gets whether the rate settled down before the time was up.
+	 * @return
+	 */
+	public boolean isSteady()
+	{
+		return steady;
+	}
+	
+	
+	public int getRounds()
+	{
+		return rounds;
+	}
+	
+	
+	public long getSimulations()
+	{
+		return simulations;
+	}
+	
+	
+	public long getElapsedMillis()
+	{
+		return elapsedMillis;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return String.format("%.0f simulations/s%s after %d simulations in %d rounds (%dms)", rate,
+			steady ? "" : " (not yet steady)", simulations, rounds, elapsedMillis);
+	}
+	
+	
+	private static WarmUp warmUp(MonteCarloPacManParameters parameters, int maximumMillis)
+	{
+		long startTime = System.currentTimeMillis();
+		long endTime = startTime + maximumMillis;
+		Game[] games = createGames(parameters);
+		double rate = 0;
+		double previousRate = 0;
+		long simulations = 0;
+		int rounds = 0;
+		int steadyCycles = 0;
+		
+		//go round the mazes until the rate for a whole cycle is close to the rate for the cycle before, or
+		//the time is up; single rounds vary too much with the length of the rollouts to compare
+		while (System.currentTimeMillis() < endTime && steadyCycles < STEADY_CYCLES)
+		{
+			long cycleStart = System.nanoTime();
+			long cycleSimulations = 0;
+			
+			for (int maze = 0; maze < games.length && System.currentTimeMillis() < endTime; maze++)
+			{
+				MonteCarloPacManSimulator simulator = new MonteCarloPacManSimulator(games[maze].copy(), parameters);
+				long roundEnd = System.nanoTime() + ROUND_MILLIS * 1000000L;
+				
+				while (System.nanoTime() < roundEnd)
+				{
+					cycleSimulations += simulator.runBatch();
+				}
+				
+				rounds++;
+			}
+			
+			previousRate = rate;
+			rate = cycleSimulations * 1e9 / (System.nanoTime() - cycleStart);
+			simulations += cycleSimulations;
+			steadyCycles = previousRate > 0 && Math.abs(rate - previousRate) <= STEADY_TOLERANCE * previousRate
+				? steadyCycles + 1 : 0;
+		}
+		
+		return new WarmUp(rate, steadyCycles >= STEADY_CYCLES, rounds, simulations, System.currentTimeMillis() - startTime);
+	}
+	
+	
+	/**
+	 * Creates a game on each maze, a little way into its level so that the simulations aren't all from the start.
+	 */
+	private static Game[] createGames(MonteCarloPacManParameters parameters)
+	{
+		Game[] games = new Game[Constants.NUM_MAZES];
+		
+		for (int maze = 0; maze < games.length; maze++)
+		{
+			games[maze] = OpeningBookBuilder.createLevel(maze);
+			
+			for (int i = 0; i < LEAD_IN && !games[maze].gameOver(); i++)
+			{
+				games[maze].advanceGame(parameters.pacManModel.getMove(games[maze], 0),
+					parameters.ghostModel.getMove(games[maze], 0));
+			}
+		}
+		
+		return games;
+	}
+	
+	
+	/**
+	 * Copies the parameters so that the warm-up shares no state with the games, and doesn't record anything.
+	 */
+	private static MonteCarloPacManParameters copyParameters(MonteCarloPacManParameters parameters)
+	{
+		try
+		{
+			MonteCarloPacManParameters copy = parameters.copy();
+			copy.valueSampleFile = null;
+			copy.treeExportFile = null;
+			return copy;
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+		catch (InstantiationException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+	}
+}
@@ -13,7 +13,7 @@ import pacman.game.Game;
  * A tree evaluator which increases the score of the node which brings the
  * Ms. Pac-Man closer to eating a pill. 
  */
-public class DistanceToOpportunityEvaluator implements ITreeEvaluator
+public class DistanceToOpportunityEvaluator implements ITreeEvaluator, INodeEvaluator
 {
 	private static final int DEFAULT_GHOST_SCORE = 400;
 	private static final int DEFAULT_PILL_SCORE = 200;
@@ -30,6 +30,12 @@ public class DistanceToOpportunityEvaluator implements ITreeEvaluator
 		this(DEFAULT_GHOST_SCORE, DEFAULT_PILL_SCORE);
 	}
 	
+	@Override
+	public String toString()
+	{
+		return "DistanceToOpportunityEvaluator(" + ghostScore + ", " + pillScore + ")";
+	}
+	
 	@Override
 	public void evaluateTree(MonteCarloPacManSimulator simulator)
 	{
@@ -56,6 +62,24 @@ public class DistanceToOpportunityEvaluator implements ITreeEvaluator
 	}
 	
 	
+	@Override
+	public void evaluateNode(GameNode node, Game game)
+	{
+		MOVE ghostMove = getMoveTowardsEdibleGhost(game);
+		
+		if (ghostMove != MOVE.NEUTRAL)
+		{
+			addBias(node, ghostMove, ghostScore);
+		}
+		
+		//the level might have just been cleared in the search
+		if (game.getNumberOfActivePills() > 0)
+		{
+			addBias(node, getMoveTowardsPill(game), pillScore);
+		}
+	}
+	
+	
 	/**
 	 * Finds the closest edible ghost and returns the move which moves PacMan towards it; if no ghosts are edible,
 	 * MOVE.NEUTRAL is returned instead.
@@ -130,4 +154,21 @@ public class DistanceToOpportunityEvaluator implements ITreeEvaluator
 			}
 		}
 	}
+	
+	
+	/**
+	 * Adds the specified amount onto the heuristic bias of the child node which represents the given move.
+	 * @param node
+	 * @param move
+	 * @param bias
+	 */
+	private void addBias(GameNode node, MOVE move, int bias)
+	{
+		GameNode child = node.getChild(move);
+		
+		if (child != null)
+		{
+			child.addHeuristicBias(bias);
+		}
+	}
 }
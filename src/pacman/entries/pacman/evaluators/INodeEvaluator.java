@@ -0,0 +1,18 @@
+package pacman.entries.pacman.evaluators;
+
+import pacman.entries.pacman.GameNode;
+import pacman.game.Game;
+
+/**
+ * An evaluator which gives the children of a node a heuristic bias as soon as the node is expanded, so
+ * that its opinion guides the search (progressive bias) instead of being added to the scores afterwards.
+ */
+public interface INodeEvaluator
+{
+	/**
+	 * Adds a heuristic bias to the children of a newly expanded node.
+	 * @param node The node, with its children evaluated if the selection policy evaluates children on expansion.
+	 * @param game The game in the position the node represents.
+	 */
+	void evaluateNode(GameNode node, Game game);
+}
@@ -11,7 +11,7 @@ import pacman.game.Game;
 /**
  * Adds a penalty to a move which eats a power pill if there is still a power pill active.
  */
-public class PowerPillActiveEvaluator implements ITreeEvaluator
+public class PowerPillActiveEvaluator implements ITreeEvaluator, INodeEvaluator
 {
 	private static final int DEFAULT_PENALTY = 300;
 	private int penalty;
@@ -29,6 +29,13 @@ public class PowerPillActiveEvaluator implements ITreeEvaluator
 	}
 	
 	
+	@Override
+	public String toString()
+	{
+		return "PowerPillActiveEvaluator(" + penalty + ")";
+	}
+	
+	
 	@Override
 	public void evaluateTree(MonteCarloPacManSimulator simulator)
 	{
@@ -54,6 +61,24 @@ public class PowerPillActiveEvaluator implements ITreeEvaluator
 	}
 	
 	
+	@Override
+	public void evaluateNode(GameNode node, Game game)
+	{
+		if (isPowerPillActive(game))
+		{
+			GameNode[] children = node.getChildArray();
+			
+			for (int i = 0; i < node.getNumberOfChildren(); i++)
+			{
+				if (children[i].getMoveEatsPowerPill())
+				{
+					children[i].addHeuristicBias(-penalty);
+				}
+			}
+		}
+	}
+	
+	
 	/**
 	 * Returns true if any ghosts are edible; otherwise, returns false.
 	 * @param game
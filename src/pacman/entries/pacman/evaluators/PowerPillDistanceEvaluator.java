@@ -12,7 +12,7 @@ import pacman.game.Game;
  * Implements an evaluator which applies a penalty to moves which eat power pills if there
  * are no ghosts nearby.
  */
-public class PowerPillDistanceEvaluator implements ITreeEvaluator
+public class PowerPillDistanceEvaluator implements ITreeEvaluator, INodeEvaluator
 {
 	private static final double DEFAULT_MINIMUM_DISTANCE = 10;
 	private static final int DEFAULT_PENALTY = 300;
@@ -38,6 +38,12 @@ public class PowerPillDistanceEvaluator implements ITreeEvaluator
 	{
 		this(DEFAULT_MINIMUM_DISTANCE, DEFAULT_PENALTY);
 	}
+	
+	@Override
+	public String toString()
+	{
+		return "PowerPillDistanceEvaluator(" + minimumDistance + ", " + penalty + ")";
+	}
 
 
 	@Override
@@ -67,6 +73,23 @@ public class PowerPillDistanceEvaluator implements ITreeEvaluator
 		}
 	}
 	
+	@Override
+	public void evaluateNode(GameNode node, Game game)
+	{
+		if (getNearestGhostDistance(game) < minimumDistance)
+		{
+			GameNode[] children = node.getChildArray();
+			
+			for (int i = 0; i < node.getNumberOfChildren(); i++)
+			{
+				if (children[i].getMoveEatsPowerPill())
+				{
+					children[i].addHeuristicBias(-penalty);
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Gets the distance of the closest ghost.
 	 * @param game
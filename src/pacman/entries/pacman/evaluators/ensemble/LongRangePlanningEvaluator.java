@@ -24,6 +24,12 @@ public class LongRangePlanningEvaluator implements ITreeEvaluator
 		this(DEFAULT_BONUS);
 	}
 	
+	@Override
+	public String toString()
+	{
+		return "LongRangePlanningEvaluator(" + bonus + ")";
+	}
+	
 	
 	@Override
 	public void evaluateTree(MonteCarloPacManSimulator simulator)
@@ -15,6 +15,13 @@ import pacman.entries.pacman.evaluators.ITreeEvaluator;
  */
 public class PowerPillModificationEvaluator implements ITreeEvaluator
 {
+	@Override
+	public String toString()
+	{
+		return "PowerPillModificationEvaluator";
+	}
+	
+	
 	@Override
 	public void evaluateTree(MonteCarloPacManSimulator simulator)
 	{
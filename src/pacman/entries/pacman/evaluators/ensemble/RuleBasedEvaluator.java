@@ -35,6 +35,12 @@ public class RuleBasedEvaluator implements ITreeEvaluator
 		this(RULE1_DEFAULT_BONUS, RULE2_DEFAULT_BONUS);
 	}
 	
+	@Override
+	public String toString()
+	{
+		return "RuleBasedEvaluator(" + rule1Bonus + ", " + rule2Bonus + ")";
+	}
+	
 	@Override
 	public void evaluateTree(MonteCarloPacManSimulator simulator)
 	{
@@ -0,0 +1,82 @@
+package pacman.entries.pacman.ghostabstractions;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Game;
+
+/**
+ * Describes each ghost by how far it is from Ms Pac-Man, in bands of equal width, and whether it is
+ * edible or still in the lair.  Ghosts which are far away are all in the last band.
+ */
+public class DistanceBandGhostAbstraction implements IGhostAbstraction
+{
+	private static final int DEFAULT_BAND_WIDTH = 10;
+	private static final int DEFAULT_NUMBER_OF_BANDS = 6;
+	
+	//the flags above the band in each ghost's byte
+	private static final int EDIBLE = 0x40;
+	private static final int IN_LAIR = 0x80;
+	
+	private int bandWidth;
+	private int numberOfBands;
+	
+	
+	/**
+	 * Constructor.  Uses the default bands.
+	 */
+	public DistanceBandGhostAbstraction()
+	{
+		this(DEFAULT_BAND_WIDTH, DEFAULT_NUMBER_OF_BANDS);
+	}
+	
+	
+	/**
+	 * Constructor.
+	 * @param bandWidth The width of each band, in maze nodes along the shortest path.
+	 * @param numberOfBands The number of bands, including the last one which has no limit (at most 64).
+	 */
+	public DistanceBandGhostAbstraction(int bandWidth, int numberOfBands)
+	{
+		if (numberOfBands < 1 || numberOfBands > EDIBLE)
+			throw new IllegalArgumentException("The number of bands must be between 1 and " + EDIBLE + ".");
+		
+		this.bandWidth = bandWidth;
+		this.numberOfBands = numberOfBands;
+	}
+	
+	
+	@Override
+	public long getKey(Game game)
+	{
+		int pacmanIndex = game.getPacmanCurrentNodeIndex();
+		long key = 0;
+		
+		for (GHOST ghost: GHOST.values())
+		{
+			int state;
+			
+			if (game.getGhostLairTime(ghost) > 0)
+			{
+				state = IN_LAIR;
+			}
+			else
+			{
+				int distance = game.getShortestPathDistance(pacmanIndex, game.getGhostCurrentNodeIndex(ghost));
+				state = Math.min(distance / bandWidth, numberOfBands - 1);
+				
+				if (game.getGhostEdibleTime(ghost) > 0)
+					state |= EDIBLE;
+			}
+			
+			key = (key << 8) | state;
+		}
+		
+		return key;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "DistanceBandGhostAbstraction(" + bandWidth + ", " + numberOfBands + ")";
+	}
+}
@@ -0,0 +1,32 @@
+package pacman.entries.pacman.ghostabstractions;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Game;
+
+/**
+ * Distinguishes every combination of ghost positions, which is how the tree has always been built.  The
+ * key is the four ghosts' maze indices, sixteen bits each.
+ */
+public class ExactGhostAbstraction implements IGhostAbstraction
+{
+	@Override
+	public long getKey(Game game)
+	{
+		long positions;
+		positions = game.getGhostCurrentNodeIndex(GHOST.BLINKY);
+		positions <<= 16;
+		positions |= game.getGhostCurrentNodeIndex(GHOST.INKY);
+		positions <<= 16;
+		positions |= game.getGhostCurrentNodeIndex(GHOST.PINKY);
+		positions <<= 16;
+		positions |= game.getGhostCurrentNodeIndex(GHOST.SUE);
+		return positions;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "ExactGhostAbstraction";
+	}
+}
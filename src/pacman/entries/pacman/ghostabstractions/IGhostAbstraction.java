@@ -0,0 +1,18 @@
+package pacman.entries.pacman.ghostabstractions;
+
+import pacman.game.Game;
+
+/**
+ * Maps the state of the ghosts in a game to the key of a chance node in the tree when useGhostPositions
+ * is turned on.  Games with the same key share a node, so the coarser the abstraction, the more the
+ * statistics are concentrated, and the less the tree grows.
+ */
+public interface IGhostAbstraction
+{
+	/**
+	 * Gets the key for the state of the ghosts in the specified game.
+	 * @param game
+	 * @return A key which is not negative.
+	 */
+	long getKey(Game game);
+}
@@ -0,0 +1,116 @@
+package pacman.entries.pacman.ghostabstractions;
+
+import java.util.Arrays;
+
+import pacman.game.Constants;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Describes each ghost by the junction it is heading for, which identifies the stretch of corridor it
+ * is on and its direction along it, and whether it is edible or still in the lair.  Ghosts can only
+ * turn back at a junction, unless all the ghosts are reversed, so each ghost's route to that junction
+ * is the same whichever node of the corridor it is at.
+ */
+public class JunctionGhostAbstraction implements IGhostAbstraction
+{
+	private static final int EDIBLE = 0x100;
+	private static final int IN_LAIR = 0x200;
+	private static final int UNKNOWN = -1;
+	
+	//the number of the next junction for each node and direction (node * 4 + move), worked out as it's
+	//needed; the tables can be shared between threads, since any two threads will work out the same value
+	private final int[][] nextJunctions = new int[Constants.NUM_MAZES][];
+	
+	
+	@Override
+	public long getKey(Game game)
+	{
+		int[] table = getTable(game);
+		long key = 0;
+		
+		for (GHOST ghost: GHOST.values())
+		{
+			int state;
+			
+			if (game.getGhostLairTime(ghost) > 0)
+			{
+				state = IN_LAIR;
+			}
+			else
+			{
+				state = getNextJunction(game, table, game.getGhostCurrentNodeIndex(ghost), game.getGhostLastMoveMade(ghost));
+				
+				if (game.getGhostEdibleTime(ghost) > 0)
+					state |= EDIBLE;
+			}
+			
+			key = (key << 10) | state;
+		}
+		
+		return key;
+	}
+	
+	
+	private int[] getTable(Game game)
+	{
+		int[] table = nextJunctions[game.getMazeIndex()];
+		
+		if (table == null)
+		{
+			table = new int[game.getNumberOfNodes() * 4];
+			Arrays.fill(table, UNKNOWN);
+			nextJunctions[game.getMazeIndex()] = table;
+		}
+		
+		return table;
+	}
+	
+	
+	/**
+	 * Gets the position in the maze's list of junctions of the junction a ghost will reach next.
+	 * @param game
+	 * @param table The table of next junctions for the current maze.
+	 * @param nodeIndex The ghost's position.
+	 * @param move The last move the ghost made.
+	 * @return
+	 */
+	private int getNextJunction(Game game, int[] table, int nodeIndex, MOVE move)
+	{
+		//a ghost which has just left the lair hasn't made a move yet
+		int entry = move == MOVE.NEUTRAL ? UNKNOWN : nodeIndex * 4 + move.ordinal();
+		
+		if (entry != UNKNOWN && table[entry] != UNKNOWN)
+			return table[entry];
+		
+		int node = nodeIndex;
+		MOVE direction = move;
+		
+		//follow the corridor; ghosts can't turn back, so there's only one way to go
+		while (!game.isJunction(node))
+		{
+			MOVE[] moves = game.getPossibleMoves(node, direction);
+			
+			if (moves.length == 0)
+				break;
+			
+			direction = moves[0];
+			node = game.getNeighbour(node, direction);
+		}
+		
+		int junction = Math.max(0, Arrays.binarySearch(game.getJunctionIndices(), node));
+		
+		if (entry != UNKNOWN)
+			table[entry] = junction;
+		
+		return junction;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "JunctionGhostAbstraction";
+	}
+}
@@ -0,0 +1,259 @@
+package pacman.entries.pacman.openingbook;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * The moves to make at the first decisions of each maze, worked out in advance by OpeningBookBuilder.  The
+ * book is memory-mapped, so it's shared by every agent using it and costs next to nothing to open.
+ *
+ * Positions are looked up by a key which covers everything that affects how the game plays out from
+ * there, but not the score, the total time or the number of lives, so that the start of a maze matches
+ * whatever happened on the mazes before it.  A game only finds its positions in the book for as long as it
+ * follows the lines the book was built along.
+ *
+ * The file holds MAGIC, VERSION, the number of positions and a description of the parameters the book was
+ * built with, then the positions sorted by key.  Each position is ENTRY_SIZE bytes: the key, the ordinal
+ * of the move to make, and then the visits and mean score of each of the four moves.
+ */
+public class OpeningBook
+{
+	public static final int MAGIC = 0x504d4f42;
+	public static final int VERSION = 1;
+	
+	/**
+	 * The moves stored for each position, in order.
+	 */
+	public static final MOVE[] MOVES = { MOVE.UP, MOVE.RIGHT, MOVE.DOWN, MOVE.LEFT };
+	
+	static final int ENTRY_SIZE = 8 + 1 + MOVES.length * 8;
+	
+	private static final GHOST[] GHOSTS = GHOST.values();
+	
+	//books opened by path, so that all the agents in a batch share one mapping
+	private static final Map<String, OpeningBook> openBooks = new HashMap<String, OpeningBook>();
+	
+	private final ByteBuffer entries;
+	private final int numberOfEntries;
+	private final String description;
+	
+	
+	private OpeningBook(ByteBuffer entries, int numberOfEntries, String description)
+	{
+		this.entries = entries;
+		this.numberOfEntries = numberOfEntries;
+		this.description = description;
+	}
+	
+	
+	/**
+	 * Maps a book into memory.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static OpeningBook open(File file) throws IOException
+	{
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		
+		try
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not an opening book.");
+			
+			int version = in.readShort();
+			
+			if (version != VERSION)
+				throw new IOException("Unsupported opening book version: " + version);
+			
+			int numberOfEntries = in.readInt();
+			String description = in.readUTF();
+			long size = (long)numberOfEntries * ENTRY_SIZE;
+			
+			if (in.length() - in.getFilePointer() < size)
+				throw new IOException("The opening book has been cut short.");
+			
+			//the mapping stays valid after the file is closed
+			ByteBuffer entries = in.getChannel().map(FileChannel.MapMode.READ_ONLY, in.getFilePointer(), size);
+			return new OpeningBook(entries, numberOfEntries, description);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	
+	/**
+	 * Gets a book, opening it if no agent has opened it yet.
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static OpeningBook get(String path) throws IOException
+	{
+		synchronized (openBooks)
+		{
+			OpeningBook book = openBooks.get(path);
+			
+			if (book == null)
+			{
+				book = open(new File(path));
+				openBooks.put(path, book);
+			}
+			
+			return book;
+		}
+	}
+	
+	
+	/**
+	 * Gets the key a position is stored under.
+	 * @param game
+	 * @return
+	 */
+	public static long getKey(Game game)
+	{
+		//64-bit FNV-1a over the parts of the state which affect the rest of the level
+		long hash = 0xcbf29ce484222325L;
+		hash = addToHash(hash, game.getMazeIndex());
+		hash = addToHash(hash, game.getCurrentLevel());
+		hash = addToHash(hash, game.getCurrentLevelTime());
+		hash = addToHash(hash, game.getGhostCurrentEdibleScore());
+		hash = addToHash(hash, game.getPacmanCurrentNodeIndex());
+		hash = addToHash(hash, game.getPacmanLastMoveMade().ordinal());
+		
+		for (GHOST ghost: GHOSTS)
+		{
+			hash = addToHash(hash, game.getGhostCurrentNodeIndex(ghost));
+			hash = addToHash(hash, game.getGhostLastMoveMade(ghost).ordinal());
+			hash = addToHash(hash, game.getGhostEdibleTime(ghost));
+			hash = addToHash(hash, game.getGhostLairTime(ghost));
+		}
+		
+		int bits = 0;
+		
+		for (int i = 0; i < game.getNumberOfPills(); i++)
+		{
+			if (game.isPillStillAvailable(i))
+				bits |= 1 << (i & 31);
+			
+			if ((i & 31) == 31)
+			{
+				hash = addToHash(hash, bits);
+				bits = 0;
+			}
+		}
+		
+		hash = addToHash(hash, bits);
+		bits = 0;
+		
+		for (int i = 0; i < game.getNumberOfPowerPills(); i++)
+		{
+			if (game.isPowerPillStillAvailable(i))
+				bits |= 1 << i;
+		}
+		
+		return addToHash(hash, bits);
+	}
+	
+	
+	/**
+	 * Gets the move the book gives for a position.
+	 * @param game
+	 * @return The move, or null if the position isn't in the book.
+	 */
+	public MOVE getMove(Game game)
+	{
+		int entry = find(getKey(game));
+		return entry < 0 ? null : MOVE.values()[entries.get(entry * ENTRY_SIZE + 8)];
+	}
+	
+	
+	/**
+	 * Finds a position in the book.
+	 * @param key The position's key, from getKey().
+	 * @return The index of the position, or -1 if it isn't in the book.
+	 */
+	public int find(long key)
+	{
+		int low = 0;
+		int high = numberOfEntries - 1;
+		
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			long middleKey = entries.getLong(middle * ENTRY_SIZE);
+			
+			if (middleKey < key)
+				low = middle + 1;
+			else if (middleKey > key)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		
+		return -1;
+	}
+	
+	
+	/**
+	 * Gets the number of times the search which built the book visited a move.
+	 * @param entry The index of a position, from find().
+	 * @param move One of MOVES.
+	 * @return
+	 */
+	public int getVisits(int entry, MOVE move)
+	{
+		return entries.getInt(entry * ENTRY_SIZE + 9 + move.ordinal() * 8);
+	}
+	
+	
+	/**
+	 * Gets the mean score the search which built the book found for a move.
+	 * @param entry The index of a position, from find().
+	 * @param move One of MOVES.
+	 * @return
+	 */
+	public float getMeanScore(int entry, MOVE move)
+	{
+		return entries.getFloat(entry * ENTRY_SIZE + 13 + move.ordinal() * 8);
+	}
+	
+	
+	public int getNumberOfEntries()
+	{
+		return numberOfEntries;
+	}
+	
+	
+	/**
+	 * Gets the description of the parameters the book was built with.
+	 * @return
+	 */
+	public String getDescription()
+	{
+		return description;
+	}
+	
+	
+	private static long addToHash(long hash, int value)
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			hash ^= (value >>> (i * 8)) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		
+		return hash;
+	}
+}
@@ -0,0 +1,347 @@
+package pacman.entries.pacman.openingbook;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+
+import pacman.MultithreadedWorker;
+import pacman.entries.pacman.GameNode;
+import pacman.entries.pacman.MonteCarloPacManParameters;
+import pacman.entries.pacman.MonteCarloPacManSimulator;
+import pacman.game.Constants;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Builds an opening book by playing the first decisions of each maze against the opponent, searching from
+ * each decision much more deeply than there's time for in a game.  Each search is split between a number of
+ * trees searched at the same time on different threads, whose statistics for the moves at the root are
+ * added together.  Each maze is started the way it's first reached in a game, on the level it first comes
+ * up on.
+ *
+ * The decisions are found the same way MyPacMan finds them with discardTreeOnDecision turned on, and the
+ * book is only good for agents with the parameters it was built with.  The additional evaluators aren't
+ * run, so the moves are chosen on the search's scores alone.
+ */
+public class OpeningBookBuilder
+{
+	private final MonteCarloPacManParameters parameters;
+	private final int simulations;
+	private final int numberOfThreads;
+	private final Map<Long, Entry> entries;
+	
+	
+	/**
+	 * Constructor.
+	 * @param parameters The parameters of the agent the book is for.
+	 * @param simulations The number of simulations to search each decision with.
+	 * @param numberOfThreads The number of trees each search is split between.
+	 */
+	public OpeningBookBuilder(MonteCarloPacManParameters parameters, int simulations, int numberOfThreads)
+	{
+		this.parameters = parameters;
+		this.simulations = simulations;
+		this.numberOfThreads = numberOfThreads;
+		this.entries = new TreeMap<Long, Entry>();
+	}
+	
+	
+	public static void main(String[] args)
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: java pacman.entries.pacman.openingbook.OpeningBookBuilder <book> [decisions per maze] [simulations] [threads]");
+			return;
+		}
+		
+		int decisions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int simulations = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		OpeningBookBuilder builder = new OpeningBookBuilder(new MonteCarloPacManParameters(), simulations, threads);
+		
+		try
+		{
+			//each maze is first played on the level with its own number
+			for (int level = 0; level < Constants.NUM_MAZES; level++)
+			{
+				builder.build(level, decisions);
+			}
+			
+			builder.write(new File(args[0]));
+			System.out.printf("Wrote %d positions to %s\n", builder.getNumberOfEntries(), args[0]);
+		}
+		catch (IOException ex)
+		{
+			System.out.println("Could not write " + args[0] + ": " + ex.getMessage());
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
+	/**
+	 * Plays the first decisions of a maze, searching from each and adding it to the book.
+	 * @param level The level to start on; the maze is the level modulo Constants.NUM_MAZES.
+	 * @param decisions The number of decisions to play.
+	 * @throws InterruptedException
+	 */
+	public void build(int level, int decisions) throws InterruptedException
+	{
+		Game game = createLevel(level);
+		MonteCarloPacManSimulator tracker = null;
+		int lastEdibleScore = game.getGhostCurrentEdibleScore();
+		int decision = 0;
+		
+		while (decision < decisions && !game.gameOver() && game.getCurrentLevel() == level)
+		{
+			MOVE move = MOVE.NEUTRAL;
+			boolean atDecisionPoint;
+			
+			//the first move is a decision too, as it is for MyPacMan
+			if (tracker == null)
+			{
+				atDecisionPoint = true;
+			}
+			else
+			{
+				tracker.setGameState(game);
+				atDecisionPoint = tracker.isAtNode(lastEdibleScore);
+			}
+			
+			if (atDecisionPoint)
+			{
+				Entry entry = search(game);
+				move = entry.getBestMove();
+				decision++;
+				
+				//if none of the trees got as far as expanding the root, there's nothing worth keeping
+				if (move != MOVE.NEUTRAL)
+					entries.put(OpeningBook.getKey(game), entry);
+				
+				System.out.printf("maze %d, decision %d, tick %d: %s %s\n", game.getMazeIndex(), decision,
+					game.getCurrentLevelTime(), move, entry);
+				
+				tracker = new MonteCarloPacManSimulator(game.copy(), parameters);
+			}
+			
+			lastEdibleScore = game.getGhostCurrentEdibleScore();
+			game.advanceGame(move, parameters.opponent.getMove(game.copy(), -1));
+		}
+	}
+	
+	
+	public int getNumberOfEntries()
+	{
+		return entries.size();
+	}
+	
+	
+	/**
+	 * Writes the book.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		
+		try
+		{
+			out.writeInt(OpeningBook.MAGIC);
+			out.writeShort(OpeningBook.VERSION);
+			out.writeInt(entries.size());
+			out.writeUTF(parameters.toString());
+			
+			//the tree map keeps the keys in the signed order that OpeningBook.find() expects
+			for (Map.Entry<Long, Entry> entry: entries.entrySet())
+			{
+				out.writeLong(entry.getKey());
+				entry.getValue().write(out);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	
+	/**
+	 * Searches from a decision, splitting the simulations between a tree for each thread.
+	 * @param game
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private Entry search(final Game game) throws InterruptedException
+	{
+		final Entry entry = new Entry();
+		MultithreadedWorker worker = new MultithreadedWorker(numberOfThreads);
+		
+		try
+		{
+			for (int t = 0; t < numberOfThreads; t++)
+			{
+				final int count = simulations / numberOfThreads + (t < simulations % numberOfThreads ? 1 : 0);
+				
+				worker.queue(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						MonteCarloPacManSimulator simulator = new MonteCarloPacManSimulator(game.copy(), copyParameters());
+						
+						int run = 0;
+						
+						while (run < count)
+						{
+							run += simulator.runBatch();
+						}
+						
+						entry.add(simulator);
+					}
+				});
+			}
+			
+			worker.waitForCompletion();
+		}
+		finally
+		{
+			worker.shutdown();
+		}
+		
+		return entry;
+	}
+	
+	
+	/**
+	 * Creates a game at the start of a level, by going through the level resets the game does when a
+	 * level is cleared.
+	 * @param level The level; the maze is the level modulo Constants.NUM_MAZES.
+	 * @return
+	 */
+	public static Game createLevel(int level)
+	{
+		Game game = new Game(0);
+		
+		try
+		{
+			Method newLevelReset = Game.class.getDeclaredMethod("_newLevelReset");
+			newLevelReset.setAccessible(true);
+			
+			for (int i = 0; i < level; i++)
+			{
+				newLevelReset.invoke(game);
+			}
+		}
+		catch (NoSuchMethodException ex)
+		{
+			throw new IllegalStateException("This version of the game can't be started on a later level.", ex);
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException("Cannot start the game on a later level.", ex);
+		}
+		catch (InvocationTargetException ex)
+		{
+			throw new IllegalStateException("Cannot start the game on a later level.", ex);
+		}
+		
+		return game;
+	}
+	
+	
+	private MonteCarloPacManParameters copyParameters()
+	{
+		try
+		{
+			return parameters.copy();
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+		catch (InstantiationException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+	}
+	
+	
+	/**
+	 * The statistics for the moves at a decision, added up over the trees searched.
+	 */
+	private static class Entry
+	{
+		private final int[] visits = new int[OpeningBook.MOVES.length];
+		private final double[] totals = new double[OpeningBook.MOVES.length];
+		
+		public synchronized void add(MonteCarloPacManSimulator simulator)
+		{
+			for (GameNode node: simulator.getPacManChildren())
+			{
+				int move = node.getMove().ordinal();
+				visits[move] += node.getNumberOfVisits();
+				totals[move] += node.getAverageScore() * node.getNumberOfVisits();
+			}
+		}
+		
+		public synchronized MOVE getBestMove()
+		{
+			MOVE best = null;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			
+			for (MOVE move: OpeningBook.MOVES)
+			{
+				if (visits[move.ordinal()] > 0 && getMeanScore(move) > bestScore)
+				{
+					bestScore = getMeanScore(move);
+					best = move;
+				}
+			}
+			
+			return best == null ? MOVE.NEUTRAL : best;
+		}
+		
+		public synchronized void write(DataOutputStream out) throws IOException
+		{
+			out.writeByte(getBestMove().ordinal());
+			
+			for (MOVE move: OpeningBook.MOVES)
+			{
+				out.writeInt(visits[move.ordinal()]);
+				out.writeFloat((float)getMeanScore(move));
+			}
+		}
+		
+		@Override
+		public synchronized String toString()
+		{
+			StringBuilder description = new StringBuilder();
+			
+			for (MOVE move: OpeningBook.MOVES)
+			{
+				if (visits[move.ordinal()] > 0)
+				{
+					description.append(description.length() == 0 ? "" : " ");
+					description.append(String.format("%s:%d/%.0f", move, visits[move.ordinal()], getMeanScore(move)));
+				}
+			}
+			
+			return description.toString();
+		}
+		
+		private double getMeanScore(MOVE move)
+		{
+			int count = visits[move.ordinal()];
+			return count == 0 ? 0 : totals[move.ordinal()] / count;
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package pacman.entries.pacman.selectionpolicies;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
 import pacman.entries.pacman.GameNode;
@@ -12,7 +10,7 @@ import pacman.entries.pacman.GameNode;
 public class EpsilonGreedySelectionPolicy implements ISelectionPolicy
 {
 	private static final double DEFAULT_EPSILON = 0.05;
-	private static final Random random = new Random();
+	private Random random = new Random();
 	private double epsilon;
 	
 	/**
@@ -36,7 +34,8 @@ public class EpsilonGreedySelectionPolicy implements ISelectionPolicy
 	@Override
 	public GameNode selectChild(GameNode node)
 	{
-		List<GameNode> children = new ArrayList<GameNode>(node.getChildren());
+		GameNode[] children = node.getChildArray();
+		int numberOfChildren = node.getNumberOfChildren();
 		
 		if (random.nextDouble() > epsilon)
 		{
@@ -44,14 +43,14 @@ public class EpsilonGreedySelectionPolicy implements ISelectionPolicy
 			GameNode selectedNode = null;
 			double currentAverage;
 			
-			for (GameNode child: children)
+			for (int i = 0; i < numberOfChildren; i++)
 			{
-				currentAverage = child.getAverageScore();
+				currentAverage = children[i].getAverageScore();
 				
 				if (currentAverage > max)
 				{
 					max = currentAverage;
-					selectedNode = child;
+					selectedNode = children[i];
 				}
 			}
 			
@@ -59,7 +58,7 @@ public class EpsilonGreedySelectionPolicy implements ISelectionPolicy
 		}
 		else
 		{
-			return children.get(random.nextInt(children.size()));
+			return children[random.nextInt(numberOfChildren)];
 		}
 	}
 
@@ -69,4 +68,18 @@ public class EpsilonGreedySelectionPolicy implements ISelectionPolicy
 	{
 		return true;
 	}
+	
+	
+	@Override
+	public boolean getRequiresAmafStatistics()
+	{
+		return false;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "EpsilonGreedySelectionPolicy(" + epsilon + ")";
+	}
 }
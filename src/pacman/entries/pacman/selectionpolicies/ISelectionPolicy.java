@@ -19,4 +19,11 @@ public interface ISelectionPolicy
 	 * @return True if evaluation is required on expansion; otherwise, false.
 	 */
 	boolean getEvaluateAllChildrenOnExpansion();
+	
+	/**
+	 * Gets whether or not this policy uses the All-Moves-As-First statistics of the nodes, which are only
+	 * gathered during the simulations if they are needed.
+	 * @return
+	 */
+	boolean getRequiresAmafStatistics();
 }
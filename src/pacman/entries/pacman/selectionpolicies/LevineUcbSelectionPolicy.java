@@ -30,9 +30,22 @@ public class LevineUcbSelectionPolicy extends UcbSelectionPolicyBase
 
 
 	@Override
-	public double getUcbValue(GameNode node)
+	protected double getParentTerm(int parentVisits)
 	{
-		return node.getAverageScore() + balanceParameter * 
-			Math.sqrt(Math.log(node.getParent().getNumberOfVisits()) / node.getNumberOfVisits());
+		return balanceParameter * Math.sqrt(UcbMath.log(parentVisits));
+	}
+	
+	
+	@Override
+	public double getUcbValue(GameNode node, double parentTerm)
+	{
+		return node.getAverageScore() + parentTerm * UcbMath.inverseSqrt(node.getNumberOfVisits());
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "LevineUcbSelectionPolicy(" + balanceParameter + ")";
 	}
 }
@@ -10,14 +10,22 @@ import pacman.entries.pacman.GameNode;
 public class MctsAiUcbSelectionPolicy extends UcbSelectionPolicyBase
 {
 	private static final double EPSILON = 1e-6;
-	private static final Random random = new Random();
+	private Random random = new Random();
 	
 	@Override
-	public double getUcbValue(GameNode node)
+	protected double getParentTerm(int parentVisits)
+	{
+		return UcbMath.log(parentVisits + 1);
+	}
+	
+	@Override
+	public double getUcbValue(GameNode node, double parentTerm)
 	{
 		//includes a small random number so that tie-breaking is evenly distributed on unexplored nodes
-		return (double)node.getTotalScore() / (node.getNumberOfVisits() + EPSILON) 
-			+ Math.sqrt(Math.log(node.getParent().getNumberOfVisits() + 1) / (node.getNumberOfVisits() + EPSILON))
+		double visits = node.getNumberOfVisits() + EPSILON;
+		
+		return (double)node.getTotalScore() / visits 
+			+ Math.sqrt(parentTerm / visits)
 			+ random.nextDouble() * EPSILON;
 	}
 
@@ -0,0 +1,76 @@
+package pacman.entries.pacman.selectionpolicies;
+
+import pacman.entries.pacman.GameNode;
+
+/**
+ * Provides UCB calculation with Rapid Action Value Estimation, as described in "Combining Online and
+ * Offline Knowledge in UCT" (Gelly & Silver, 2007).  The average score of a node is blended with its
+ * All-Moves-As-First score, which is gathered from every simulation that plays the node's move from
+ * the same maze position, with the weight of the AMAF score falling as the node is visited.
+ */
+public class RaveSelectionPolicy extends UcbSelectionPolicyBase
+{
+	private static final double DEFAULT_BALANCE = 4000;
+	private static final double DEFAULT_EQUIVALENCE = 100;
+	private double balanceParameter;
+	private double equivalenceParameter;
+	
+	/**
+	 * Constructor.  Uses the default parameters.
+	 */
+	public RaveSelectionPolicy()
+	{
+		this(DEFAULT_BALANCE, DEFAULT_EQUIVALENCE);
+	}
+	
+	
+	/**
+	 * Constructor.
+	 * @param balanceParameter The balance parameter (balance between exploration and exploitation) to use.
+	 * @param equivalenceParameter The number of visits at which the AMAF score and the average score have
+	 * equal weight; the higher it is, the longer the AMAF score is trusted.
+	 */
+	public RaveSelectionPolicy(double balanceParameter, double equivalenceParameter)
+	{
+		this.balanceParameter = balanceParameter;
+		this.equivalenceParameter = equivalenceParameter;
+	}
+	
+	
+	@Override
+	protected double getParentTerm(int parentVisits)
+	{
+		return balanceParameter * Math.sqrt(UcbMath.log(parentVisits));
+	}
+	
+	
+	@Override
+	public double getUcbValue(GameNode node, double parentTerm)
+	{
+		int visits = node.getNumberOfVisits();
+		double score = node.getAverageScore();
+		
+		if (node.getAmafVisits() > 0)
+		{
+			//the "hand-selected schedule" from the paper
+			double beta = Math.sqrt(equivalenceParameter / (3 * visits + equivalenceParameter));
+			score = (1 - beta) * score + beta * node.getAmafAverageScore();
+		}
+		
+		return score + parentTerm * UcbMath.inverseSqrt(visits);
+	}
+	
+	
+	@Override
+	public boolean getRequiresAmafStatistics()
+	{
+		return true;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "RaveSelectionPolicy(" + balanceParameter + ", " + equivalenceParameter + ")";
+	}
+}
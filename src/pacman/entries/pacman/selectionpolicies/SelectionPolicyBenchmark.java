@@ -0,0 +1,113 @@
+package pacman.entries.pacman.selectionpolicies;
+
+import java.util.EnumMap;
+import java.util.Random;
+
+import pacman.entries.pacman.GameNode;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Measures the time each selection policy takes to choose a child, over a set of nodes at a junction
+ * with randomly distributed visits and scores, much as they are part way through a search.
+ */
+public class SelectionPolicyBenchmark
+{
+	private static final int NODES = 1024;
+	
+	
+	public static void main(String[] args)
+	{
+		int selections = args.length > 0 ? Integer.parseInt(args[0]) : 20000000;
+		
+		ISelectionPolicy[] policies = new ISelectionPolicy[] {
+			new LevineUcbSelectionPolicy(),
+			new Ucb1SelectionPolicy(),
+			new Ucb1TunedSelectionPolicy(),
+			new MctsAiUcbSelectionPolicy(),
+			new RaveSelectionPolicy(),
+			new EpsilonGreedySelectionPolicy()
+		};
+		
+		GameNode[] nodes = createNodes(new Random(0));
+		
+		System.out.println("#policy\tselections\tnanosecondsPerSelection");
+		
+		for (ISelectionPolicy policy: policies)
+		{
+			//once to warm up, once to measure
+			run(policy, nodes, selections);
+			long time = run(policy, nodes, selections);
+			
+			System.out.printf("%s\t%d\t%.2f\n", policy, selections, (double)time / selections);
+		}
+	}
+	
+	
+	/**
+	 * Selects from the nodes in turn, and returns the time taken in nanoseconds.
+	 */
+	private static long run(ISelectionPolicy policy, GameNode[] nodes, int selections)
+	{
+		int checksum = 0;
+		long startTime = System.nanoTime();
+		
+		for (int i = 0; i < selections; i++)
+		{
+			checksum += policy.selectChild(nodes[i & (NODES - 1)]).getNumberOfVisits();
+		}
+		
+		long time = System.nanoTime() - startTime;
+		
+		//keeps the selections from being optimised away
+		if (checksum == 42)
+			System.out.print("");
+		
+		return time;
+	}
+	
+	
+	/**
+	 * Creates nodes expanded at the first junction Ms Pac-Man reaches, with every child visited at least
+	 * once, as they are after expansion, and visit counts spread over a few orders of magnitude.
+	 */
+	private static GameNode[] createNodes(Random random)
+	{
+		Game game = new Game(0);
+		EnumMap<GHOST, MOVE> ghostMoves = new EnumMap<GHOST, MOVE>(GHOST.class);
+		
+		for (GHOST ghost: GHOST.values())
+		{
+			ghostMoves.put(ghost, MOVE.NEUTRAL);
+		}
+		
+		while (game.getPossibleMoves(game.getPacmanCurrentNodeIndex()).length < 3)
+		{
+			game.advanceGame(game.getPossibleMoves(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade())[0], ghostMoves);
+		}
+		
+		GameNode[] nodes = new GameNode[NODES];
+		
+		for (int i = 0; i < NODES; i++)
+		{
+			GameNode parent = new GameNode();
+			parent.expand(game);
+			int visits = parent.getNumberOfChildren() + (int)Math.exp(random.nextDouble() * Math.log(20000));
+			
+			for (int v = 0; v < visits; v++)
+			{
+				GameNode[] children = parent.getChildArray();
+				GameNode child = children[v < children.length ? v : random.nextInt(parent.getNumberOfChildren())];
+				int score = 1000 + random.nextInt(3000);
+				
+				child.updateScore(score);
+				parent.updateScore(score);
+			}
+			
+			nodes[i] = parent;
+		}
+		
+		return nodes;
+	}
+}
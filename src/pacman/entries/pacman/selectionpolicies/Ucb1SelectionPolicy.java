@@ -8,8 +8,14 @@ import pacman.entries.pacman.GameNode;
 public class Ucb1SelectionPolicy extends UcbSelectionPolicyBase
 {
 	@Override
-	public double getUcbValue(GameNode node)
+	protected double getParentTerm(int parentVisits)
 	{
-		return node.getAverageScore() + Math.sqrt(2 * Math.log(node.getParent().getNumberOfVisits()) / node.getNumberOfVisits());
+		return Math.sqrt(2 * UcbMath.log(parentVisits));
+	}
+	
+	@Override
+	public double getUcbValue(GameNode node, double parentTerm)
+	{
+		return node.getAverageScore() + parentTerm * UcbMath.inverseSqrt(node.getNumberOfVisits());
 	}
 }
@@ -9,15 +9,17 @@ import pacman.entries.pacman.GameNode;
 public class Ucb1TunedSelectionPolicy extends UcbSelectionPolicyBase
 {
 	@Override
-	public double getUcbValue(GameNode node)
+	public double getUcbValue(GameNode node, double parentTerm)
 	{
+		//parentTerm is the log of the parent's visits, shared by both halves of the formula
+		double logOverVisits = parentTerm / node.getNumberOfVisits();
+		
 		return node.getAverageScore() * 
-			Math.sqrt(Math.log(node.getParent().getNumberOfVisits()) / node.getNumberOfVisits() 
-				* Math.min(0.25, getVarianceUcb(node)));
+			Math.sqrt(logOverVisits * Math.min(0.25, node.getVariance() + Math.sqrt(2 * logOverVisits)));
 	}
 	
 	public double getVarianceUcb(GameNode node)
 	{
-		return node.getVariance() + Math.sqrt(2 * Math.log(node.getParent().getNumberOfVisits()) / node.getNumberOfVisits());
+		return node.getVariance() + Math.sqrt(2 * UcbMath.log(node.getParent().getNumberOfVisits()) / node.getNumberOfVisits());
 	}
 }
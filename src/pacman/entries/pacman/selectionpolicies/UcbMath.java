@@ -0,0 +1,49 @@
+package pacman.entries.pacman.selectionpolicies;
+
+/**
+ * Logarithms and square roots of visit counts for the UCB formulas.  Visit counts are small for most of
+ * the nodes in the tree, so the values for counts below TABLE_SIZE are looked up rather than calculated.
+ */
+public final class UcbMath
+{
+	public static final int TABLE_SIZE = 4096;
+	
+	private static final double[] LOGS = new double[TABLE_SIZE];
+	private static final double[] INVERSE_SQUARE_ROOTS = new double[TABLE_SIZE];
+	
+	static
+	{
+		for (int i = 0; i < TABLE_SIZE; i++)
+		{
+			LOGS[i] = Math.log(i);
+			INVERSE_SQUARE_ROOTS[i] = 1 / Math.sqrt(i);
+		}
+	}
+	
+	
+	private UcbMath()
+	{
+	}
+	
+	
+	/**
+	 * Gets the natural logarithm of a visit count.
+	 * @param n
+	 * @return
+	 */
+	public static double log(int n)
+	{
+		return n >= 0 && n < TABLE_SIZE ? LOGS[n] : Math.log(n);
+	}
+	
+	
+	/**
+	 * Gets one over the square root of a visit count, which is infinite for a count of zero.
+	 * @param n
+	 * @return
+	 */
+	public static double inverseSqrt(int n)
+	{
+		return n >= 0 && n < TABLE_SIZE ? INVERSE_SQUARE_ROOTS[n] : 1 / Math.sqrt(n);
+	}
+}
@@ -1,7 +1,5 @@
 package pacman.entries.pacman.selectionpolicies;
 
-import java.util.Collection;
-
 import pacman.entries.pacman.GameNode;
 
 public abstract class UcbSelectionPolicyBase implements ISelectionPolicy
@@ -10,7 +8,7 @@ public abstract class UcbSelectionPolicyBase implements ISelectionPolicy
 	@Override
 	public GameNode selectChild(GameNode node)
 	{
-		Collection<GameNode> children = node.getChildren();
+		GameNode[] children = node.getChildArray();
 		GameNode selectedChild = null;
 		double max = Double.NEGATIVE_INFINITY;
 		double currentUcb;
@@ -18,14 +16,20 @@ public abstract class UcbSelectionPolicyBase implements ISelectionPolicy
 		if (children == null)
 			throw new IllegalStateException("Cannot call selectChild on a leaf node.");
 		
-		for (GameNode child: children)
+		//the parts of the formula which only depend on the parent are worked out once for all the children
+		double parentTerm = getParentTerm(node.getNumberOfVisits());
+		int numberOfChildren = node.getNumberOfChildren();
+		
+		for (int i = 0; i < numberOfChildren; i++)
 		{
-			currentUcb = getUcbValue(child);
+			GameNode child = children[i];
+			//progressive bias: the heuristic's opinion counts for less as the statistics build up
+			currentUcb = getUcbValue(child, parentTerm) + child.getHeuristicBias() / (child.getNumberOfVisits() + 1);
 			
 			if (Double.isNaN(currentUcb))
 			{
-				throw new IllegalStateException(String.format("UCB is not a number. Parent number of visits: %d, Number of visits: %d, Score: %.2f, Variance: %.2f, Variance UCB: %.2f", 
-						node.getNumberOfVisits(), child.getNumberOfVisits(), child.getAverageScore(), child.getVariance(), ((Ucb1TunedSelectionPolicy)this).getVarianceUcb(child)));
+				throw new IllegalStateException(String.format("UCB is not a number. Policy: %s, Parent number of visits: %d, Number of visits: %d, Score: %.2f, Variance: %.2f", 
+						this, node.getNumberOfVisits(), child.getNumberOfVisits(), child.getAverageScore(), child.getVariance()));
 			}
 			else if (currentUcb > max)
 			{
@@ -43,5 +47,44 @@ public abstract class UcbSelectionPolicyBase implements ISelectionPolicy
 		return true;
 	}
 	
-	public abstract double getUcbValue(GameNode node);
+	@Override
+	public boolean getRequiresAmafStatistics()
+	{
+		return false;
+	}
+	
+	/**
+	 * Gets the UCB value of a node.
+	 * @param node
+	 * @return
+	 */
+	public double getUcbValue(GameNode node)
+	{
+		return getUcbValue(node, getParentTerm(node.getParent().getNumberOfVisits()));
+	}
+	
+	/**
+	 * Gets the part of the UCB formula which only depends on the parent node, which is the logarithm of the
+	 * parent's number of visits unless overridden.
+	 * @param parentVisits The number of times the parent has been visited.
+	 * @return
+	 */
+	protected double getParentTerm(int parentVisits)
+	{
+		return UcbMath.log(parentVisits);
+	}
+	
+	/**
+	 * Gets the UCB value of a node.
+	 * @param node
+	 * @param parentTerm The value returned by getParentTerm() for the node's parent.
+	 * @return
+	 */
+	public abstract double getUcbValue(GameNode node, double parentTerm);
+	
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName();
+	}
 }
@@ -0,0 +1,81 @@
+package pacman.entries.pacman.stoppingrules;
+
+import pacman.entries.pacman.GameNode;
+
+/**
+ * Stops when the lower confidence bound of the move with the best score is above the upper bound of every
+ * other move, so that more simulations are unlikely to change which is best.  The bounds are the average
+ * score plus or minus a number of standard errors.  How many simulations are left doesn't matter.
+ */
+public class ConfidenceBoundStoppingRule implements IStoppingRule
+{
+	private static final double DEFAULT_STANDARD_ERRORS = 2;
+	private static final int DEFAULT_MINIMUM_VISITS = 30;
+	
+	private double standardErrors;
+	private int minimumVisits;
+	
+	
+	/**
+	 * Constructor.  Uses bounds of two standard errors, once every move has had 30 visits.
+	 */
+	public ConfidenceBoundStoppingRule()
+	{
+		this(DEFAULT_STANDARD_ERRORS, DEFAULT_MINIMUM_VISITS);
+	}
+	
+	
+	/**
+	 * Constructor.
+	 * @param standardErrors The number of standard errors either side of the average score the bounds are.
+	 * @param minimumVisits The visits every move must have had before its variance is trusted.
+	 */
+	public ConfidenceBoundStoppingRule(double standardErrors, int minimumVisits)
+	{
+		this.standardErrors = standardErrors;
+		this.minimumVisits = Math.max(2, minimumVisits);
+	}
+	
+	
+	@Override
+	public boolean canStop(GameNode decision, long remainingSimulations)
+	{
+		GameNode[] children = decision.getChildArray();
+		GameNode best = null;
+		
+		for (int i = 0; i < decision.getNumberOfChildren(); i++)
+		{
+			if (children[i].getNumberOfVisits() < minimumVisits)
+				return false;
+			
+			if (best == null || children[i].getAverageScore() > best.getAverageScore())
+				best = children[i];
+		}
+		
+		if (best == null || decision.getNumberOfChildren() < 2)
+			return false;
+		
+		double lowerBound = best.getAverageScore() - getMargin(best);
+		
+		for (int i = 0; i < decision.getNumberOfChildren(); i++)
+		{
+			if (children[i] != best && children[i].getAverageScore() + getMargin(children[i]) >= lowerBound)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "ConfidenceBoundStoppingRule(" + standardErrors + ", " + minimumVisits + ")";
+	}
+	
+	
+	private double getMargin(GameNode node)
+	{
+		return standardErrors * Math.sqrt(node.getVariance() / node.getNumberOfVisits());
+	}
+}
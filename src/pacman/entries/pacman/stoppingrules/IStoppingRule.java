@@ -0,0 +1,19 @@
+package pacman.entries.pacman.stoppingrules;
+
+import pacman.entries.pacman.GameNode;
+
+/**
+ * Decides when the search for a decision has settled, so that the rest of the time before the move is due
+ * can be given up instead of being spent on simulations which wouldn't change the move.
+ */
+public interface IStoppingRule
+{
+	/**
+	 * Determines if the search can stop.  This is asked between simulations, so it mustn't allocate.
+	 * @param decision The node for the decision point, whose children are Ms Pac-Man's moves.
+	 * @param remainingSimulations The number of simulations there's expected to be time for if the search
+	 * carries on.
+	 * @return
+	 */
+	boolean canStop(GameNode decision, long remainingSimulations);
+}
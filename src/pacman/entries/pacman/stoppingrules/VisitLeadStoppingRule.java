@@ -0,0 +1,107 @@
+package pacman.entries.pacman.stoppingrules;
+
+import pacman.entries.pacman.GameNode;
+
+/**
+ * Stops when the move with the best score, which is the one bestNode() picks, is also the most visited, by
+ * more visits than the rest of the search could give the runner-up.  The selection policy sends most of the
+ * simulations to the move which looks best, so the runner-up can't catch up and overtake it in the time left.
+ * Since the runner-up will never really get every simulation, a fraction below one lets the search stop
+ * sooner.  The visits only say where the search has been looking, so the best move's average score also has
+ * to lead every other move's by a number of standard errors of the difference.
+ */
+public class VisitLeadStoppingRule implements IStoppingRule
+{
+	private double fraction;
+	private double standardErrors;
+	
+	
+	/**
+	 * Constructor.  The lead has to be more than all of the remaining simulations, and two standard errors.
+	 */
+	public VisitLeadStoppingRule()
+	{
+		this(1);
+	}
+	
+	
+	/**
+	 * Constructor.  The score has to lead by two standard errors.
+	 * @param fraction The fraction of the remaining simulations the lead in visits has to be more than.
+	 */
+	public VisitLeadStoppingRule(double fraction)
+	{
+		this(fraction, 2);
+	}
+	
+	
+	/**
+	 * Constructor.
+	 * @param fraction The fraction of the remaining simulations the lead in visits has to be more than.
+	 * @param standardErrors The number of standard errors the lead in average score has to be more than.
+	 */
+	public VisitLeadStoppingRule(double fraction, double standardErrors)
+	{
+		this.fraction = fraction;
+		this.standardErrors = standardErrors;
+	}
+	
+	
+	@Override
+	public boolean canStop(GameNode decision, long remainingSimulations)
+	{
+		GameNode[] children = decision.getChildArray();
+		GameNode best = null;
+		int mostVisits = 0;
+		int runnerUpVisits = 0;
+		
+		for (int i = 0; i < decision.getNumberOfChildren(); i++)
+		{
+			GameNode node = children[i];
+			
+			if (best == null || node.getAverageScore() > best.getAverageScore())
+				best = node;
+			
+			if (node.getNumberOfVisits() > mostVisits)
+			{
+				runnerUpVisits = mostVisits;
+				mostVisits = node.getNumberOfVisits();
+			}
+			else if (node.getNumberOfVisits() > runnerUpVisits)
+			{
+				runnerUpVisits = node.getNumberOfVisits();
+			}
+		}
+		
+		if (best == null || decision.getNumberOfChildren() < 2 || best.getNumberOfVisits() < mostVisits
+			|| best.getNumberOfVisits() - runnerUpVisits <= fraction * remainingSimulations)
+			return false;
+		
+		for (int i = 0; i < decision.getNumberOfChildren(); i++)
+		{
+			GameNode node = children[i];
+			
+			if (node != best && (node.getNumberOfVisits() == 0
+				|| best.getAverageScore() - node.getAverageScore() <= standardErrors * getStandardError(best, node)))
+				return false;
+		}
+		
+		return true;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "VisitLeadStoppingRule(" + fraction + ", " + standardErrors + ")";
+	}
+	
+	
+	/**
+	 * Gets the standard error of the difference between two nodes' average scores.
+	 */
+	private double getStandardError(GameNode a, GameNode b)
+	{
+		return Math.sqrt(a.getVariance() / a.getNumberOfVisits() + b.getVariance() / b.getNumberOfVisits());
+	}
+}
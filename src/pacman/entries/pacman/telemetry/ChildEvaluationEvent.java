@@ -0,0 +1,25 @@
+package pacman.entries.pacman.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a simulation run from a newly added child to initialise its score.
+ */
+@Name("pacman.ChildEvaluation")
+@Label("Child Evaluation")
+@Category({ "Pac-Man", "Monte Carlo Tree Search" })
+@Description("A simulation run from a newly added child to initialise its score.")
+public class ChildEvaluationEvent extends Event
+{
+	@Label("Game Ticks")
+	@Description("The number of game ticks played, including the rollout.")
+	public int ticks;
+	
+	@Label("Score")
+	@Description("The score given to the child.")
+	public int score;
+}
@@ -0,0 +1,176 @@
+package pacman.entries.pacman.telemetry;
+
+import java.util.Collection;
+
+import pacman.entries.pacman.GameNode;
+
+/**
+ * Collects the metrics for the decision currently being searched for by one agent.  This belongs to a
+ * single game, so it isn't thread-safe; it is handed to SearchTelemetry when the decision is made.
+ */
+public class DecisionTelemetry
+{
+	private int simulations;
+	private long rolloutTicks;
+	private long totalDepth;
+	private int maxDepth;
+	private int treeNodes;
+	private int chanceNodes;
+	private int ghostChildren;
+	private long evaluatorTime;
+	private long gcTimeAtStart;
+	
+	
+	public DecisionTelemetry()
+	{
+		reset();
+	}
+	
+	
+	/**
+	 * Records a simulation.
+	 * @param depth The number of Pac-Man moves in the tree the simulation passed through.
+	 */
+	public void addSimulation(int depth)
+	{
+		simulations++;
+		totalDepth += depth;
+		
+		if (depth > maxDepth)
+			maxDepth = depth;
+	}
+	
+	
+	/**
+	 * Records the number of game ticks played out in a rollout.
+	 * @param ticks
+	 */
+	public void addRolloutTicks(int ticks)
+	{
+		rolloutTicks += ticks;
+	}
+	
+	
+	/**
+	 * Records the time taken by the tree evaluators.
+	 * @param nanoseconds
+	 */
+	public void addEvaluatorTime(long nanoseconds)
+	{
+		evaluatorTime += nanoseconds;
+	}
+	
+	
+	/**
+	 * Counts the nodes in the tree and the ghost positions below each Pac-Man move.
+	 * @param root The root of the tree.
+	 * @param useGhostPositions Whether the children of the root and of each move are ghost chance nodes.
+	 */
+	public void measureTree(GameNode root, boolean useGhostPositions)
+	{
+		treeNodes = 0;
+		chanceNodes = 0;
+		ghostChildren = 0;
+		measureNode(root, useGhostPositions, useGhostPositions);
+	}
+	
+	
+	private void measureNode(GameNode node, boolean childrenAreGhostPositions, boolean useGhostPositions)
+	{
+		treeNodes++;
+		Collection<GameNode> children = node.getChildren();
+		
+		if (children == null)
+			return;
+		
+		if (childrenAreGhostPositions)
+		{
+			chanceNodes++;
+			ghostChildren += children.size();
+		}
+		
+		for (GameNode child: children)
+		{
+			//ghost positions and Pac-Man moves alternate when ghost positions are used
+			measureNode(child, useGhostPositions && !childrenAreGhostPositions, useGhostPositions);
+		}
+	}
+	
+	
+	/**
+	 * Clears the metrics ready for the next decision.
+	 */
+	public void reset()
+	{
+		simulations = 0;
+		rolloutTicks = 0;
+		totalDepth = 0;
+		maxDepth = 0;
+		treeNodes = 0;
+		chanceNodes = 0;
+		ghostChildren = 0;
+		evaluatorTime = 0;
+		gcTimeAtStart = SearchTelemetry.getTotalGcTime();
+	}
+	
+	
+	public int getSimulations()
+	{
+		return simulations;
+	}
+	
+	
+	public long getRolloutTicks()
+	{
+		return rolloutTicks;
+	}
+	
+	
+	/**
+	 * Gets the mean number of Pac-Man moves in the tree each simulation passed through.
+	 * @return
+	 */
+	public double getMeanDepth()
+	{
+		return simulations > 0 ? (double)totalDepth / simulations : 0;
+	}
+	
+	
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+	
+	
+	public int getTreeNodes()
+	{
+		return treeNodes;
+	}
+	
+	
+	/**
+	 * Gets the mean number of ghost positions seen after each Pac-Man move, or 0 if ghost positions
+	 * aren't being used.
+	 * @return
+	 */
+	public double getMeanGhostFanOut()
+	{
+		return chanceNodes > 0 ? (double)ghostChildren / chanceNodes : 0;
+	}
+	
+	
+	public long getEvaluatorTime()
+	{
+		return evaluatorTime;
+	}
+	
+	
+	/**
+	 * Gets the time spent in garbage collection by the whole JVM since the metrics were reset.
+	 * @return
+	 */
+	public long getGcTime()
+	{
+		return SearchTelemetry.getTotalGcTime() - gcTimeAtStart;
+	}
+}
@@ -0,0 +1,25 @@
+package pacman.entries.pacman.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for expansion of a leaf node, including the evaluation of its children.
+ */
+@Name("pacman.Expansion")
+@Label("Expansion")
+@Category({ "Pac-Man", "Monte Carlo Tree Search" })
+@Description("Expansion of a leaf node, including the evaluation of its children.")
+public class ExpansionEvent extends Event
+{
+	@Label("Children")
+	@Description("The number of children added.")
+	public int children;
+	
+	@Label("Children Evaluated")
+	@Description("Whether a simulation was run from each child.")
+	public boolean childrenEvaluated;
+}
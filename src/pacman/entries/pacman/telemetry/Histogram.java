@@ -0,0 +1,179 @@
+package pacman.entries.pacman.telemetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values which can be recorded to from many threads at once.  Values are
+ * counted in log-linear buckets, as in HdrHistogram: values below 32 are counted exactly, and above that
+ * each power of two is split into 16 buckets, so that any percentile is accurate to within about 6%
+ * while the whole range of a long fits in under a thousand buckets.
+ */
+public class Histogram
+{
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+	
+	private final AtomicLongArray counts;
+	private final AtomicLong count;
+	private final AtomicLong total;
+	private final AtomicLong max;
+	
+	
+	public Histogram()
+	{
+		counts = new AtomicLongArray(BUCKET_COUNT);
+		count = new AtomicLong();
+		total = new AtomicLong();
+		max = new AtomicLong();
+	}
+	
+	
+	/**
+	 * Records a value.  Negative values are recorded as zero.
+	 * @param value
+	 */
+	public void record(long value)
+	{
+		if (value < 0)
+			value = 0;
+		
+		counts.incrementAndGet(getBucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		
+		long currentMax = max.get();
+		
+		while (value > currentMax && !max.compareAndSet(currentMax, value))
+		{
+			currentMax = max.get();
+		}
+	}
+	
+	
+	/**
+	 * Gets the number of values recorded.
+	 * @return
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+	
+	
+	/**
+	 * Gets the exact mean of the values recorded.
+	 * @return
+	 */
+	public double getMean()
+	{
+		long n = count.get();
+		return n > 0 ? (double)total.get() / n : 0;
+	}
+	
+	
+	/**
+	 * Gets the exact largest value recorded.
+	 * @return
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+	
+	
+	/**
+	 * Gets the value below which the specified percentage of the recorded values fall.
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The highest value in the bucket containing the percentile, or 0 if nothing has been recorded.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long n = count.get();
+		
+		if (n == 0)
+			return 0;
+		
+		long target = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += counts.get(i);
+			
+			if (seen >= target)
+				return Math.min(getLowestValue(i + 1) - 1, max.get());
+		}
+		
+		return max.get();
+	}
+	
+	
+	/**
+	 * Clears all the recorded values.  Values recorded while the histogram is being reset may be lost.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			counts.set(i, 0);
+		}
+		
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+	
+	
+	/**
+	 * Adds all the values recorded in another histogram to this one.
+	 * @param other
+	 */
+	public void add(Histogram other)
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			counts.addAndGet(i, other.counts.get(i));
+		}
+		
+		count.addAndGet(other.count.get());
+		total.addAndGet(other.total.get());
+		
+		long otherMax = other.max.get();
+		long currentMax = max.get();
+		
+		while (otherMax > currentMax && !max.compareAndSet(currentMax, otherMax))
+		{
+			currentMax = max.get();
+		}
+	}
+	
+	
+	private static int getBucket(long value)
+	{
+		if (value < SUB_BUCKET_COUNT)
+			return (int)value;
+		
+		//the top SUB_BUCKET_BITS bits of the value pick the bucket within its power of two
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS + 1;
+		
+		return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (int)(value >>> shift) - HALF_SUB_BUCKET_COUNT;
+	}
+	
+	
+	private static long getLowestValue(int bucket)
+	{
+		if (bucket < SUB_BUCKET_COUNT)
+			return bucket;
+		else if (bucket >= BUCKET_COUNT)
+			return Long.MAX_VALUE;
+		
+		int offset = bucket - SUB_BUCKET_COUNT;
+		int shift = offset / HALF_SUB_BUCKET_COUNT + 1;
+		
+		return (long)(offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT) << shift;
+	}
+}
@@ -0,0 +1,73 @@
+package pacman.entries.pacman.telemetry;
+
+/**
+ * Records how long an agent takes to return each move, keeping the ticks where it makes a decision
+ * separate from the ticks where it only carries on searching, since they have very different costs.
+ * Memory use is constant however long the game goes on.
+ */
+public class LatencyRecorder
+{
+	private final Histogram decisionLatency;
+	private final Histogram tickLatency;
+	private long decisionMisses;
+	private long tickMisses;
+	
+	
+	public LatencyRecorder()
+	{
+		decisionLatency = new Histogram();
+		tickLatency = new Histogram();
+	}
+	
+	
+	/**
+	 * Records the latency of a move.
+	 * @param decision Whether a decision was made on this tick.
+	 * @param nanoseconds The time taken to return the move.
+	 * @param missed Whether the move was returned after it was due.
+	 */
+	public void record(boolean decision, long nanoseconds, boolean missed)
+	{
+		if (decision)
+		{
+			decisionLatency.record(nanoseconds / 1000);
+			
+			if (missed)
+				decisionMisses++;
+		}
+		else
+		{
+			tickLatency.record(nanoseconds / 1000);
+			
+			if (missed)
+				tickMisses++;
+		}
+	}
+	
+	
+	/**
+	 * Gets the latencies of the ticks on which a decision was made.
+	 * @return
+	 */
+	public LatencySummary getDecisionSummary()
+	{
+		return new LatencySummary(decisionLatency, decisionMisses);
+	}
+	
+	
+	/**
+	 * Gets the latencies of the ticks on which no decision was made.
+	 * @return
+	 */
+	public LatencySummary getTickSummary()
+	{
+		return new LatencySummary(tickLatency, tickMisses);
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return "decisions: " + getDecisionSummary() + "; other ticks: " + getTickSummary();
+	}
+}
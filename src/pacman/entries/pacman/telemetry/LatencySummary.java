@@ -0,0 +1,93 @@
+package pacman.entries.pacman.telemetry;
+
+/**
+ * The percentiles of a latency distribution and the number of deadlines missed, in microseconds.
+ */
+public class LatencySummary
+{
+	public static final LatencySummary EMPTY = new LatencySummary(0, 0, 0, 0, 0, 0);
+	
+	private final long count;
+	private final long median;
+	private final long percentile99;
+	private final long percentile999;
+	private final long max;
+	private final long misses;
+	
+	
+	public LatencySummary(long count, long median, long percentile99, long percentile999, long max, long misses)
+	{
+		this.count = count;
+		this.median = median;
+		this.percentile99 = percentile99;
+		this.percentile999 = percentile999;
+		this.max = max;
+		this.misses = misses;
+	}
+	
+	
+	/**
+	 * Summarises the latencies recorded in a histogram.
+	 * @param histogram The latencies, in microseconds.
+	 * @param misses The number of deadlines missed.
+	 */
+	public LatencySummary(Histogram histogram, long misses)
+	{
+		this(histogram.getCount(), histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+			histogram.getValueAtPercentile(99.9), histogram.getMax(), misses);
+	}
+	
+	
+	public long getCount()
+	{
+		return count;
+	}
+	
+	
+	public long getMedian()
+	{
+		return median;
+	}
+	
+	
+	public long getPercentile99()
+	{
+		return percentile99;
+	}
+	
+	
+	public long getPercentile999()
+	{
+		return percentile999;
+	}
+	
+	
+	public long getMax()
+	{
+		return max;
+	}
+	
+	
+	public long getMisses()
+	{
+		return misses;
+	}
+	
+	
+	/**
+	 * Gets the fraction of calls which missed their deadline.
+	 * @return
+	 */
+	public double getMissRate()
+	{
+		return count > 0 ? (double)misses / count : 0;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return String.format("%d calls, p50 %dus, p99 %dus, p99.9 %dus, max %dus, %d missed",
+			count, median, percentile99, percentile999, max, misses);
+	}
+}
@@ -0,0 +1,25 @@
+package pacman.entries.pacman.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for playing the game out with the default policies.
+ */
+@Name("pacman.Rollout")
+@Label("Rollout")
+@Category({ "Pac-Man", "Monte Carlo Tree Search" })
+@Description("Playing the game out with the default policies.")
+public class RolloutEvent extends Event
+{
+	@Label("Game Ticks")
+	@Description("The number of game ticks played.")
+	public int ticks;
+	
+	@Label("Score")
+	@Description("The score at the end of the rollout.")
+	public int score;
+}
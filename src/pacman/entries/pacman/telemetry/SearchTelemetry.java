@@ -0,0 +1,296 @@
+package pacman.entries.pacman.telemetry;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Aggregates the metrics of every decision made by every agent in the JVM, and publishes them as an MBean
+ * named pacman:type=SearchTelemetry.
+ *
+ * Telemetry is only recorded if the JVM is started with -Dpacman.telemetry=true.  ENABLED is a constant,
+ * so when it is false the JIT removes the code guarded by it and the search runs exactly as fast as it
+ * would without any telemetry.
+ */
+public class SearchTelemetry implements SearchTelemetryMBean
+{
+	public static final boolean ENABLED = Boolean.getBoolean("pacman.telemetry");
+	public static final String OBJECT_NAME = "pacman:type=SearchTelemetry";
+	
+	private static SearchTelemetry instance;
+	private static final List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+	
+	private final LongAdder decisions;
+	private final LongAdder simulations;
+	private final LongAdder rolloutTicks;
+	private final LongAdder missedDeadlines;
+	private final Histogram simulationsPerDecision;
+	private final Histogram treeNodes;
+	private final Histogram maxDepth;
+	private final Histogram meanDepth;
+	private final Histogram ghostFanOut;
+	private final Histogram evaluatorTime;
+	private final Histogram deadlineSlack;
+	private final Histogram gcTime;
+	
+	
+	private SearchTelemetry()
+	{
+		decisions = new LongAdder();
+		simulations = new LongAdder();
+		rolloutTicks = new LongAdder();
+		missedDeadlines = new LongAdder();
+		simulationsPerDecision = new Histogram();
+		treeNodes = new Histogram();
+		maxDepth = new Histogram();
+		meanDepth = new Histogram();
+		ghostFanOut = new Histogram();
+		evaluatorTime = new Histogram();
+		deadlineSlack = new Histogram();
+		gcTime = new Histogram();
+	}
+	
+	
+	/**
+	 * Gets the telemetry for the JVM, registering it with the platform MBean server the first time.
+	 * @return
+	 */
+	public static synchronized SearchTelemetry getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new SearchTelemetry();
+			
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+			}
+			catch (JMException ex)
+			{
+				//the metrics are still collected and can be printed, so carry on
+				System.err.println("Could not register the search telemetry MBean: " + ex);
+			}
+		}
+		
+		return instance;
+	}
+	
+	
+	/**
+	 * Records the metrics of a decision.
+	 * @param decision The metrics collected while searching for the decision.
+	 * @param slack The number of milliseconds left before the move was due when the decision was made.
+	 */
+	public void record(DecisionTelemetry decision, long slack)
+	{
+		decisions.increment();
+		simulations.add(decision.getSimulations());
+		rolloutTicks.add(decision.getRolloutTicks());
+		simulationsPerDecision.record(decision.getSimulations());
+		treeNodes.record(decision.getTreeNodes());
+		maxDepth.record(decision.getMaxDepth());
+		
+		//fractional metrics are recorded in hundredths
+		meanDepth.record(Math.round(decision.getMeanDepth() * 100));
+		ghostFanOut.record(Math.round(decision.getMeanGhostFanOut() * 100));
+		evaluatorTime.record(decision.getEvaluatorTime());
+		gcTime.record(decision.getGcTime());
+		
+		if (slack < 0)
+			missedDeadlines.increment();
+		
+		deadlineSlack.record(slack);
+	}
+	
+	
+	/**
+	 * Gets the total time spent in garbage collection by the JVM.
+	 * @return The time in milliseconds.
+	 */
+	public static long getTotalGcTime()
+	{
+		long total = 0;
+		
+		for (GarbageCollectorMXBean collector: garbageCollectors)
+		{
+			total += Math.max(0, collector.getCollectionTime());
+		}
+		
+		return total;
+	}
+	
+	
+	@Override
+	public long getDecisions()
+	{
+		return decisions.sum();
+	}
+	
+	
+	@Override
+	public long getSimulations()
+	{
+		return simulations.sum();
+	}
+	
+	
+	@Override
+	public double getMeanSimulationsPerDecision()
+	{
+		return simulationsPerDecision.getMean();
+	}
+	
+	
+	@Override
+	public long getMedianSimulationsPerDecision()
+	{
+		return simulationsPerDecision.getValueAtPercentile(50);
+	}
+	
+	
+	/**
+	 * Gets the number of simulations which 95% of decisions were better than, which shows whether
+	 * the agent is sometimes starved of simulations.
+	 */
+	@Override
+	public long getFifthPercentileSimulationsPerDecision()
+	{
+		return simulationsPerDecision.getValueAtPercentile(5);
+	}
+	
+	
+	@Override
+	public double getMeanRolloutTicksPerSimulation()
+	{
+		long n = simulations.sum();
+		return n > 0 ? (double)rolloutTicks.sum() / n : 0;
+	}
+	
+	
+	@Override
+	public double getMeanTreeNodes()
+	{
+		return treeNodes.getMean();
+	}
+	
+	
+	@Override
+	public long getMaxTreeNodes()
+	{
+		return treeNodes.getMax();
+	}
+	
+	
+	@Override
+	public double getMeanDepth()
+	{
+		return meanDepth.getMean() / 100;
+	}
+	
+	
+	@Override
+	public long getMaxDepth()
+	{
+		return maxDepth.getMax();
+	}
+	
+	
+	@Override
+	public double getMeanGhostFanOut()
+	{
+		return ghostFanOut.getMean() / 100;
+	}
+	
+	
+	@Override
+	public double getMeanEvaluatorMillis()
+	{
+		return evaluatorTime.getMean() / 1e6;
+	}
+	
+	
+	@Override
+	public double getMaxEvaluatorMillis()
+	{
+		return evaluatorTime.getMax() / 1e6;
+	}
+	
+	
+	/**
+	 * Gets the mean time left before the move was due when decisions were made; late decisions count as
+	 * no time left.
+	 */
+	@Override
+	public double getMeanDeadlineSlackMillis()
+	{
+		return deadlineSlack.getMean();
+	}
+	
+	
+	@Override
+	public long getFifthPercentileDeadlineSlackMillis()
+	{
+		return deadlineSlack.getValueAtPercentile(5);
+	}
+	
+	
+	@Override
+	public long getMissedDeadlines()
+	{
+		return missedDeadlines.sum();
+	}
+	
+	
+	/**
+	 * Gets the mean time the JVM spent in garbage collection while each decision was being searched for.
+	 * When several games are played at once their collections overlap, so this is per game, not a share.
+	 */
+	@Override
+	public double getMeanGcMillisPerDecision()
+	{
+		return gcTime.getMean();
+	}
+	
+	
+	@Override
+	public long getMaxGcMillisPerDecision()
+	{
+		return gcTime.getMax();
+	}
+	
+	
+	@Override
+	public void reset()
+	{
+		decisions.reset();
+		simulations.reset();
+		rolloutTicks.reset();
+		missedDeadlines.reset();
+		simulationsPerDecision.reset();
+		treeNodes.reset();
+		maxDepth.reset();
+		meanDepth.reset();
+		ghostFanOut.reset();
+		evaluatorTime.reset();
+		deadlineSlack.reset();
+		gcTime.reset();
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return String.format("decisions %d, simulations/decision %.1f (median %d, 5th percentile %d), "
+			+ "rollout ticks/simulation %.1f, tree nodes %.1f (max %d), depth %.2f (max %d), ghost fan-out %.2f, "
+			+ "evaluators %.2fms (max %.2fms), slack %.1fms (5th percentile %d), missed %d, GC %.2fms (max %d)",
+			getDecisions(), getMeanSimulationsPerDecision(), getMedianSimulationsPerDecision(),
+			getFifthPercentileSimulationsPerDecision(), getMeanRolloutTicksPerSimulation(), getMeanTreeNodes(),
+			getMaxTreeNodes(), getMeanDepth(), getMaxDepth(), getMeanGhostFanOut(), getMeanEvaluatorMillis(),
+			getMaxEvaluatorMillis(), getMeanDeadlineSlackMillis(), getFifthPercentileDeadlineSlackMillis(),
+			getMissedDeadlines(), getMeanGcMillisPerDecision(), getMaxGcMillisPerDecision());
+	}
+}
@@ -0,0 +1,32 @@
+package pacman.entries.pacman.telemetry;
+
+/**
+ * The management interface for SearchTelemetry, which makes the aggregate search metrics visible
+ * in JConsole or any other JMX client.
+ */
+public interface SearchTelemetryMBean
+{
+	long getDecisions();
+	long getSimulations();
+	double getMeanSimulationsPerDecision();
+	long getMedianSimulationsPerDecision();
+	long getFifthPercentileSimulationsPerDecision();
+	double getMeanRolloutTicksPerSimulation();
+	double getMeanTreeNodes();
+	long getMaxTreeNodes();
+	double getMeanDepth();
+	long getMaxDepth();
+	double getMeanGhostFanOut();
+	double getMeanEvaluatorMillis();
+	double getMaxEvaluatorMillis();
+	double getMeanDeadlineSlackMillis();
+	long getFifthPercentileDeadlineSlackMillis();
+	long getMissedDeadlines();
+	double getMeanGcMillisPerDecision();
+	long getMaxGcMillisPerDecision();
+	
+	/**
+	 * Clears all the metrics.
+	 */
+	void reset();
+}
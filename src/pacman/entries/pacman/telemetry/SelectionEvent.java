@@ -0,0 +1,25 @@
+package pacman.entries.pacman.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for descent through the tree from the root to a leaf.
+ */
+@Name("pacman.Selection")
+@Label("Selection")
+@Category({ "Pac-Man", "Monte Carlo Tree Search" })
+@Description("Descent through the tree from the root to a leaf.")
+public class SelectionEvent extends Event
+{
+	@Label("Depth")
+	@Description("The number of Pac-Man moves selected.")
+	public int depth;
+	
+	@Label("Game Ticks")
+	@Description("The number of game ticks played to follow the selected moves.")
+	public int ticks;
+}
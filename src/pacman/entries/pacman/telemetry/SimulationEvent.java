@@ -0,0 +1,29 @@
+package pacman.entries.pacman.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one simulation: descent through the tree, expansion and rollout.
+ */
+@Name("pacman.Simulation")
+@Label("Simulation")
+@Category({ "Pac-Man", "Monte Carlo Tree Search" })
+@Description("One simulation: descent through the tree, expansion and rollout.")
+public class SimulationEvent extends Event
+{
+	@Label("Depth")
+	@Description("The number of Pac-Man moves in the tree the simulation passed through.")
+	public int depth;
+	
+	@Label("Game Ticks")
+	@Description("The number of game ticks played from the root to the end of the rollout, not counting child evaluations.")
+	public int ticks;
+	
+	@Label("Score")
+	@Description("The score backed up through the tree.")
+	public int score;
+}
@@ -0,0 +1,25 @@
+package pacman.entries.pacman.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a run of a tree evaluator before a decision.
+ */
+@Name("pacman.TreeEvaluator")
+@Label("Tree Evaluator")
+@Category({ "Pac-Man", "Monte Carlo Tree Search" })
+@Description("A run of a tree evaluator before a decision.")
+public class TreeEvaluatorEvent extends Event
+{
+	@Label("Evaluator")
+	@Description("The evaluator that was run.")
+	public String evaluator;
+	
+	@Label("Nodes")
+	@Description("The number of Pac-Man moves available to be evaluated.")
+	public int nodes;
+}
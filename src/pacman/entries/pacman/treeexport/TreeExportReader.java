@@ -0,0 +1,196 @@
+package pacman.entries.pacman.treeexport;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import pacman.batch.ScoreStatistics;
+import pacman.game.Constants.MOVE;
+
+/**
+ * Reads a file written by TreeExporter and prints a summary of each decision, followed by a summary of
+ * the whole file.  Snapshots are read one at a time, so files of any length can be read.
+ */
+public class TreeExportReader
+{
+	public static void main(String[] args)
+	{
+		if (args.length != 1)
+		{
+			System.out.println("Usage: java pacman.entries.pacman.treeexport.TreeExportReader <tree export file>");
+			return;
+		}
+		
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0]), 1 << 16));
+			
+			try
+			{
+				summarise(in);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			System.out.println("Could not read " + args[0] + ": " + ex.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * Prints a summary of each snapshot in the stream.
+	 * @param in
+	 * @throws IOException
+	 */
+	public static void summarise(DataInputStream in) throws IOException
+	{
+		if (in.readInt() != TreeExporter.MAGIC)
+			throw new IOException("Not a tree export file.");
+		
+		int version = in.readShort();
+		
+		if (version != TreeExporter.VERSION)
+			throw new IOException("Unsupported tree export version: " + version);
+		
+		ScoreStatistics nodes = new ScoreStatistics();
+		ScoreStatistics depths = new ScoreStatistics();
+		ScoreStatistics rootVisits = new ScoreStatistics();
+		int maxDepth = 0;
+		TreeSnapshot snapshot;
+		
+		System.out.println("#decision\ttick\tscore\tmove\tnodes\tdepth\trootVisits\tmoves");
+		
+		while ((snapshot = TreeSnapshot.read(in)) != null)
+		{
+			int depth = getDepth(snapshot);
+			maxDepth = Math.max(maxDepth, depth);
+			nodes.add(snapshot.getSize());
+			depths.add(depth);
+			rootVisits.add(snapshot.getNumberOfVisits(0));
+			
+			System.out.printf("%d\t%d\t%d\t%s\t%d\t%d\t%d\t%s\n", snapshot.getDecision(), snapshot.getTick(),
+				snapshot.getScore(), snapshot.getChosenMove(), snapshot.getSize(), depth,
+				snapshot.getNumberOfVisits(0), describeMoves(snapshot));
+		}
+		
+		System.out.printf("#%d decisions, %.1f nodes, depth %.2f (max %d), %.1f root visits\n", nodes.getCount(),
+			nodes.getMean(), depths.getMean(), maxDepth, rootVisits.getMean());
+	}
+	
+	
+	/**
+	 * Gets the greatest number of Pac-Man moves on any path from the root.
+	 * @param snapshot
+	 * @return
+	 */
+	private static int getDepth(TreeSnapshot snapshot)
+	{
+		//walk the pre-order arrays with a stack of the number of children still to come at each level
+		int[] remaining = new int[snapshot.getSize() + 1];
+		int[] moveDepths = new int[snapshot.getSize() + 1];
+		int top = 0;
+		int maxDepth = 0;
+		
+		remaining[0] = 1;
+		
+		for (int i = 0; i < snapshot.getSize(); i++)
+		{
+			while (remaining[top] == 0)
+			{
+				top--;
+			}
+			
+			remaining[top]--;
+			
+			int depth = (top == 0 ? 0 : moveDepths[top - 1]) + (i > 0 && !snapshot.isGhostNode(i) ? 1 : 0);
+			maxDepth = Math.max(maxDepth, depth);
+			
+			if (snapshot.getNumberOfChildren(i) > 0)
+			{
+				moveDepths[top] = depth;
+				remaining[++top] = snapshot.getNumberOfChildren(i);
+			}
+		}
+		
+		return maxDepth;
+	}
+	
+	
+	/**
+	 * Describes the moves available at the root, adding up the visits and scores over every ghost position.
+	 * @param snapshot
+	 * @return
+	 */
+	private static String describeMoves(TreeSnapshot snapshot)
+	{
+		int[] visits = new int[MOVE.values().length];
+		double[] totals = new double[MOVE.values().length];
+		int next = 1;
+		
+		for (int c = 0; c < snapshot.getNumberOfChildren(0); c++)
+		{
+			int child = next;
+			next = skip(snapshot, child);
+			
+			if (snapshot.isGhostNode(child))
+			{
+				//the moves are one level further down
+				int grandchild = child + 1;
+				
+				for (int g = 0; g < snapshot.getNumberOfChildren(child); g++)
+				{
+					addMove(snapshot, grandchild, visits, totals);
+					grandchild = skip(snapshot, grandchild);
+				}
+			}
+			else
+			{
+				addMove(snapshot, child, visits, totals);
+			}
+		}
+		
+		StringBuilder description = new StringBuilder();
+		
+		for (int m = 0; m < visits.length; m++)
+		{
+			if (visits[m] > 0)
+			{
+				description.append(description.length() == 0 ? "" : " ");
+				description.append(String.format("%s:%d/%.0f", MOVE.values()[m], visits[m],
+					totals[m] / visits[m]));
+			}
+		}
+		
+		return description.toString();
+	}
+	
+	
+	private static void addMove(TreeSnapshot snapshot, int node, int[] visits, double[] totals)
+	{
+		int move = snapshot.getMove(node).ordinal();
+		visits[move] += snapshot.getNumberOfVisits(node);
+		totals[move] += (double)(snapshot.getMean(node) + snapshot.getScoreBonus(node)) * snapshot.getNumberOfVisits(node);
+	}
+	
+	
+	/**
+	 * Gets the index of the node after the specified node and all its descendants.
+	 */
+	private static int skip(TreeSnapshot snapshot, int node)
+	{
+		int remaining = 1;
+		
+		while (remaining > 0)
+		{
+			remaining += snapshot.getNumberOfChildren(node) - 1;
+			node++;
+		}
+		
+		return node;
+	}
+}
@@ -0,0 +1,163 @@
+package pacman.entries.pacman.treeexport;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Writes snapshots of the search tree to a file on a background thread, so that the agent only pays
+ * for copying the tree.  If the writer falls behind, snapshots are dropped rather than making the
+ * agent wait.
+ */
+public class TreeExporter
+{
+	public static final int MAGIC = 0x4d435453;
+	public static final int VERSION = 1;
+	
+	private static final int QUEUE_CAPACITY = 64;
+	
+	//queued to tell the writer thread to finish
+	private static final TreeSnapshot END_OF_SNAPSHOTS = TreeSnapshot.empty();
+	
+	private final BlockingQueue<TreeSnapshot> queue;
+	private final DataOutputStream out;
+	private final Thread writerThread;
+	private volatile IOException writeError;
+	private int droppedSnapshots;
+	
+	
+	/**
+	 * Constructor.  Creates the file, replacing any existing one.
+	 * @param file
+	 * @throws IOException
+	 */
+	public TreeExporter(File file) throws IOException
+	{
+		queue = new LinkedBlockingQueue<TreeSnapshot>(QUEUE_CAPACITY);
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		
+		writerThread = new Thread("tree-exporter")
+		{
+			@Override
+			public void run()
+			{
+				writeSnapshots();
+			}
+		};
+		
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+	
+	
+	/**
+	 * Gets the file one game of a batch exports to, which is the file given with the parameters hash and the
+	 * seed added before the extension, like the names of the game recordings, so that games played at the
+	 * same time don't overwrite each other's exports.
+	 * @param path The tree export file from the parameters.
+	 * @param parametersHash
+	 * @param seed
+	 * @return
+	 */
+	public static String getGamePath(String path, String parametersHash, long seed)
+	{
+		String suffix = "-" + parametersHash + "-" + seed;
+		int extension = path.lastIndexOf('.');
+		
+		//a dot before the last separator is part of a directory name, not an extension
+		if (extension <= Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar)))
+			return path + suffix;
+		
+		return path.substring(0, extension) + suffix + path.substring(extension);
+	}
+	
+	
+	/**
+	 * Queues a snapshot to be written.
+	 * @param snapshot
+	 */
+	public void export(TreeSnapshot snapshot)
+	{
+		if (!queue.offer(snapshot))
+			droppedSnapshots++;
+	}
+	
+	
+	/**
+	 * Gets the number of snapshots which were dropped because the writer couldn't keep up.
+	 * @return
+	 */
+	public int getDroppedSnapshots()
+	{
+		return droppedSnapshots;
+	}
+	
+	
+	/**
+	 * Writes any outstanding snapshots and closes the file.
+	 * @throws IOException If any snapshot could not be written.
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			queue.put(END_OF_SNAPSHOTS);
+			writerThread.join();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		if (writeError != null)
+			throw writeError;
+	}
+	
+	
+	/**
+	 * Writes snapshots as they are queued, flushing whenever the queue is empty.
+	 */
+	private void writeSnapshots()
+	{
+		try
+		{
+			try
+			{
+				while (true)
+				{
+					TreeSnapshot snapshot = queue.take();
+					
+					//write everything that is waiting before flushing
+					while (snapshot != null)
+					{
+						if (snapshot == END_OF_SNAPSHOTS)
+							return;
+						
+						snapshot.write(out);
+						snapshot = queue.poll();
+					}
+					
+					out.flush();
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			writeError = ex;
+		}
+		catch (InterruptedException ex)
+		{
+			//nothing more will be written
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package pacman.entries.pacman.treeexport;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collection;
+
+import pacman.entries.pacman.GameNode;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * A copy of the search tree at the moment a decision was made, flattened into arrays in pre-order so
+ * that it can be written out on another thread while the search carries on changing the tree.
+ */
+public class TreeSnapshot
+{
+	private static final int GHOST_NODE = 1;
+	private static final MOVE[] MOVES = MOVE.values();
+	
+	private int decision;
+	private int tick;
+	private int pacmanNodeIndex;
+	private int score;
+	private MOVE chosenMove;
+	private int size;
+	private boolean[] ghostNodes;
+	private MOVE[] moves;
+	private long[] ghostPositions;
+	private int[] nodeIndices;
+	private int[] visits;
+	private float[] means;
+	private float[] variances;
+	private int[] bonuses;
+	private int[] childCounts;
+	
+	
+	private TreeSnapshot(int size)
+	{
+		this.size = size;
+		ghostNodes = new boolean[size];
+		moves = new MOVE[size];
+		ghostPositions = new long[size];
+		nodeIndices = new int[size];
+		visits = new int[size];
+		means = new float[size];
+		variances = new float[size];
+		bonuses = new int[size];
+		childCounts = new int[size];
+	}
+	
+	
+	/**
+	 * Copies the tree.
+	 * @param root The root of the tree.
+	 * @param useGhostPositions Whether the children of the root and of each move are ghost positions.
+	 * @param decision The number of the decision the tree was searched for.
+	 * @param game The game state at the decision.
+	 * @param chosenMove The move the agent chose.
+	 * @return
+	 */
+	public static TreeSnapshot capture(GameNode root, boolean useGhostPositions, int decision, Game game, MOVE chosenMove)
+	{
+		TreeSnapshot snapshot = new TreeSnapshot(countNodes(root));
+		snapshot.decision = decision;
+		snapshot.tick = game.getTotalTime();
+		snapshot.pacmanNodeIndex = game.getPacmanCurrentNodeIndex();
+		snapshot.score = game.getScore();
+		snapshot.chosenMove = chosenMove;
+		snapshot.copyNode(root, false, useGhostPositions, 0);
+		return snapshot;
+	}
+	
+	
+	/**
+	 * Creates a snapshot with no nodes, for use as a marker.
+	 * @return
+	 */
+	static TreeSnapshot empty()
+	{
+		return new TreeSnapshot(0);
+	}
+	
+	
+	private static int countNodes(GameNode node)
+	{
+		int count = 1;
+		
+		if (node.getChildren() != null)
+		{
+			for (GameNode child: node.getChildren())
+			{
+				count += countNodes(child);
+			}
+		}
+		
+		return count;
+	}
+	
+	
+	/**
+	 * Copies a node and its descendants into the arrays.
+	 * @return The index after the last node copied.
+	 */
+	private int copyNode(GameNode node, boolean ghostNode, boolean useGhostPositions, int index)
+	{
+		Collection<GameNode> children = node.getChildren();
+		
+		ghostNodes[index] = ghostNode;
+		moves[index] = node.getMove();
+		ghostPositions[index] = node.getGhostPositions();
+		nodeIndices[index] = node.getNodeIndex();
+		visits[index] = node.getNumberOfVisits();
+		bonuses[index] = node.getScoreBonus();
+		means[index] = (float)(node.getAverageScore() - node.getScoreBonus());
+		variances[index] = (float)node.getVariance();
+		childCounts[index] = children == null ? 0 : children.size();
+		
+		int next = index + 1;
+		
+		if (children != null)
+		{
+			for (GameNode child: children)
+			{
+				//ghost positions and Pac-Man moves alternate when ghost positions are used
+				next = copyNode(child, useGhostPositions && !ghostNode, useGhostPositions, next);
+			}
+		}
+		
+		return next;
+	}
+	
+	
+	/**
+	 * Writes the snapshot.  Each node takes 24 bytes, plus 8 for the positions of a ghost node.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(decision);
+		out.writeInt(tick);
+		out.writeInt(pacmanNodeIndex);
+		out.writeInt(score);
+		out.writeByte(chosenMove.ordinal());
+		out.writeInt(size);
+		
+		for (int i = 0; i < size; i++)
+		{
+			out.writeByte(ghostNodes[i] ? GHOST_NODE : 0);
+			out.writeByte(moves[i].ordinal());
+			out.writeShort(childCounts[i]);
+			out.writeInt(nodeIndices[i]);
+			out.writeInt(visits[i]);
+			out.writeFloat(means[i]);
+			out.writeFloat(variances[i]);
+			out.writeInt(bonuses[i]);
+			
+			if (ghostNodes[i])
+				out.writeLong(ghostPositions[i]);
+		}
+	}
+	
+	
+	/**
+	 * Reads a snapshot written by write().
+	 * @param in
+	 * @return The snapshot, or null at the end of the stream.
+	 * @throws IOException
+	 */
+	public static TreeSnapshot read(DataInputStream in) throws IOException
+	{
+		int decision;
+		
+		try
+		{
+			decision = in.readInt();
+		}
+		catch (EOFException ex)
+		{
+			return null;
+		}
+		
+		int tick = in.readInt();
+		int pacmanNodeIndex = in.readInt();
+		int score = in.readInt();
+		MOVE chosenMove = MOVES[in.readByte()];
+		
+		TreeSnapshot snapshot = new TreeSnapshot(in.readInt());
+		snapshot.decision = decision;
+		snapshot.tick = tick;
+		snapshot.pacmanNodeIndex = pacmanNodeIndex;
+		snapshot.score = score;
+		snapshot.chosenMove = chosenMove;
+		
+		for (int i = 0; i < snapshot.size; i++)
+		{
+			snapshot.ghostNodes[i] = (in.readByte() & GHOST_NODE) != 0;
+			snapshot.moves[i] = MOVES[in.readByte()];
+			snapshot.childCounts[i] = in.readUnsignedShort();
+			snapshot.nodeIndices[i] = in.readInt();
+			snapshot.visits[i] = in.readInt();
+			snapshot.means[i] = in.readFloat();
+			snapshot.variances[i] = in.readFloat();
+			snapshot.bonuses[i] = in.readInt();
+			
+			if (snapshot.ghostNodes[i])
+				snapshot.ghostPositions[i] = in.readLong();
+		}
+		
+		return snapshot;
+	}
+	
+	
+	public int getDecision()
+	{
+		return decision;
+	}
+	
+	
+	public int getTick()
+	{
+		return tick;
+	}
+	
+	
+	public int getPacmanNodeIndex()
+	{
+		return pacmanNodeIndex;
+	}
+	
+	
+	public int getScore()
+	{
+		return score;
+	}
+	
+	
+	public MOVE getChosenMove()
+	{
+		return chosenMove;
+	}
+	
+	
+	/**
+	 * Gets the number of nodes in the tree.  Node 0 is the root, and the children of each node follow
+	 * it directly, each followed by its own descendants.
+	 * @return
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+	
+	
+	public boolean isGhostNode(int node)
+	{
+		return ghostNodes[node];
+	}
+	
+	
+	public MOVE getMove(int node)
+	{
+		return moves[node];
+	}
+	
+	
+	public long getGhostPositions(int node)
+	{
+		return ghostPositions[node];
+	}
+	
+	
+	public int getNodeIndex(int node)
+	{
+		return nodeIndices[node];
+	}
+	
+	
+	public int getNumberOfVisits(int node)
+	{
+		return visits[node];
+	}
+	
+	
+	public float getMean(int node)
+	{
+		return means[node];
+	}
+	
+	
+	public float getVariance(int node)
+	{
+		return variances[node];
+	}
+	
+	
+	public int getScoreBonus(int node)
+	{
+		return bonuses[node];
+	}
+	
+	
+	public int getNumberOfChildren(int node)
+	{
+		return childCounts[node];
+	}
+}
@@ -0,0 +1,97 @@
+package pacman.entries.pacman.valuemodel;
+
+import pacman.game.Constants;
+import pacman.game.Constants.GHOST;
+import pacman.game.Game;
+
+/**
+ * The features of a game state which a ValueModel predicts the rest of a rollout's score from.  They are
+ * scaled to roughly the range 0 to 1 so that the model's weights can be compared with each other.
+ */
+public class ValueFeatures
+{
+	public static final String[] NAMES = { "bias", "pills", "powerPills", "lives", "pillsTimesLives",
+		"nearestGhost", "ghostNearby", "nearestEdibleGhost", "edibleTime", "ghostsInLair", "nearestPill",
+		"nearestPowerPill", "levelTimeLeft" };
+	
+	public static final int COUNT = NAMES.length;
+	
+	//distances are capped at this, which is further than most paths in the mazes
+	private static final double MAXIMUM_DISTANCE = 200;
+	
+	//the distance a ghost has to be within to count as nearby
+	private static final double NEARBY_DISTANCE = 20;
+	
+	private static final GHOST[] GHOSTS = GHOST.values();
+	
+	
+	/**
+	 * Works out the features of a game state.
+	 * @param game
+	 * @param features An array of COUNT elements to put the features in.
+	 */
+	public static void extract(Game game, double[] features)
+	{
+		int pacmanIndex = game.getPacmanCurrentNodeIndex();
+		double pills = (double)game.getNumberOfActivePills() / game.getNumberOfPills();
+		double lives = game.getPacmanNumberOfLivesRemaining();
+		double nearestGhost = MAXIMUM_DISTANCE;
+		double nearestEdibleGhost = MAXIMUM_DISTANCE;
+		double edibleTime = 0;
+		int ghostsInLair = 0;
+		
+		for (GHOST ghost: GHOSTS)
+		{
+			if (game.getGhostLairTime(ghost) > 0)
+			{
+				ghostsInLair++;
+				continue;
+			}
+			
+			double distance = Math.min(MAXIMUM_DISTANCE,
+				game.getShortestPathDistance(pacmanIndex, game.getGhostCurrentNodeIndex(ghost)));
+			
+			if (game.isGhostEdible(ghost))
+			{
+				nearestEdibleGhost = Math.min(nearestEdibleGhost, distance);
+				edibleTime += game.getGhostEdibleTime(ghost);
+			}
+			else
+			{
+				nearestGhost = Math.min(nearestGhost, distance);
+			}
+		}
+		
+		features[0] = 1;
+		features[1] = pills;
+		features[2] = game.getNumberOfActivePowerPills();
+		features[3] = lives;
+		features[4] = pills * lives;
+		features[5] = nearestGhost / MAXIMUM_DISTANCE;
+		features[6] = Math.max(0, 1 - nearestGhost / NEARBY_DISTANCE);
+		features[7] = nearestEdibleGhost / MAXIMUM_DISTANCE;
+		features[8] = edibleTime / (Constants.EDIBLE_TIME * Constants.NUM_GHOSTS);
+		features[9] = ghostsInLair;
+		features[10] = getNearestDistance(game, pacmanIndex, game.getPillIndices(), false) / MAXIMUM_DISTANCE;
+		features[11] = getNearestDistance(game, pacmanIndex, game.getPowerPillIndices(), true) / MAXIMUM_DISTANCE;
+		features[12] = (double)Math.max(0, Constants.LEVEL_LIMIT - game.getCurrentLevelTime()) / Constants.LEVEL_LIMIT;
+	}
+	
+	
+	/**
+	 * Gets the distance along the paths to the nearest pill or power pill still to be eaten.
+	 * @return The distance, or MAXIMUM_DISTANCE if there are none left or they're further than that.
+	 */
+	private static double getNearestDistance(Game game, int pacmanIndex, int[] indices, boolean powerPills)
+	{
+		int nearest = (int)MAXIMUM_DISTANCE;
+		
+		for (int i = 0; i < indices.length; i++)
+		{
+			if (powerPills ? game.isPowerPillStillAvailable(i) : game.isPillStillAvailable(i))
+				nearest = Math.min(nearest, game.getShortestPathDistance(pacmanIndex, indices[i]));
+		}
+		
+		return nearest;
+	}
+}
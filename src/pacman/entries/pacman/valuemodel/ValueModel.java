@@ -0,0 +1,180 @@
+package pacman.entries.pacman.valuemodel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A linear model of the score still to come in a rollout, given the ValueFeatures of the state the rollout
+ * has got to.  Models are fitted by ValueModelTrainer.
+ *
+ * The file holds MAGIC, VERSION, the number of features and their names, and then a weight for each.
+ */
+public class ValueModel
+{
+	public static final int MAGIC = 0x504d564d;
+	public static final int VERSION = 1;
+	
+	//models read by path, so that all the agents in a batch share them
+	private static final Map<String, ValueModel> models = new HashMap<String, ValueModel>();
+	
+	private final double[] weights;
+	
+	
+	/**
+	 * Constructor.
+	 * @param weights A weight for each of the ValueFeatures.
+	 */
+	public ValueModel(double[] weights)
+	{
+		if (weights.length != ValueFeatures.COUNT)
+			throw new IllegalArgumentException("Expected " + ValueFeatures.COUNT + " weights.");
+		
+		this.weights = weights.clone();
+	}
+	
+	
+	/**
+	 * Reads a model.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static ValueModel read(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		
+		try
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a value model.");
+			
+			int version = in.readShort();
+			
+			if (version != VERSION)
+				throw new IOException("Unsupported value model version: " + version);
+			
+			int count = in.readInt();
+			
+			if (count != ValueFeatures.COUNT)
+				throw new IOException("The value model has " + count + " features instead of " + ValueFeatures.COUNT + ".");
+			
+			//the names must match, or the weights would be applied to the wrong features
+			for (int i = 0; i < count; i++)
+			{
+				String name = in.readUTF();
+				
+				if (!name.equals(ValueFeatures.NAMES[i]))
+					throw new IOException("The value model has the feature " + name + " instead of " + ValueFeatures.NAMES[i] + ".");
+			}
+			
+			double[] weights = new double[count];
+			
+			for (int i = 0; i < count; i++)
+			{
+				weights[i] = in.readDouble();
+			}
+			
+			return new ValueModel(weights);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	
+	/**
+	 * Gets a model, reading it if no agent has used it yet.
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static ValueModel get(String path) throws IOException
+	{
+		synchronized (models)
+		{
+			ValueModel model = models.get(path);
+			
+			if (model == null)
+			{
+				model = read(new File(path));
+				models.put(path, model);
+			}
+			
+			return model;
+		}
+	}
+	
+	
+	/**
+	 * Writes the model.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeInt(weights.length);
+			
+			for (String name: ValueFeatures.NAMES)
+			{
+				out.writeUTF(name);
+			}
+			
+			for (double weight: weights)
+			{
+				out.writeDouble(weight);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	
+	/**
+	 * Predicts the score still to come.
+	 * @param features The features from ValueFeatures.extract().
+	 * @return
+	 */
+	public double predict(double[] features)
+	{
+		double value = 0;
+		
+		for (int i = 0; i < weights.length; i++)
+		{
+			value += weights[i] * features[i];
+		}
+		
+		return value;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder description = new StringBuilder();
+		
+		for (int i = 0; i < weights.length; i++)
+		{
+			description.append(i == 0 ? "" : ", ");
+			description.append(String.format("%s=%.1f", ValueFeatures.NAMES[i], weights[i]));
+		}
+		
+		return description.toString();
+	}
+}
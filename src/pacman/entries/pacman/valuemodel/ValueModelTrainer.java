@@ -0,0 +1,262 @@
+package pacman.entries.pacman.valuemodel;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Fits a ValueModel to the samples recorded by ValueSampleRecorder, by least squares with a little ridge
+ * regularisation so that features which never vary in the samples don't make the fit fail.  The samples
+ * are streamed, so files of any size can be used.  Every tenth sample is held back to measure the model
+ * on, against always predicting the mean.
+ */
+public class ValueModelTrainer
+{
+	private static final int HOLD_OUT_EVERY = 10;
+	
+	private final double ridge;
+	private final double[][] xtx;
+	private final double[] xty;
+	private long numberOfSamples;
+	private double totalScore;
+	
+	
+	/**
+	 * Constructor.
+	 * @param ridge The amount added to the diagonal of the normal equations, apart from for the bias.
+	 */
+	public ValueModelTrainer(double ridge)
+	{
+		this.ridge = ridge;
+		this.xtx = new double[ValueFeatures.COUNT][ValueFeatures.COUNT];
+		this.xty = new double[ValueFeatures.COUNT];
+	}
+	
+	
+	public static void main(String[] args)
+	{
+		if (args.length < 2)
+		{
+			System.out.println("Usage: java pacman.entries.pacman.valuemodel.ValueModelTrainer <model> <samples>...");
+			return;
+		}
+		
+		ValueModelTrainer trainer = new ValueModelTrainer(1);
+		
+		try
+		{
+			for (int i = 1; i < args.length; i++)
+			{
+				trainer.addSamples(new File(args[i]));
+			}
+			
+			ValueModel model = trainer.fit();
+			System.out.printf("Fitted to %d samples: %s\n", trainer.numberOfSamples, model);
+			
+			double[] errors = new double[3];
+			
+			for (int i = 1; i < args.length; i++)
+			{
+				trainer.evaluate(new File(args[i]), model, errors);
+			}
+			
+			System.out.printf("%.0f held out samples: RMSE %.1f, against %.1f for the mean; R^2 %.3f\n", errors[0],
+				Math.sqrt(errors[1] / errors[0]), Math.sqrt(errors[2] / errors[0]), 1 - errors[1] / errors[2]);
+			
+			model.write(new File(args[0]));
+		}
+		catch (IOException ex)
+		{
+			System.out.println("Could not train the model: " + ex.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * Adds the samples in a file to the fit, apart from the ones held out.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void addSamples(File file) throws IOException
+	{
+		DataInputStream in = open(file);
+		double[] sample = new double[ValueFeatures.COUNT + 1];
+		
+		try
+		{
+			for (long i = 0; readSample(in, sample); i++)
+			{
+				if (i % HOLD_OUT_EVERY == 0)
+					continue;
+				
+				double score = sample[ValueFeatures.COUNT];
+				
+				for (int r = 0; r < ValueFeatures.COUNT; r++)
+				{
+					for (int c = 0; c < ValueFeatures.COUNT; c++)
+					{
+						xtx[r][c] += sample[r] * sample[c];
+					}
+					
+					xty[r] += sample[r] * score;
+				}
+				
+				numberOfSamples++;
+				totalScore += score;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	
+	/**
+	 * Solves the normal equations for the samples added so far.
+	 * @return
+	 */
+	public ValueModel fit()
+	{
+		int n = ValueFeatures.COUNT;
+		double[][] a = new double[n][n + 1];
+		
+		for (int r = 0; r < n; r++)
+		{
+			System.arraycopy(xtx[r], 0, a[r], 0, n);
+			a[r][n] = xty[r];
+			
+			//the bias isn't held back, since the scores aren't centred
+			if (r > 0)
+				a[r][r] += ridge;
+		}
+		
+		//Gaussian elimination with partial pivoting
+		for (int c = 0; c < n; c++)
+		{
+			int pivot = c;
+			
+			for (int r = c + 1; r < n; r++)
+			{
+				if (Math.abs(a[r][c]) > Math.abs(a[pivot][c]))
+					pivot = r;
+			}
+			
+			double[] row = a[c];
+			a[c] = a[pivot];
+			a[pivot] = row;
+			
+			if (a[c][c] == 0)
+				throw new IllegalStateException("There aren't enough samples to fit the model.");
+			
+			for (int r = c + 1; r < n; r++)
+			{
+				double factor = a[r][c] / a[c][c];
+				
+				for (int k = c; k <= n; k++)
+				{
+					a[r][k] -= factor * a[c][k];
+				}
+			}
+		}
+		
+		double[] weights = new double[n];
+		
+		for (int r = n - 1; r >= 0; r--)
+		{
+			double value = a[r][n];
+			
+			for (int k = r + 1; k < n; k++)
+			{
+				value -= a[r][k] * weights[k];
+			}
+			
+			weights[r] = value / a[r][r];
+		}
+		
+		return new ValueModel(weights);
+	}
+	
+	
+	/**
+	 * Measures a model on the samples held out of a file.
+	 * @param file
+	 * @param model
+	 * @param errors Added to: the number of samples, the model's sum of squared errors, and the sum of squared
+	 * errors of the mean of the training samples.
+	 * @throws IOException
+	 */
+	public void evaluate(File file, ValueModel model, double[] errors) throws IOException
+	{
+		DataInputStream in = open(file);
+		double[] sample = new double[ValueFeatures.COUNT + 1];
+		double mean = numberOfSamples == 0 ? 0 : totalScore / numberOfSamples;
+		
+		try
+		{
+			for (long i = 0; readSample(in, sample); i++)
+			{
+				if (i % HOLD_OUT_EVERY != 0)
+					continue;
+				
+				double score = sample[ValueFeatures.COUNT];
+				double error = model.predict(sample) - score;
+				errors[0]++;
+				errors[1] += error * error;
+				errors[2] += (mean - score) * (mean - score);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	
+	private static DataInputStream open(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		
+		if (in.readInt() != ValueSampleRecorder.MAGIC)
+		{
+			in.close();
+			throw new IOException(file + " is not a value sample file.");
+		}
+		
+		int version = in.readShort();
+		int count = in.readInt();
+		
+		if (version != ValueSampleRecorder.VERSION || count != ValueFeatures.COUNT)
+		{
+			in.close();
+			throw new IOException(file + " has samples of a different version or number of features.");
+		}
+		
+		return in;
+	}
+	
+	
+	/**
+	 * Reads the features of a sample followed by its score.
+	 * @return False at the end of the file, including a sample cut short by a game which didn't finish.
+	 */
+	private static boolean readSample(DataInputStream in, double[] sample) throws IOException
+	{
+		try
+		{
+			for (int i = 0; i < sample.length; i++)
+			{
+				sample[i] = in.readFloat();
+			}
+			
+			return true;
+		}
+		catch (EOFException ex)
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package pacman.entries.pacman.valuemodel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the features of states reached during rollouts together with the score the rollout went on to
+ * make, for ValueModelTrainer to fit a model to.  Every simulator recording to the same file shares one
+ * recorder, so that the games of a batch can all add to it.
+ *
+ * The file holds MAGIC, VERSION and the number of features, and then each sample as the features followed
+ * by the score still to come, all as floats.
+ */
+public class ValueSampleRecorder
+{
+	public static final int MAGIC = 0x504d5653;
+	public static final int VERSION = 1;
+	
+	private static final Map<String, ValueSampleRecorder> recorders = new HashMap<String, ValueSampleRecorder>();
+	
+	private final DataOutputStream out;
+	private long numberOfSamples;
+	
+	
+	/**
+	 * Constructor.  Creates the file, replacing any existing one.
+	 * @param file
+	 * @throws IOException
+	 */
+	public ValueSampleRecorder(File file) throws IOException
+	{
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeInt(ValueFeatures.COUNT);
+	}
+	
+	
+	/**
+	 * Gets the recorder for a file, creating the file if nothing has recorded to it yet.
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static ValueSampleRecorder get(String path) throws IOException
+	{
+		synchronized (recorders)
+		{
+			ValueSampleRecorder recorder = recorders.get(path);
+			
+			if (recorder == null)
+			{
+				recorder = new ValueSampleRecorder(new File(path));
+				recorders.put(path, recorder);
+			}
+			
+			return recorder;
+		}
+	}
+	
+	
+	/**
+	 * Records a sample.
+	 * @param features The features of the state.
+	 * @param score The score the rollout made after the state.
+	 * @throws IOException
+	 */
+	public synchronized void record(double[] features, int score) throws IOException
+	{
+		for (double feature: features)
+		{
+			out.writeFloat((float)feature);
+		}
+		
+		out.writeFloat(score);
+		numberOfSamples++;
+	}
+	
+	
+	/**
+	 * Writes out any samples still buffered.  The file is left open for more samples.
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException
+	{
+		out.flush();
+	}
+	
+	
+	public synchronized long getNumberOfSamples()
+	{
+		return numberOfSamples;
+	}
+}
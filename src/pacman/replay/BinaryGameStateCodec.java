@@ -0,0 +1,269 @@
+package pacman.replay;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.BitSet;
+import java.util.EnumMap;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.game.internal.Ghost;
+import pacman.game.internal.Maze;
+import pacman.game.internal.PacMan;
+
+/**
+ * Encodes the whole state of a game in a fixed binary layout, reading and writing the fields of the game
+ * directly instead of going through the text of Game.getGameState(), so that states can be saved and
+ * restored at high rates.  Unlike the text, the state includes whether the game is over and the score
+ * multiplier for eating ghosts.  The layout is:
+ *   byte   the maze
+ *   short  flags: FLAG_GAME_OVER to FLAG_EXTRA_LIFE, then a bit for each ghost eaten on the last tick
+ *   int    the total time and the score
+ *   short  the level time, the level and the ghost eat multiplier
+ *   int    the time of the last global reversal
+ *   short  Ms Pac-Man's node, then a byte for her last move and a byte for her lives
+ *   for each ghost, a short for its node, a byte for its last move, and shorts for its edible and lair times
+ *   long   the pills still available, 64 to a word, with as many words as the maze needs
+ *   byte   the power pills still available
+ * Moves are stored as the ordinals of MOVE.
+ */
+public class BinaryGameStateCodec
+{
+	/**
+	 * The greatest number of bytes a state can take, on any maze.
+	 */
+	public static final int MAXIMUM_SIZE = 128;
+	
+	public static final int FLAG_GAME_OVER = 1;
+	public static final int FLAG_PACMAN_EATEN = 2;
+	public static final int FLAG_PILL_EATEN = 4;
+	public static final int FLAG_POWER_PILL_EATEN = 8;
+	public static final int FLAG_EXTRA_LIFE = 16;
+	public static final int FLAG_FIRST_GHOST_EATEN = 32;
+	
+	private static final GHOST[] GHOSTS = GHOST.values();
+	private static final MOVE[] MOVES = MOVE.values();
+	
+	private static final Field PILLS = getField("pills");
+	private static final Field POWER_PILLS = getField("powerPills");
+	private static final Field MAZE_INDEX = getField("mazeIndex");
+	private static final Field LEVEL_COUNT = getField("levelCount");
+	private static final Field CURRENT_LEVEL_TIME = getField("currentLevelTime");
+	private static final Field TOTAL_TIME = getField("totalTime");
+	private static final Field SCORE = getField("score");
+	private static final Field GHOST_EAT_MULTIPLIER = getField("ghostEatMultiplier");
+	private static final Field TIME_OF_LAST_GLOBAL_REVERSAL = getField("timeOfLastGlobalReversal");
+	private static final Field GAME_OVER = getField("gameOver");
+	private static final Field PACMAN_WAS_EATEN = getField("pacmanWasEaten");
+	private static final Field PILL_WAS_EATEN = getField("pillWasEaten");
+	private static final Field POWER_PILL_WAS_EATEN = getField("powerPillWasEaten");
+	private static final Field GHOSTS_EATEN = getField("ghostsEaten");
+	private static final Field PACMAN = getField("pacman");
+	private static final Field GHOST_MAP = getField("ghosts");
+	private static final Field MAZES = getField("mazes");
+	private static final Field CURRENT_MAZE = getField("currentMaze");
+	
+	
+	/**
+	 * Writes the state of a game at the buffer's position, advancing the position past it.
+	 * @param game
+	 * @param buffer A buffer with at least MAXIMUM_SIZE bytes remaining.
+	 */
+	public static void encode(Game game, ByteBuffer buffer)
+	{
+		try
+		{
+			PacMan pacman = (PacMan)PACMAN.get(game);
+			int flags = 0;
+			
+			if (game.gameOver())
+				flags |= FLAG_GAME_OVER;
+			
+			if (game.wasPacManEaten())
+				flags |= FLAG_PACMAN_EATEN;
+			
+			if (game.wasPillEaten())
+				flags |= FLAG_PILL_EATEN;
+			
+			if (game.wasPowerPillEaten())
+				flags |= FLAG_POWER_PILL_EATEN;
+			
+			if (pacman.hasReceivedExtraLife)
+				flags |= FLAG_EXTRA_LIFE;
+			
+			for (int i = 0; i < GHOSTS.length; i++)
+			{
+				if (game.wasGhostEaten(GHOSTS[i]))
+					flags |= FLAG_FIRST_GHOST_EATEN << i;
+			}
+			
+			buffer.put((byte)game.getMazeIndex());
+			buffer.putShort((short)flags);
+			buffer.putInt(game.getTotalTime());
+			buffer.putInt(game.getScore());
+			buffer.putShort((short)game.getCurrentLevelTime());
+			buffer.putShort((short)game.getCurrentLevel());
+			buffer.putShort((short)GHOST_EAT_MULTIPLIER.getInt(game));
+			buffer.putInt(game.getTimeOfLastGlobalReversal());
+			
+			buffer.putShort((short)pacman.currentNodeIndex);
+			buffer.put((byte)pacman.lastMoveMade.ordinal());
+			buffer.put((byte)pacman.numberOfLivesRemaining);
+			
+			for (GHOST ghost: GHOSTS)
+			{
+				buffer.putShort((short)game.getGhostCurrentNodeIndex(ghost));
+				buffer.put((byte)game.getGhostLastMoveMade(ghost).ordinal());
+				buffer.putShort((short)game.getGhostEdibleTime(ghost));
+				buffer.putShort((short)game.getGhostLairTime(ghost));
+			}
+			
+			//the words of the bitset leave out any zero words at the end, so pad them out to the maze's size
+			long[] pills = ((BitSet)PILLS.get(game)).toLongArray();
+			int numberOfWords = (game.getNumberOfPills() + 63) >> 6;
+			
+			for (int i = 0; i < numberOfWords; i++)
+			{
+				buffer.putLong(i < pills.length ? pills[i] : 0);
+			}
+			
+			BitSet powerPills = (BitSet)POWER_PILLS.get(game);
+			int powerPillBits = 0;
+			
+			for (int i = powerPills.nextSetBit(0); i >= 0; i = powerPills.nextSetBit(i + 1))
+			{
+				powerPillBits |= 1 << i;
+			}
+			
+			buffer.put((byte)powerPillBits);
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException("Cannot read the state of the game.", ex);
+		}
+	}
+	
+	
+	/**
+	 * Sets the state of a game to the state at the buffer's position, advancing the position past it.
+	 * The game's own objects are updated in place, apart from the pills.
+	 * @param buffer
+	 * @param game The game to change, which can be on any maze.
+	 */
+	@SuppressWarnings("unchecked")
+	public static void decode(ByteBuffer buffer, Game game)
+	{
+		try
+		{
+			int mazeIndex = buffer.get();
+			
+			if (mazeIndex != game.getMazeIndex())
+			{
+				MAZE_INDEX.setInt(game, mazeIndex);
+				CURRENT_MAZE.set(game, ((Maze[])MAZES.get(null))[mazeIndex]);
+			}
+			
+			int flags = buffer.getShort();
+			GAME_OVER.setBoolean(game, (flags & FLAG_GAME_OVER) != 0);
+			PACMAN_WAS_EATEN.setBoolean(game, (flags & FLAG_PACMAN_EATEN) != 0);
+			PILL_WAS_EATEN.setBoolean(game, (flags & FLAG_PILL_EATEN) != 0);
+			POWER_PILL_WAS_EATEN.setBoolean(game, (flags & FLAG_POWER_PILL_EATEN) != 0);
+			
+			EnumMap<GHOST, Boolean> ghostsEaten = (EnumMap<GHOST, Boolean>)GHOSTS_EATEN.get(game);
+			
+			for (int i = 0; i < GHOSTS.length; i++)
+			{
+				ghostsEaten.put(GHOSTS[i], Boolean.valueOf((flags & (FLAG_FIRST_GHOST_EATEN << i)) != 0));
+			}
+			
+			TOTAL_TIME.setInt(game, buffer.getInt());
+			SCORE.setInt(game, buffer.getInt());
+			CURRENT_LEVEL_TIME.setInt(game, buffer.getShort());
+			LEVEL_COUNT.setInt(game, buffer.getShort());
+			GHOST_EAT_MULTIPLIER.setInt(game, buffer.getShort());
+			TIME_OF_LAST_GLOBAL_REVERSAL.setInt(game, buffer.getInt());
+			
+			PacMan pacman = (PacMan)PACMAN.get(game);
+			pacman.currentNodeIndex = buffer.getShort();
+			pacman.lastMoveMade = MOVES[buffer.get()];
+			pacman.numberOfLivesRemaining = buffer.get();
+			pacman.hasReceivedExtraLife = (flags & FLAG_EXTRA_LIFE) != 0;
+			
+			EnumMap<GHOST, Ghost> ghosts = (EnumMap<GHOST, Ghost>)GHOST_MAP.get(game);
+			
+			for (GHOST type: GHOSTS)
+			{
+				Ghost ghost = ghosts.get(type);
+				ghost.currentNodeIndex = buffer.getShort();
+				ghost.lastMoveMade = MOVES[buffer.get()];
+				ghost.edibleTime = buffer.getShort();
+				ghost.lairTime = buffer.getShort();
+			}
+			
+			//setting the pills one at a time costs more than making a new bitset from the words
+			LongBuffer words = buffer.asLongBuffer();
+			words.limit((game.getNumberOfPills() + 63) >> 6);
+			buffer.position(buffer.position() + (words.limit() << 3));
+			PILLS.set(game, BitSet.valueOf(words));
+			
+			BitSet powerPills = (BitSet)POWER_PILLS.get(game);
+			int powerPillBits = buffer.get();
+			powerPills.clear();
+			
+			while (powerPillBits != 0)
+			{
+				powerPills.set(Integer.numberOfTrailingZeros(powerPillBits));
+				powerPillBits &= powerPillBits - 1;
+			}
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException("Cannot set the state of the game.", ex);
+		}
+	}
+	
+	
+	/**
+	 * Encodes the state of a game into a new array.
+	 * @param game
+	 * @return
+	 */
+	public static byte[] encode(Game game)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(MAXIMUM_SIZE);
+		encode(game, buffer);
+		
+		byte[] data = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(data);
+		return data;
+	}
+	
+	
+	/**
+	 * Sets the state of a game to a state returned by encode(Game).
+	 * @param data
+	 * @param game
+	 */
+	public static void decode(byte[] data, Game game)
+	{
+		decode(ByteBuffer.wrap(data), game);
+	}
+	
+	
+	private static Field getField(String name)
+	{
+		try
+		{
+			Field field = Game.class.getDeclaredField(name);
+			field.setAccessible(true);
+			return field;
+		}
+		catch (NoSuchFieldException ex)
+		{
+			throw new IllegalStateException("This version of the game has no field " + name + ".", ex);
+		}
+	}
+}
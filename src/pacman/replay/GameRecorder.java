@@ -0,0 +1,81 @@
+package pacman.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Records a game: the seed it was created with, and the state of the game and the move chosen at each
+ * of the agent's decisions, so that any decision can be searched again later with ReplayHarness.
+ */
+public class GameRecorder
+{
+	public static final int MAGIC = 0x504d5243;
+	public static final int VERSION = 2;
+	
+	//the first version stored the states with GameStateCodec, which is still read
+	static final int TEXT_STATE_VERSION = 1;
+	
+	//marks the end of the decisions, followed by the final score
+	static final int END_OF_GAME = -1;
+	
+	private final DataOutputStream out;
+	
+	
+	/**
+	 * Constructor.  Creates the file, replacing any existing one.
+	 * @param file
+	 * @param seed The seed the game was created with.
+	 * @param description A description of the agent playing the game, such as its parameters.
+	 * @throws IOException
+	 */
+	public GameRecorder(File file, long seed, String description) throws IOException
+	{
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeLong(seed);
+		out.writeUTF(description == null ? "" : description);
+	}
+	
+	
+	/**
+	 * Records a decision.
+	 * @param game The state of the game the decision was made in.
+	 * @param move The move chosen.
+	 * @throws IOException
+	 */
+	public void recordDecision(Game game, MOVE move) throws IOException
+	{
+		byte[] state = BinaryGameStateCodec.encode(game);
+		
+		out.writeInt(game.getTotalTime());
+		out.writeByte(move.ordinal());
+		out.writeShort(state.length);
+		out.write(state);
+	}
+	
+	
+	/**
+	 * Records the end of the game and closes the file.
+	 * @param game The final state of the game.
+	 * @throws IOException
+	 */
+	public void close(Game game) throws IOException
+	{
+		try
+		{
+			out.writeInt(END_OF_GAME);
+			out.writeInt(game.getScore());
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package pacman.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * A game recorded by GameRecorder.
+ */
+public class GameRecording
+{
+	private int version;
+	private long seed;
+	private String description;
+	private List<Decision> decisions;
+	private int finalScore;
+	
+	
+	private GameRecording()
+	{
+		decisions = new ArrayList<Decision>();
+		finalScore = -1;
+	}
+	
+	
+	/**
+	 * Reads a recording.  A recording cut short by a crash is read up to the last complete decision.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static GameRecording read(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		
+		try
+		{
+			if (in.readInt() != GameRecorder.MAGIC)
+				throw new IOException("Not a game recording.");
+			
+			int version = in.readShort();
+			
+			if (version != GameRecorder.VERSION && version != GameRecorder.TEXT_STATE_VERSION)
+				throw new IOException("Unsupported game recording version: " + version);
+			
+			GameRecording recording = new GameRecording();
+			recording.version = version;
+			recording.seed = in.readLong();
+			recording.description = in.readUTF();
+			
+			try
+			{
+				while (true)
+				{
+					int tick = in.readInt();
+					
+					if (tick == GameRecorder.END_OF_GAME)
+					{
+						recording.finalScore = in.readInt();
+						break;
+					}
+					
+					MOVE move = MOVE.values()[in.readByte()];
+					byte[] state = new byte[in.readUnsignedShort()];
+					in.readFully(state);
+					recording.decisions.add(new Decision(recording, tick, move, state));
+				}
+			}
+			catch (EOFException ex)
+			{
+				//the game didn't finish recording
+			}
+			
+			return recording;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	
+	public long getSeed()
+	{
+		return seed;
+	}
+	
+	
+	/**
+	 * Gets the description of the agent which played the game.
+	 * @return
+	 */
+	public String getDescription()
+	{
+		return description;
+	}
+	
+	
+	public List<Decision> getDecisions()
+	{
+		return decisions;
+	}
+	
+	
+	/**
+	 * Gets the final score of the game, or -1 if the recording is incomplete.
+	 * @return
+	 */
+	public int getFinalScore()
+	{
+		return finalScore;
+	}
+	
+	
+	/**
+	 * A decision made during a recorded game.
+	 */
+	public static class Decision
+	{
+		private final GameRecording recording;
+		private final int tick;
+		private final MOVE move;
+		private final byte[] state;
+		
+		private Decision(GameRecording recording, int tick, MOVE move, byte[] state)
+		{
+			this.recording = recording;
+			this.tick = tick;
+			this.move = move;
+			this.state = state;
+		}
+		
+		public int getTick()
+		{
+			return tick;
+		}
+		
+		/**
+		 * Gets the move chosen by the agent when the game was recorded.
+		 * @return
+		 */
+		public MOVE getMove()
+		{
+			return move;
+		}
+		
+		/**
+		 * Creates a game in the state the decision was made in.
+		 * @return
+		 */
+		public Game createGame()
+		{
+			Game game = new Game(recording.seed);
+			
+			if (recording.version == GameRecorder.TEXT_STATE_VERSION)
+				GameStateCodec.decode(state, game);
+			else
+				BinaryGameStateCodec.decode(state, game);
+			
+			return game;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package pacman.replay;
+
+import java.io.ByteArrayOutputStream;
+
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Encodes game states in a compact binary form.  The state is taken from Game.getGameState(), which
+ * describes every field of the game as text; numbers are stored as variable length integers, moves and
+ * flags as single bytes, and the pills as packed bits, which takes about a fifth of the space.
+ */
+public class GameStateCodec
+{
+	private static final char INTEGER = 'i';
+	private static final char MOVE_FIELD = 'm';
+	private static final char BOOLEAN = 'b';
+	private static final char BITS = 's';
+	
+	private static final String GHOST = "iiim";
+	
+	//the types of the fields of Game.getGameState(): maze, time, score, level time and level count,
+	//Ms Pac-Man's node, move, lives and extra life, the four ghosts, the pills and power pills,
+	//the time of the last global reversal, and the flags for the events of the last tick
+	private static final String SCHEMA = "iiiii" + "imib" + GHOST + GHOST + GHOST + GHOST + "ss" + "i" + "bbbbbbb";
+	
+	private static final MOVE[] MOVES = MOVE.values();
+	
+	
+	/**
+	 * Encodes the state of a game.
+	 * @param game
+	 * @return
+	 */
+	public static byte[] encode(Game game)
+	{
+		String[] fields = game.getGameState().split(",", -1);
+		
+		if (fields.length != SCHEMA.length())
+			throw new IllegalArgumentException("Unexpected game state with " + fields.length + " fields.");
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(80);
+		
+		for (int i = 0; i < fields.length; i++)
+		{
+			switch (SCHEMA.charAt(i))
+			{
+			case INTEGER:
+				writeVarInt(out, Integer.parseInt(fields[i]));
+				break;
+			
+			case MOVE_FIELD:
+				out.write(MOVE.valueOf(fields[i]).ordinal());
+				break;
+			
+			case BOOLEAN:
+				out.write(Boolean.parseBoolean(fields[i]) ? 1 : 0);
+				break;
+			
+			case BITS:
+				writeBits(out, fields[i]);
+				break;
+			}
+		}
+		
+		return out.toByteArray();
+	}
+	
+	
+	/**
+	 * Sets the state of a game to an encoded state.
+	 * @param data A state returned by encode().
+	 * @param game The game to change.
+	 */
+	public static void decode(byte[] data, Game game)
+	{
+		StringBuilder state = new StringBuilder(400);
+		int[] position = new int[1];
+		
+		for (int i = 0; i < SCHEMA.length(); i++)
+		{
+			if (i > 0)
+				state.append(',');
+			
+			switch (SCHEMA.charAt(i))
+			{
+			case INTEGER:
+				state.append(readVarInt(data, position));
+				break;
+			
+			case MOVE_FIELD:
+				state.append(MOVES[data[position[0]++]]);
+				break;
+			
+			case BOOLEAN:
+				state.append(data[position[0]++] != 0);
+				break;
+			
+			case BITS:
+				readBits(data, position, state);
+				break;
+			}
+		}
+		
+		game.setGameState(state.toString());
+	}
+	
+	
+	/**
+	 * Writes a signed integer in as few bytes as possible, seven bits at a time.
+	 */
+	private static void writeVarInt(ByteArrayOutputStream out, int value)
+	{
+		//zig-zag encoding, so that small negative numbers are small too
+		int bits = (value << 1) ^ (value >> 31);
+		
+		while ((bits & ~0x7f) != 0)
+		{
+			out.write((bits & 0x7f) | 0x80);
+			bits >>>= 7;
+		}
+		
+		out.write(bits);
+	}
+	
+	
+	private static int readVarInt(byte[] data, int[] position)
+	{
+		int bits = 0;
+		int shift = 0;
+		int b;
+		
+		do
+		{
+			b = data[position[0]++];
+			bits |= (b & 0x7f) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		
+		return (bits >>> 1) ^ -(bits & 1);
+	}
+	
+	
+	private static void writeBits(ByteArrayOutputStream out, String bits)
+	{
+		writeVarInt(out, bits.length());
+		int current = 0;
+		
+		for (int i = 0; i < bits.length(); i++)
+		{
+			if (bits.charAt(i) == '1')
+				current |= 1 << (i & 7);
+			
+			if ((i & 7) == 7 || i == bits.length() - 1)
+			{
+				out.write(current);
+				current = 0;
+			}
+		}
+	}
+	
+	
+	private static void readBits(byte[] data, int[] position, StringBuilder state)
+	{
+		int length = readVarInt(data, position);
+		
+		for (int i = 0; i < length; i++)
+		{
+			state.append((data[position[0] + (i >> 3)] & (1 << (i & 7))) != 0 ? '1' : '0');
+		}
+		
+		position[0] += (length + 7) >> 3;
+	}
+}
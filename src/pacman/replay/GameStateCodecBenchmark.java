@@ -0,0 +1,160 @@
+package pacman.replay;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import pacman.controllers.examples.Legacy;
+import pacman.controllers.examples.RandomPacMan;
+import pacman.game.Constants;
+import pacman.game.Game;
+
+/**
+ * Checks that BinaryGameStateCodec restores every state of games played on each of the four mazes, and
+ * compares the time it takes to save and restore a state with the text of Game.getGameState() and with
+ * GameStateCodec.
+ */
+public class GameStateCodecBenchmark
+{
+	public static void main(String[] args)
+	{
+		int gamesPerMaze = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		List<Game> states = new ArrayList<Game>();
+		int failures = 0;
+		
+		for (int maze = 0; maze < Constants.NUM_MAZES; maze++)
+		{
+			for (int g = 0; g < gamesPerMaze; g++)
+			{
+				failures += playAndCheck(new Game(maze * 1000 + g, maze), states);
+			}
+		}
+		
+		System.out.printf("%d states checked on %d mazes, %d failed to round-trip\n", states.size(),
+			Constants.NUM_MAZES, failures);
+		
+		for (int r = 0; r < repetitions; r++)
+		{
+			//only the last repetition is reported, after the JIT has settled
+			boolean report = r == repetitions - 1;
+			timeText(states, report);
+			timeCompact(states, report);
+			timeBinary(states, report);
+		}
+	}
+	
+	
+	/**
+	 * Plays a game with random moves, checking that each state survives a round trip both into the same
+	 * game each time, and into a new game on a different maze, so that changing the maze is checked too.
+	 * @return The number of states which didn't survive.
+	 */
+	private static int playAndCheck(Game game, List<Game> states)
+	{
+		RandomPacMan pacman = new RandomPacMan();
+		Legacy ghosts = new Legacy();
+		Game reused = new Game(0);
+		ByteBuffer buffer = ByteBuffer.allocate(BinaryGameStateCodec.MAXIMUM_SIZE);
+		int failures = 0;
+		
+		while (true)
+		{
+			Game other = new Game(0, (game.getMazeIndex() + 1) % Constants.NUM_MAZES);
+			buffer.clear();
+			BinaryGameStateCodec.encode(game, buffer);
+			buffer.flip();
+			BinaryGameStateCodec.decode(buffer.duplicate(), reused);
+			BinaryGameStateCodec.decode(buffer, other);
+			
+			if (!isSameState(game, reused) || !isSameState(game, other))
+				failures++;
+			
+			states.add(game.copy());
+			
+			if (game.gameOver())
+				return failures;
+			
+			game.advanceGame(pacman.getMove(game.copy(), -1), ghosts.getMove(game.copy(), -1));
+		}
+	}
+	
+	
+	/**
+	 * Compares the text of the states, and the binary encodings, which also cover the fields the text
+	 * leaves out.
+	 */
+	private static boolean isSameState(Game expected, Game actual)
+	{
+		return expected.getGameState().equals(actual.getGameState())
+			&& Arrays.equals(BinaryGameStateCodec.encode(expected), BinaryGameStateCodec.encode(actual))
+			&& expected.getGhostCurrentEdibleScore() == actual.getGhostCurrentEdibleScore()
+			&& expected.getNumberOfPills() == actual.getNumberOfPills()
+			&& expected.getNumberOfActivePills() == actual.getNumberOfActivePills();
+	}
+	
+	
+	private static void timeText(List<Game> states, boolean report)
+	{
+		Game target = new Game(0);
+		long startTime = System.nanoTime();
+		long bytes = 0;
+		
+		for (Game state: states)
+		{
+			String text = state.getGameState();
+			bytes += text.length();
+			target.setGameState(text);
+		}
+		
+		print(report, "getGameState/setGameState", states.size(), System.nanoTime() - startTime, bytes);
+	}
+	
+	
+	private static void timeCompact(List<Game> states, boolean report)
+	{
+		Game target = new Game(0);
+		long startTime = System.nanoTime();
+		long bytes = 0;
+		
+		for (Game state: states)
+		{
+			byte[] data = GameStateCodec.encode(state);
+			bytes += data.length;
+			GameStateCodec.decode(data, target);
+		}
+		
+		print(report, "GameStateCodec", states.size(), System.nanoTime() - startTime, bytes);
+	}
+	
+	
+	private static void timeBinary(List<Game> states, boolean report)
+	{
+		Game target = new Game(0);
+		ByteBuffer buffer = ByteBuffer.allocate(BinaryGameStateCodec.MAXIMUM_SIZE);
+		long startTime = System.nanoTime();
+		long bytes = 0;
+		
+		for (Game state: states)
+		{
+			buffer.clear();
+			BinaryGameStateCodec.encode(state, buffer);
+			bytes += buffer.position();
+			buffer.flip();
+			BinaryGameStateCodec.decode(buffer, target);
+		}
+		
+		print(report, "BinaryGameStateCodec", states.size(), System.nanoTime() - startTime, bytes);
+	}
+	
+	
+	private static void print(boolean report, String name, int count, long nanoseconds, long bytes)
+	{
+		if (report)
+		{
+			System.out.printf("%-28s%8.0f ns per round trip, %5.1f bytes per state\n", name,
+				(double)nanoseconds / count, (double)bytes / count);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package pacman.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+
+import pacman.entries.pacman.MonteCarloPacManParameters;
+import pacman.entries.pacman.MyPacMan;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Searches again from decisions in a recorded game with a fixed number of simulations, so that the same
+ * positions can be profiled repeatedly, or compared before and after a change to the agent.
+ *
+ * The searches are seeded from the recording's seed and the decision, so that replaying gives the same moves
+ * every time.  They can't be given the random state the agent had when it played the game, which depended on
+ * every search before, so even the agent which made the recording won't always agree with it.  To replay
+ * with parameters other than the defaults, use the replay mode of the Runner with a run config or script.
+ */
+public class ReplayHarness
+{
+	private final MonteCarloPacManParameters parameters;
+	
+	
+	/**
+	 * Constructor.
+	 * @param parameters The parameters to search with.  simulationCount must not be -1.
+	 */
+	public ReplayHarness(MonteCarloPacManParameters parameters)
+	{
+		if (parameters.simulationCount < 0)
+			throw new IllegalArgumentException("Replaying needs a fixed simulation count.");
+		
+		this.parameters = parameters;
+	}
+	
+	
+	public static void main(String[] args)
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: java pacman.replay.ReplayHarness <recording> [simulations] [first decision] [decisions] [repetitions]");
+			System.out.println("The default parameters are searched with; to use others, run the Runner in replay mode.");
+			return;
+		}
+		
+		try
+		{
+			MonteCarloPacManParameters parameters = new MonteCarloPacManParameters();
+			parameters.simulationCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+			
+			GameRecording recording = GameRecording.read(new File(args[0]));
+			int first = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+			int count = args.length > 3 ? Integer.parseInt(args[3]) : -1;
+			int repetitions = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+			
+			new ReplayHarness(parameters).replay(recording, first, count, repetitions, System.out);
+		}
+		catch (IOException ex)
+		{
+			System.out.println("Could not read " + args[0] + ": " + ex.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * Searches from a range of the recorded decisions.
+	 * @param recording
+	 * @param first The index of the first decision to search from.
+	 * @param count The number of decisions to search from, or -1 for all the rest.
+	 * @param repetitions The number of times to search from each decision.
+	 * @param out Where to write the timings, one line per decision and a summary.
+	 */
+	public void replay(GameRecording recording, int first, int count, int repetitions, PrintStream out)
+	{
+		List<GameRecording.Decision> decisions = recording.getDecisions();
+		int last = count < 0 ? decisions.size() : Math.min(decisions.size(), first + count);
+		long totalTime = 0;
+		int searches = 0;
+		int agreements = 0;
+		
+		out.printf("#seed %d, %d decisions, final score %d, recorded by %s\n", recording.getSeed(),
+			decisions.size(), recording.getFinalScore(), recording.getDescription());
+		
+		if (!isRecordedBy(recording, parameters))
+			out.printf("#warning: searching with different parameters from the recording (%s), so the agreements "
+				+ "compare two different agents\n", parameters);
+		
+		out.println("#decision\ttick\trecordedMove\tagreements\tmeanMillis\tsimulationsPerSecond");
+		
+		for (int d = first; d < last; d++)
+		{
+			GameRecording.Decision decision = decisions.get(d);
+			Game game = decision.createGame();
+			long decisionTime = 0;
+			int decisionAgreements = 0;
+			Random seeds = new Random(recording.getSeed() + d);
+			
+			for (int r = 0; r < repetitions; r++)
+			{
+				MonteCarloPacManParameters run = copyParameters();
+				run.seedRandoms(seeds.nextLong());
+				MyPacMan pacman = new MyPacMan(run);
+				long startTime = System.nanoTime();
+				MOVE move = pacman.decide(game.copy());
+				decisionTime += System.nanoTime() - startTime;
+				
+				if (move == decision.getMove())
+					decisionAgreements++;
+			}
+			
+			totalTime += decisionTime;
+			searches += repetitions;
+			agreements += decisionAgreements;
+			
+			out.printf("%d\t%d\t%s\t%d/%d\t%.2f\t%.0f\n", d, decision.getTick(), decision.getMove(), decisionAgreements,
+				repetitions, decisionTime / 1e6 / repetitions, getRate(repetitions, decisionTime));
+		}
+		
+		out.printf("#%d searches of %d simulations, %.2fms each, %.0f simulations per second, %.1f%% agreed with the recording\n",
+			searches, parameters.simulationCount, searches == 0 ? 0 : totalTime / 1e6 / searches,
+			getRate(searches, totalTime), searches == 0 ? 0 : 100.0 * agreements / searches);
+	}
+	
+	
+	/**
+	 * Determines whether a recording was made with the same parameters, apart from the simulation count, which
+	 * replaying fixes.
+	 */
+	private static boolean isRecordedBy(GameRecording recording, MonteCarloPacManParameters parameters)
+	{
+		return withoutSimulationCount(recording.getDescription()).equals(withoutSimulationCount(parameters.toString()));
+	}
+	
+	
+	private static String withoutSimulationCount(String description)
+	{
+		return description.replaceAll(", simulationCount=-?\\d+", "");
+	}
+	
+	
+	private double getRate(int searches, long nanoseconds)
+	{
+		return nanoseconds == 0 ? 0 : (double)searches * parameters.simulationCount * 1e9 / nanoseconds;
+	}
+	
+	
+	private MonteCarloPacManParameters copyParameters()
+	{
+		try
+		{
+			return parameters.copy();
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+		catch (InstantiationException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+	}
+}
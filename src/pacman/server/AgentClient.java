@@ -0,0 +1,116 @@
+package pacman.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.replay.BinaryGameStateCodec;
+
+/**
+ * A client for AgentService, which also serves as an example of the protocol for clients in other
+ * languages.
+ */
+public class AgentClient
+{
+	private static final MOVE[] MOVES = MOVE.values();
+	
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	private boolean lastMoveWasDecision;
+	private int lastServerTime;
+	
+	
+	/**
+	 * Constructor.  Connects to a service on this machine.
+	 * @param port
+	 * @throws IOException
+	 */
+	public AgentClient(int port) throws IOException
+	{
+		socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+	
+	
+	/**
+	 * Asks the agent for a move.
+	 * @param sessionId The id of the game being played.
+	 * @param game The current state of the game.
+	 * @param budget The time the agent has to answer, in milliseconds.
+	 * @return
+	 * @throws IOException
+	 */
+	public MOVE getMove(long sessionId, Game game, int budget) throws IOException
+	{
+		byte[] state = BinaryGameStateCodec.encode(game);
+		
+		out.writeByte(AgentService.REQUEST_MOVE);
+		out.writeLong(sessionId);
+		out.writeInt(budget);
+		out.writeShort(state.length);
+		out.write(state);
+		out.flush();
+		
+		readStatus();
+		MOVE move = MOVES[in.readByte()];
+		lastMoveWasDecision = in.readByte() != 0;
+		lastServerTime = in.readInt();
+		return move;
+	}
+	
+	
+	/**
+	 * Ends a session, freeing the agent which was playing it.
+	 * @param sessionId
+	 * @throws IOException
+	 */
+	public void endSession(long sessionId) throws IOException
+	{
+		out.writeByte(AgentService.REQUEST_END_SESSION);
+		out.writeLong(sessionId);
+		out.flush();
+		readStatus();
+	}
+	
+	
+	/**
+	 * Determines if the agent made a decision for the last move.
+	 * @return
+	 */
+	public boolean getLastMoveWasDecision()
+	{
+		return lastMoveWasDecision;
+	}
+	
+	
+	/**
+	 * Gets the time the service took to answer the last move request, in microseconds.
+	 * @return
+	 */
+	public int getLastServerTime()
+	{
+		return lastServerTime;
+	}
+	
+	
+	public void close() throws IOException
+	{
+		socket.close();
+	}
+	
+	
+	private void readStatus() throws IOException
+	{
+		if (in.readByte() != AgentService.STATUS_OK)
+			throw new IOException("The agent service failed: " + in.readUTF());
+	}
+}
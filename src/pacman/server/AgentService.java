@@ -0,0 +1,457 @@
+package pacman.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pacman.entries.pacman.MonteCarloPacManParameters;
+import pacman.entries.pacman.MyPacMan;
+import pacman.entries.pacman.telemetry.LatencyRecorder;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.replay.BinaryGameStateCodec;
+
+/**
+ * Serves the agent's moves over a TCP socket on the loopback address, so that it can be used from tools
+ * which aren't written in Java.  Each game being played is a session with an agent of its own, which is
+ * kept between requests so that the search carries on from tick to tick as it does in the framework.
+ * Each connection is served by a thread of its own, and can use any number of sessions.
+ *
+ * All numbers are big-endian.  A move request is:
+ *   byte    REQUEST_MOVE
+ *   long    the session id, chosen by the client
+ *   int     the time the agent has to answer, in milliseconds
+ *   short   the length of the state
+ *   byte[]  the state of the game, in the layout described by BinaryGameStateCodec: the maze, the
+ *           time and score, the positions, directions and timers of Ms Pac-Man and the ghosts, and
+ *           the pill bitsets
+ * which is answered with:
+ *   byte    STATUS_OK
+ *   byte    the move, as the ordinal of MOVE (UP, RIGHT, DOWN, LEFT, NEUTRAL)
+ *   byte    1 if the agent made a decision, 0 if Ms Pac-Man is carrying on along a corridor
+ *   int     the time the server took to answer, in microseconds
+ * A session is ended with REQUEST_END_SESSION and the session id, which is answered with STATUS_OK.  Sessions
+ * which haven't had a request for the session timeout are ended by the service, so that the agents of clients
+ * which went away without ending their sessions are freed; a request for an ended session starts a new one.
+ * A request which can't be handled is answered with STATUS_ERROR and a message, written as by
+ * DataOutputStream.writeUTF, and the connection stays open.
+ */
+public class AgentService
+{
+	public static final int DEFAULT_PORT = 7531;
+	public static final int DEFAULT_SESSION_TIMEOUT = 60000;
+	
+	public static final byte REQUEST_MOVE = 1;
+	public static final byte REQUEST_END_SESSION = 2;
+	
+	public static final byte STATUS_OK = 0;
+	public static final byte STATUS_ERROR = 1;
+	
+	private final MonteCarloPacManParameters parameters;
+	private final int sessionTimeout;
+	private final ConcurrentMap<Long, Session> sessions;
+	private final LatencyRecorder latency;
+	private ServerSocket serverSocket;
+	private Thread expiryThread;
+	
+	
+	/**
+	 * Constructor.  Sessions time out after DEFAULT_SESSION_TIMEOUT.
+	 * @param parameters The parameters for the agents, which are copied for each session; they must be
+	 * in real-time mode, since each request has a time limit.
+	 */
+	public AgentService(MonteCarloPacManParameters parameters)
+	{
+		this(parameters, DEFAULT_SESSION_TIMEOUT);
+	}
+	
+	
+	/**
+	 * Constructor.
+	 * @param parameters The parameters for the agents, which are copied for each session; they must be
+	 * in real-time mode, since each request has a time limit.
+	 * @param sessionTimeout The time in milliseconds a session can go without a request before it's ended.
+	 */
+	public AgentService(MonteCarloPacManParameters parameters, int sessionTimeout)
+	{
+		if (parameters.simulationCount != -1)
+			throw new IllegalArgumentException("The agent must be in real-time mode to be served.");
+		
+		if (sessionTimeout <= 0)
+			throw new IllegalArgumentException("The session timeout must be positive.");
+		
+		this.parameters = parameters;
+		this.sessionTimeout = sessionTimeout;
+		this.sessions = new ConcurrentHashMap<Long, Session>();
+		this.latency = new LatencyRecorder();
+	}
+	
+	
+	public static void main(String[] args)
+	{
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		final AgentService service = new AgentService(new MonteCarloPacManParameters());
+		
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			@Override
+			public void run()
+			{
+				System.out.println("Request latency: " + service.getLatency());
+			}
+		});
+		
+		try
+		{
+			service.serve(port);
+		}
+		catch (IOException ex)
+		{
+			System.out.println("Could not serve on port " + port + ": " + ex.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * Accepts connections until the service is closed.
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @throws IOException
+	 */
+	public void serve(int port) throws IOException
+	{
+		synchronized (this)
+		{
+			serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+			startExpiryThread();
+			notifyAll();
+		}
+		
+		System.out.println("Serving the agent on port " + serverSocket.getLocalPort());
+		
+		while (!serverSocket.isClosed())
+		{
+			final Socket socket;
+			
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch (IOException ex)
+			{
+				if (serverSocket.isClosed())
+					break;
+				
+				throw ex;
+			}
+			
+			Thread thread = new Thread("Agent connection " + socket.getRemoteSocketAddress())
+			{
+				@Override
+				public void run()
+				{
+					handle(socket);
+				}
+			};
+			
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	
+	
+	/**
+	 * Waits for the service to start listening, and gets the port it's listening on.
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public synchronized int awaitPort() throws InterruptedException
+	{
+		while (serverSocket == null)
+		{
+			wait();
+		}
+		
+		return serverSocket.getLocalPort();
+	}
+	
+	
+	/**
+	 * Stops accepting connections.  Connections already open are served until the client closes them, but
+	 * sessions no longer time out.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException
+	{
+		if (serverSocket != null)
+			serverSocket.close();
+		
+		if (expiryThread != null)
+		{
+			expiryThread.interrupt();
+			expiryThread = null;
+		}
+	}
+	
+	
+	/**
+	 * Gets the latency of every move request served so far.
+	 * @return
+	 */
+	public LatencyRecorder getLatency()
+	{
+		return latency;
+	}
+	
+	
+	/**
+	 * Gets the number of sessions which haven't been ended.
+	 * @return
+	 */
+	public int getNumberOfSessions()
+	{
+		return sessions.size();
+	}
+	
+	
+	/**
+	 * Serves the requests on a connection until it's closed.
+	 * @param socket
+	 */
+	private void handle(Socket socket)
+	{
+		try
+		{
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			
+			try
+			{
+				while (true)
+				{
+					int request = in.read();
+					
+					if (request == -1)
+						break;
+					
+					if (request == REQUEST_MOVE)
+					{
+						handleMove(in, out);
+					}
+					else if (request == REQUEST_END_SESSION)
+					{
+						endSession(in.readLong());
+						out.writeByte(STATUS_OK);
+					}
+					else
+					{
+						//we can't tell where the next request starts, so give up on the connection
+						writeError(out, "Unknown request: " + request);
+						out.flush();
+						break;
+					}
+					
+					out.flush();
+				}
+			}
+			finally
+			{
+				socket.close();
+			}
+		}
+		catch (EOFException ex)
+		{
+			//the client went away part way through a request
+		}
+		catch (IOException ex)
+		{
+			System.err.println("Agent connection failed: " + ex.getMessage());
+		}
+	}
+	
+	
+	private void handleMove(DataInputStream in, DataOutputStream out) throws IOException
+	{
+		long sessionId = in.readLong();
+		int budget = in.readInt();
+		byte[] state = new byte[in.readUnsignedShort()];
+		in.readFully(state);
+		
+		//the time starts when the request has been read
+		long startTime = System.nanoTime();
+		long timeDue = System.currentTimeMillis() + budget;
+		MyPacMan pacman = getSession(sessionId).pacman;
+		MOVE move;
+		boolean decision;
+		
+		try
+		{
+			Game game = new Game(0);
+			BinaryGameStateCodec.decode(state, game);
+			
+			//a session's agent can only search for one move at a time
+			synchronized (pacman)
+			{
+				int decisions = pacman.getNumberOfDecisions();
+				move = pacman.getMove(game, timeDue);
+				decision = pacman.getNumberOfDecisions() > decisions;
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			writeError(out, "Could not find a move: " + ex);
+			return;
+		}
+		
+		long time = System.nanoTime() - startTime;
+		
+		synchronized (latency)
+		{
+			latency.record(decision, time, System.currentTimeMillis() > timeDue);
+		}
+		
+		out.writeByte(STATUS_OK);
+		out.writeByte(move.ordinal());
+		out.writeByte(decision ? 1 : 0);
+		out.writeInt((int)(time / 1000));
+	}
+	
+	
+	/**
+	 * Gets a session, starting it if it hasn't been started or has been ended, and counts it as used now.
+	 */
+	private Session getSession(long sessionId)
+	{
+		Session session = sessions.get(sessionId);
+		
+		if (session == null)
+		{
+			session = new Session(new MyPacMan(copyParameters()));
+			Session existing = sessions.putIfAbsent(sessionId, session);
+			
+			if (existing != null)
+				session = existing;
+		}
+		
+		session.lastUsed = System.currentTimeMillis();
+		return session;
+	}
+	
+	
+	private void endSession(long sessionId)
+	{
+		Session session = sessions.remove(sessionId);
+		
+		if (session != null)
+			session.close();
+	}
+	
+	
+	/**
+	 * Ends the sessions which haven't been used for the session timeout.
+	 */
+	private void expireSessions()
+	{
+		long cutOff = System.currentTimeMillis() - sessionTimeout;
+		
+		for (Map.Entry<Long, Session> entry: sessions.entrySet())
+		{
+			//only removed if it's still the same session, in case it was ended and started again
+			if (entry.getValue().lastUsed < cutOff && sessions.remove(entry.getKey(), entry.getValue()))
+				entry.getValue().close();
+		}
+	}
+	
+	
+	private void startExpiryThread()
+	{
+		expiryThread = new Thread("Agent session expiry")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while (!isInterrupted())
+					{
+						Thread.sleep(Math.max(1, sessionTimeout / 4));
+						expireSessions();
+					}
+				}
+				catch (InterruptedException ex)
+				{
+					//the service has been closed
+				}
+			}
+		};
+		
+		expiryThread.setDaemon(true);
+		expiryThread.start();
+	}
+	
+	
+	private void writeError(DataOutputStream out, String message) throws IOException
+	{
+		out.writeByte(STATUS_ERROR);
+		out.writeUTF(message);
+	}
+	
+	
+	/**
+	 * A game being played, with the agent playing it.
+	 */
+	private static class Session
+	{
+		public final MyPacMan pacman;
+		public volatile long lastUsed;
+		
+		public Session(MyPacMan pacman)
+		{
+			this.pacman = pacman;
+		}
+		
+		/**
+		 * Finishes the agent's exports, waiting for any move it's searching for.
+		 */
+		public void close()
+		{
+			synchronized (pacman)
+			{
+				try
+				{
+					pacman.close();
+				}
+				catch (IOException ex)
+				{
+					System.err.println("Could not close an agent session: " + ex.getMessage());
+				}
+			}
+		}
+	}
+	
+	
+	private MonteCarloPacManParameters copyParameters()
+	{
+		try
+		{
+			return parameters.copy();
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+		catch (InstantiationException ex)
+		{
+			throw new IllegalStateException("Cannot copy the parameters.", ex);
+		}
+	}
+}
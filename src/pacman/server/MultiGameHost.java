@@ -0,0 +1,183 @@
+package pacman.server;
+
+import static pacman.game.Constants.DELAY;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import pacman.batch.GameResult;
+import pacman.entries.pacman.MonteCarloPacManParameters;
+import pacman.entries.pacman.MyPacMan;
+import pacman.entries.pacman.treeexport.TreeExporter;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Plays many real-time games at once in one JVM, with the searches sharing the workers of a
+ * SearchScheduler.  Each game ticks every DELAY milliseconds, as it would in the real-time framework,
+ * and the games' ticks are spread evenly over that period so that their moves aren't all due at once.
+ * If a move isn't ready when it's due, the game waits for it and the tick is counted as missed.
+ */
+public class MultiGameHost
+{
+	private final SearchScheduler scheduler;
+	
+	
+	/**
+	 * Constructor.
+	 * @param scheduler The scheduler to run the searches on.
+	 */
+	public MultiGameHost(SearchScheduler scheduler)
+	{
+		this.scheduler = scheduler;
+	}
+	
+	
+	/**
+	 * Plays a game for each of the seeds at the same time, and waits for them all to finish.
+	 * @param parametersHash The hash identifying the configuration being played.
+	 * @param runs The parameters for each game, which shouldn't be shared; they must be in real-time mode.
+	 * @param seeds The seeds to create the games with.
+	 * @return The results, in the same order as the seeds.
+	 * @throws InterruptedException
+	 */
+	public List<GameResult> play(String parametersHash, MonteCarloPacManParameters[] runs, long[] seeds)
+		throws InterruptedException
+	{
+		HostedGame[] games = new HostedGame[seeds.length];
+		long startTime = System.currentTimeMillis();
+		
+		for (int i = 0; i < games.length; i++)
+		{
+			if (runs[i].simulationCount != -1)
+				throw new IllegalArgumentException("Hosted games must be played in real time.");
+			
+			if (runs[i].treeExportFile != null)
+				runs[i].treeExportFile = TreeExporter.getGamePath(runs[i].treeExportFile, parametersHash, seeds[i]);
+			
+			games[i] = new HostedGame(runs[i], seeds[i], startTime + DELAY + (long)i * DELAY / games.length);
+			games[i].submit(scheduler);
+		}
+		
+		int active = games.length;
+		
+		while (active > 0)
+		{
+			HostedGame next = null;
+			
+			for (HostedGame game: games)
+			{
+				if (game.result == null && (next == null || game.nextTick < next.nextTick))
+					next = game;
+			}
+			
+			long wait = next.nextTick - System.currentTimeMillis();
+			
+			if (wait > 0)
+				Thread.sleep(wait);
+			
+			if (!next.search.isDone())
+			{
+				//the move is late; look again shortly rather than holding up the other games
+				next.nextTick = System.currentTimeMillis() + 1;
+				continue;
+			}
+			
+			next.tick(parametersHash);
+			
+			if (next.result == null)
+				next.submit(scheduler);
+			else
+				active--;
+		}
+		
+		List<GameResult> results = new ArrayList<GameResult>(games.length);
+		
+		for (HostedGame game: games)
+		{
+			results.add(game.result);
+		}
+		
+		return results;
+	}
+	
+	
+	/**
+	 * A game in progress.
+	 */
+	private static class HostedGame
+	{
+		private final MonteCarloPacManParameters run;
+		private final long seed;
+		private final MyPacMan pacman;
+		private final Game game;
+		private final long startTime;
+		private ScheduledSearch search;
+		private int decisions;
+		private long nextTick;
+		private GameResult result;
+		
+		
+		public HostedGame(MonteCarloPacManParameters run, long seed, long firstTick)
+		{
+			this.run = run;
+			this.seed = seed;
+			run.seedRandoms(seed);
+			this.pacman = new MyPacMan(run);
+			this.game = new Game(seed);
+			this.startTime = System.currentTimeMillis();
+			this.nextTick = firstTick;
+		}
+		
+		
+		public void submit(SearchScheduler scheduler)
+		{
+			decisions = pacman.getNumberOfDecisions();
+			search = scheduler.submit(pacman, game.copy(), nextTick);
+		}
+		
+		
+		/**
+		 * Plays the move the search found, and the ghosts' move, and works out when the next tick is due.
+		 * @param parametersHash
+		 * @throws InterruptedException
+		 */
+		public void tick(String parametersHash) throws InterruptedException
+		{
+			MOVE move = search.awaitMove();
+			pacman.getLatency().record(pacman.getNumberOfDecisions() > decisions, search.getLatency(), search.isLate());
+			
+			game.advanceGame(move, run.opponent.getMove(game.copy(), System.currentTimeMillis() + DELAY));
+			
+			//keep to the game's slot in the period unless it has fallen behind
+			long now = System.currentTimeMillis();
+			nextTick += DELAY;
+			
+			if (nextTick <= now)
+				nextTick = now + DELAY;
+			
+			if (game.gameOver())
+				finish(parametersHash);
+		}
+		
+		
+		private void finish(String parametersHash)
+		{
+			try
+			{
+				pacman.close();
+			}
+			catch (IOException ex)
+			{
+				System.err.println("Could not finish exporting the search tree: " + ex.getMessage());
+			}
+			
+			result = new GameResult(parametersHash, run.experimentName, seed, game.getScore(), game.getCurrentLevel(),
+				game.getPacmanNumberOfLivesRemaining(), game.getTotalTime(), pacman.getNumberOfDecisions(),
+				pacman.getNumberOfSimulations(), System.currentTimeMillis() - startTime,
+				pacman.getLatency().getDecisionSummary(), pacman.getLatency().getTickSummary(),
+				pacman.getNumberOfEarlyStops(), pacman.getSavedMillis());
+		}
+	}
+}
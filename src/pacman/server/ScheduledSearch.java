@@ -0,0 +1,183 @@
+package pacman.server;
+
+import pacman.entries.pacman.MyPacMan;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * The search for one tick of one game, run by a SearchScheduler.
+ */
+public class ScheduledSearch
+{
+	private final MyPacMan pacman;
+	private final Game game;
+	private final long timeDue;
+	private final long stopTime;
+	private final boolean decisionPoint;
+	private final long startTime;
+	private long sliceEnd;
+	
+	private boolean done;
+	private MOVE move;
+	private RuntimeException error;
+	private long latency;
+	private boolean late;
+	
+	
+	ScheduledSearch(MyPacMan pacman, Game game, long timeDue, long stopTime, boolean decisionPoint, long startTime)
+	{
+		this.pacman = pacman;
+		this.game = game;
+		this.timeDue = timeDue;
+		this.stopTime = stopTime;
+		this.decisionPoint = decisionPoint;
+		this.startTime = startTime;
+	}
+	
+	
+	/**
+	 * Determines if this search should be given a slice before another one: searches at a decision point
+	 * come first, and then the one whose move is due soonest.
+	 * @param other
+	 * @return
+	 */
+	boolean isBefore(ScheduledSearch other)
+	{
+		if (decisionPoint != other.decisionPoint)
+			return decisionPoint;
+		
+		return timeDue < other.timeDue;
+	}
+	
+	
+	/**
+	 * Sets the time the next slice should end by.
+	 * @param value
+	 */
+	void setSliceEnd(long value)
+	{
+		sliceEnd = value;
+	}
+	
+	
+	/**
+	 * Runs simulations until the end of the slice or until it's time to stop, whichever is first.
+	 * @return False if the agent's stopping rule ended the search early, so it should be finished now.
+	 */
+	boolean runSlice()
+	{
+		long end = Math.min(sliceEnd, stopTime);
+		
+		do
+		{
+			if (pacman.canStopEarly(stopTime))
+				return false;
+			
+			pacman.runSimulations(1);
+		}
+		while (System.currentTimeMillis() < end);
+		
+		return true;
+	}
+	
+	
+	void finish()
+	{
+		MOVE result = pacman.finishTick(game, timeDue);
+		complete(result, null);
+	}
+	
+	
+	void fail(RuntimeException ex)
+	{
+		complete(MOVE.NEUTRAL, ex);
+	}
+	
+	
+	private synchronized void complete(MOVE result, RuntimeException ex)
+	{
+		move = result;
+		error = ex;
+		latency = System.nanoTime() - startTime;
+		late = System.currentTimeMillis() > timeDue;
+		done = true;
+		notifyAll();
+	}
+	
+	
+	/**
+	 * Gets the time the simulations should stop so the search can be finished in time.
+	 * @return
+	 */
+	long getStopTime()
+	{
+		return stopTime;
+	}
+	
+	
+	public MyPacMan getPacMan()
+	{
+		return pacman;
+	}
+	
+	
+	public long getTimeDue()
+	{
+		return timeDue;
+	}
+	
+	
+	/**
+	 * Determines if Ms Pac-Man was at a decision point, so that this search is to choose a move.
+	 * @return
+	 */
+	public boolean isDecisionPoint()
+	{
+		return decisionPoint;
+	}
+	
+	
+	public synchronized boolean isDone()
+	{
+		return done;
+	}
+	
+	
+	/**
+	 * Waits for the search to finish.
+	 * @return The move chosen.
+	 * @throws InterruptedException
+	 */
+	public synchronized MOVE awaitMove() throws InterruptedException
+	{
+		while (!done)
+		{
+			wait();
+		}
+		
+		if (error != null)
+			throw new IllegalStateException("The search failed.", error);
+		
+		return move;
+	}
+	
+	
+	/**
+	 * Gets the time from submitting the search to it finishing, in nanoseconds.
+	 * @return
+	 */
+	public synchronized long getLatency()
+	{
+		return latency;
+	}
+	
+	
+	/**
+	 * Determines if the search finished after the move was due.
+	 * @return
+	 */
+	public synchronized boolean isLate()
+	{
+		return late;
+	}
+}
@@ -0,0 +1,183 @@
+package pacman.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pacman.entries.pacman.MyPacMan;
+import pacman.game.Game;
+
+/**
+ * Shares a pool of worker threads between the searches of many real-time games, instead of each agent
+ * spinning on a core of its own until its move is due.  Searches are run a slice of a few milliseconds
+ * at a time.  Whenever a worker is free it finishes any search whose time is up, so that no move is held
+ * up behind another game's simulations; otherwise it gives the next slice to a game at a decision point
+ * before one which isn't, since simulations between decisions only build up the tree for later, and then
+ * to the game whose move is due soonest.
+ *
+ * The agents must be in real-time mode (simulationCount = -1), and each agent can only have one search
+ * submitted at a time.
+ */
+public class SearchScheduler
+{
+	private static final int DEFAULT_SLICE_MILLIS = 2;
+	
+	private final List<ScheduledSearch> searches;
+	private final Thread[] threads;
+	private final int sliceMillis;
+	private boolean shutdown;
+	
+	
+	/**
+	 * Constructor.  Uses the default slice length.
+	 * @param numberOfThreads
+	 */
+	public SearchScheduler(int numberOfThreads)
+	{
+		this(numberOfThreads, DEFAULT_SLICE_MILLIS);
+	}
+	
+	
+	/**
+	 * Constructor.
+	 * @param numberOfThreads The number of worker threads, usually the number of cores.
+	 * @param sliceMillis The length of time a worker searches for one game before looking for a more
+	 * urgent one.
+	 */
+	public SearchScheduler(int numberOfThreads, int sliceMillis)
+	{
+		this.searches = new ArrayList<ScheduledSearch>();
+		this.sliceMillis = sliceMillis;
+		this.threads = new Thread[numberOfThreads];
+		
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new WorkerThread();
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+	}
+	
+	
+	/**
+	 * Starts the search for a game's move for the current tick.  The agent's tick is started on the
+	 * calling thread, since it's quick and tells us whether Ms Pac-Man is at a decision point.
+	 * @param pacman The agent to search with.
+	 * @param game A copy of the game, which the agent can keep.
+	 * @param timeDue The time the move is due.
+	 * @return The search, which says when it's done.
+	 */
+	public ScheduledSearch submit(MyPacMan pacman, Game game, long timeDue)
+	{
+		long stopTime = timeDue - pacman.startTick(game);
+		ScheduledSearch search = new ScheduledSearch(pacman, game, timeDue, stopTime, pacman.isAtDecisionPoint(),
+			System.nanoTime());
+		
+		put(search);
+		return search;
+	}
+	
+	
+	/**
+	 * Stops the worker threads once they have finished their current slices.  Searches which haven't
+	 * finished are abandoned.
+	 */
+	public synchronized void shutdown()
+	{
+		shutdown = true;
+		notifyAll();
+	}
+	
+	
+	private synchronized void put(ScheduledSearch search)
+	{
+		searches.add(search);
+		notify();
+	}
+	
+	
+	/**
+	 * Takes the search which most needs a worker, waiting if there aren't any.
+	 * @return The search, or null if the scheduler has been shut down.
+	 * @throws InterruptedException
+	 */
+	private synchronized ScheduledSearch take() throws InterruptedException
+	{
+		while (!shutdown && searches.isEmpty())
+		{
+			wait();
+		}
+		
+		if (shutdown)
+			return null;
+		
+		long now = System.currentTimeMillis();
+		int best = 0;
+		
+		//there's only as many searches as games, so looking through them all each time is cheap
+		for (int i = 0; i < searches.size(); i++)
+		{
+			ScheduledSearch search = searches.get(i);
+			
+			if (search.getStopTime() <= now)
+			{
+				//time's up, finish this one straight away
+				best = i;
+				break;
+			}
+			
+			if (search.isBefore(searches.get(best)))
+				best = i;
+		}
+		
+		ScheduledSearch search = searches.remove(best);
+		
+		//end the slice in time for the searches left waiting to be finished when they're due
+		long sliceEnd = now + sliceMillis;
+		
+		for (int i = 0; i < searches.size(); i++)
+		{
+			sliceEnd = Math.min(sliceEnd, searches.get(i).getStopTime());
+		}
+		
+		search.setSliceEnd(sliceEnd);
+		return search;
+	}
+	
+	
+	private class WorkerThread extends Thread
+	{
+		@Override
+		public void run()
+		{
+			try
+			{
+				ScheduledSearch search;
+				
+				while ((search = take()) != null)
+				{
+					try
+					{
+						//a search the stopping rule ends early is finished straight away, freeing the worker
+						if (System.currentTimeMillis() < search.getStopTime() && search.runSlice())
+						{
+							put(search);
+						}
+						else
+						{
+							search.finish();
+						}
+					}
+					catch (RuntimeException ex)
+					{
+						ex.printStackTrace();
+						search.fail(ex);
+					}
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				//shutting down
+			}
+		}
+	}
+}